@@ -30,5 +30,12 @@ public class MessageConstant {
     public static final String ORDER_ALREADY_COMPLETED = "订单已完成，请联系商家进行沟通";
     public static final String ORDER_ALREADY_CANCELLED = "订单已取消，请不要重复操作";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_SUBMIT_IN_PROGRESS = "订单正在提交，请勿重复操作";
+    public static final String ORDER_AMOUNT_MISMATCH = "订单金额已变化，请刷新后重新下单";
+    public static final String ORDER_ITEM_UNAVAILABLE = "部分商品已停售，请重新选择";
+    public static final String ORDER_PAGE_CURSOR_INVALID = "分页游标无效，请重新查询";
+    public static final String REPORT_DATE_RANGE_INVALID = "统计日期范围不正确";
+    public static final String REPORT_RANKING_TYPE_INVALID = "销量排名类型不正确";
+    public static final String REPORT_EXPORT_BUSY = "导出任务较多，请稍后再试";
 
 }
@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 购物车存储方式 mapper/redis
+     */
+    private String store = "mapper";
+
+    /**
+     * redis存储时是否将购物车异步回写到MySQL，开启后Redis中没有的购物车会先从MySQL加载
+     */
+    private boolean writeBehind = false;
+
+    /**
+     * 回写MySQL的间隔(毫秒)
+     */
+    private long flushIntervalMillis = 5000;
+
+    /**
+     * 每次回写时最多处理的用户数量
+     */
+    private int flushBatchSize = 200;
+
+    /**
+     * Redis中购物车的过期时间(秒)，每次修改后重新计时
+     */
+    private long ttlSeconds = 604800;
+
+}
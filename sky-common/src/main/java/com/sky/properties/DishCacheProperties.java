@@ -0,0 +1,53 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache.dish")
+@Data
+public class DishCacheProperties {
+
+    /**
+     * 进程内缓存最多保存的分类数量，超出后按LRU淘汰
+     */
+    private int localMaxSize = 256;
+
+    /**
+     * 进程内缓存的过期时间(秒)，兜底防止错过失效广播
+     */
+    private long localTtlSeconds = 300;
+
+    /**
+     * Redis中每一代菜品缓存的过期时间(秒)，失效后旧版本的key依靠过期自然清理
+     */
+    private long redisTtlSeconds = 86400;
+
+    /**
+     * 缓存未命中时的加载合并方式：local 每个节点每个key只有一个加载任务；
+     * redis 额外通过Redis租约保证整个集群每个key只有一个加载任务
+     */
+    private String singleFlightMode = "local";
+
+    /**
+     * Redis租约的有效时间(毫秒)
+     */
+    private long leaseMillis = 3000;
+
+    /**
+     * 未获得Redis租约时等待其他节点写回缓存的最长时间(毫秒)，超时后自行查询数据库
+     */
+    private long leaseWaitMillis = 2000;
+
+    /**
+     * 缓存失效或过期后，是否在后台重新加载期间继续返回旧数据
+     */
+    private boolean staleWhileRevalidate = false;
+
+    /**
+     * 旧数据最多还能被返回的时间(秒)
+     */
+    private long staleMaxSeconds = 30;
+
+}
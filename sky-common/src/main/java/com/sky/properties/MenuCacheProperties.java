@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache.menu")
+@Data
+public class MenuCacheProperties {
+
+    /**
+     * 进程内菜品、套餐目录各自最多保存的数量，超出后按LRU淘汰
+     */
+    private int maxSize = 10000;
+
+    /**
+     * 进程内目录的过期时间(秒)，兜底防止错过失效广播
+     */
+    private long ttlSeconds = 300;
+
+}
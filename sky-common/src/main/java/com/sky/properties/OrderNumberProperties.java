@@ -0,0 +1,43 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order.number")
+@Data
+public class OrderNumberProperties {
+
+    /**
+     * 订单号时间戳的起始时间(毫秒)，默认 2024-01-01 00:00:00 +08:00
+     */
+    private long epoch = 1704038400000L;
+
+    /**
+     * 节点ID占用的位数，集群最多 2^nodeBits 个节点
+     */
+    private int nodeBits = 10;
+
+    /**
+     * 毫秒内序列号占用的位数，每个节点每毫秒最多 2^sequenceBits 个订单号
+     */
+    private int sequenceBits = 12;
+
+    /**
+     * 分片号占用的位数，订单表分为 2^shardBits 个分片，为0时不分片；
+     * 分片号、节点ID、序列号的位数之和不能超过22，需要分片时相应减少节点ID或序列号的位数
+     */
+    private int shardBits = 0;
+
+    /**
+     * 允许的最大时钟回拨(毫秒)，回拨范围内沿用上一次的时间戳继续发号，超出则拒绝发号
+     */
+    private long maxBackwardMillis = 5000;
+
+    /**
+     * 节点ID在Redis中的租约时间(秒)，节点运行期间定时续约
+     */
+    private long nodeLeaseSeconds = 60;
+
+}
@@ -0,0 +1,134 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    /**
+     * 下单幂等键的保存时间(秒)，在此期间使用同一个幂等键重复下单会直接返回第一次下单的结果
+     */
+    private long idempotencyTtlSeconds = 600;
+
+    /**
+     * 下单处理中标记的过期时间(秒)，防止节点宕机后幂等键一直处于处理中；
+     * 下单期间会定时续期，且必须大于下单事务的超时时间
+     */
+    private long idempotencyPendingSeconds = 30;
+
+    /**
+     * 下单事务的超时时间(秒)
+     */
+    private int submitTimeoutSeconds = 10;
+
+    /**
+     * 待付款订单超时自动取消的时间(分钟)
+     */
+    private long timeoutMinutes = 15;
+
+    /**
+     * 超时时间轮每格的时长(毫秒)，也是时间轮推进的间隔
+     */
+    private long timeoutTickMillis = 1000;
+
+    /**
+     * 超时时间轮每层的格数
+     */
+    private int timeoutWheelSize = 60;
+
+    /**
+     * 每次从Redis预取到时间轮中的时间范围(秒)
+     */
+    private long timeoutPrefetchSeconds = 60;
+
+    /**
+     * 批量取消超时订单时每批的订单数量
+     */
+    private int timeoutBatchSize = 500;
+
+    /**
+     * 超时调度主节点的租约时间(秒)，集群中只有主节点推进时间轮
+     */
+    private long timeoutLeaderLeaseSeconds = 10;
+
+    /**
+     * 用数据库统计结果重建订单状态计数的间隔(秒)
+     */
+    private long statusCountReconcileSeconds = 300;
+
+    /**
+     * 每份商品的打包费(分)
+     */
+    private long packFeeCents = 100;
+
+    /**
+     * 每份餐具的费用(分)
+     */
+    private long tablewareFeeCents = 0;
+
+    /**
+     * 每单的配送费(分)
+     */
+    private long deliveryFeeCents = 600;
+
+    /**
+     * 游标分页每页的最大记录数
+     */
+    private int cursorMaxPageSize = 100;
+
+    /**
+     * 游标分页总记录数的缓存时间(秒)
+     */
+    private long pageTotalCacheSeconds = 60;
+
+    /**
+     * 手机号、订单号模糊查询时检索表返回的候选订单数量上限，超过时直接按原条件查询
+     */
+    private int searchCandidateLimit = 5000;
+
+    /**
+     * 模糊查询关键字短于该长度且最少的片段也超过候选数量上限时，匹配的订单很多，不使用检索表，
+     * 直接按下单时间顺序扫描(很快就能凑满一页)
+     */
+    private int searchDenseKeywordLength = 5;
+
+    /**
+     * 检索片段的订单数量在本地的缓存时间(秒)，用于按区分度排序片段
+     */
+    private long searchGramCountTtlSeconds = 600;
+
+    /**
+     * 是否定时归档订单
+     */
+    private boolean archiveEnabled = true;
+
+    /**
+     * 已完成、已取消的订单下单超过该天数后归档
+     */
+    private long archiveAfterDays = 180;
+
+    /**
+     * 归档任务的执行间隔(秒)
+     */
+    private long archiveIntervalSeconds = 3600;
+
+    /**
+     * 每批归档的订单数量，每批在一个事务中完成
+     */
+    private int archiveBatchSize = 500;
+
+    /**
+     * 每次归档任务最多执行的批数
+     */
+    private int archiveMaxBatches = 200;
+
+    /**
+     * 归档月份列表在本地的缓存时间(秒)，新建归档月份时通过Redis频道通知所有节点刷新，错过通知时最多延迟该时间
+     */
+    private long archiveMonthsCacheSeconds = 60;
+
+}
@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order.shard")
+@Data
+public class OrderShardProperties {
+
+    /**
+     * 订单分片所在的数据库实例，分片k位于第 k % 实例数 个实例，连接池的其他配置与默认数据源相同；
+     * 为空时所有分片都在默认数据源中
+     */
+    private List<Instance> instances = new ArrayList<>();
+
+    @Data
+    public static class Instance {
+
+        private String url;
+
+        /**
+         * 为空时使用默认数据源的用户名
+         */
+        private String username;
+
+        /**
+         * 为空时使用默认数据源的密码
+         */
+        private String password;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.pay-notify")
+@Data
+public class PayNotifyProperties {
+
+    /**
+     * 支付成功处理完成后按微信支付交易号登记的保存时间(秒)，在此期间同一笔交易的重复回调直接丢弃
+     */
+    private long dedupSeconds = 604800;
+
+    /**
+     * 回调收件箱(Redis Stream)保留的最大消息数量
+     */
+    private long streamMaxLength = 100000;
+
+    /**
+     * 处理回调的线程数
+     */
+    private int workers = 4;
+
+    /**
+     * 每次从收件箱读取的最大消息数量，同时也是等待处理的消息上限
+     */
+    private int batchSize = 64;
+
+    /**
+     * 读取收件箱时的阻塞等待时间(毫秒)
+     */
+    private long pollTimeoutMillis = 2000;
+
+    /**
+     * 已读取但超过该时间(秒)未确认的消息会被重新处理，用于节点宕机后的恢复
+     */
+    private long reclaimIdleSeconds = 60;
+
+    /**
+     * 单条消息最多处理次数，超过后转入死信队列，按退避时间继续重试
+     */
+    private int maxDeliveries = 5;
+
+    /**
+     * 死信重试的最大退避时间(秒)，退避时间从 reclaimIdleSeconds 开始逐次翻倍
+     */
+    private long deadLetterMaxBackoffSeconds = 3600;
+
+}
@@ -0,0 +1,56 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.read-write")
+@Data
+public class ReadWriteProperties {
+
+    /**
+     * 是否开启读写分离，关闭时所有查询都使用主库
+     */
+    private boolean enabled = false;
+
+    /**
+     * 从库列表，连接池的其他配置与主库相同
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * 用户写入数据后在该时间(秒)内的读请求都使用主库，从库延迟更大时按延迟延长
+     */
+    private long readYourWritesSeconds = 3;
+
+    /**
+     * 从库延迟超过该时间(秒)或无法获取复制状态时不再使用该从库
+     */
+    private long maxReplicaLagSeconds = 5;
+
+    /**
+     * 检查从库延迟的间隔(毫秒)
+     */
+    private long lagCheckIntervalMillis = 1000;
+
+    @Data
+    public static class Replica {
+
+        private String url;
+
+        /**
+         * 为空时使用主库的用户名
+         */
+        private String username;
+
+        /**
+         * 为空时使用主库的密码
+         */
+        private String password;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 单次统计查询最多覆盖的天数
+     */
+    private int maxRangeDays = 366;
+
+    /**
+     * 回填历史数据时每批处理的天数，每批在各分片上聚合一次后整批写入
+     */
+    private int backfillBatchDays = 7;
+
+    /**
+     * 销量排名最多返回的数量
+     */
+    private int topMaxLimit = 100;
+
+    /**
+     * 每日活跃用户统计的保留天数
+     */
+    private long activeUserRetentionDays = 400;
+
+    /**
+     * 导出报表包含的天数(截止到昨天)
+     */
+    private int exportDays = 30;
+
+    /**
+     * 同时进行的导出数量，导出在独立的线程池中执行，线程数与此相同
+     */
+    private int exportConcurrency = 2;
+
+    /**
+     * 导出时内存中保留的行数，超出的行写入临时文件
+     */
+    private int exportRowWindow = 100;
+
+    /**
+     * 导出超时时间(秒)
+     */
+    private long exportTimeoutSeconds = 600;
+
+}
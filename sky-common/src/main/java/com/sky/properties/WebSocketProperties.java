@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个连接待发送消息队列的容量，队列满时丢弃最旧的消息
+     */
+    private int sessionQueueCapacity = 256;
+
+    /**
+     * 连接累计丢弃的消息超过该数量时主动关闭连接，由客户端重连后重新拉取数据
+     */
+    private int maxDroppedMessages = 1024;
+
+    /**
+     * 单条消息的发送超时时间(毫秒)
+     */
+    private long sendTimeoutMillis = 5000;
+
+    /**
+     * 发送消息的线程数
+     */
+    private int senderThreads = 4;
+
+}
@@ -0,0 +1,24 @@
+package com.sky.result;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 封装游标分页查询结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResult implements Serializable {
+
+    private List records; //当前页数据集合
+
+    private String nextCursor; //查询下一页时传入的游标，为空表示没有更多数据
+
+    private Long total; //总记录数，只在请求时返回，可能是短时间内缓存的值
+
+}
@@ -5,6 +5,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 public class OrdersPageQueryDTO implements Serializable {
@@ -27,4 +28,16 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //是否只查询订单概要，为true时不加载订单明细
+    private Boolean summaryOnly;
+
+    //游标分页时上一页返回的游标，为空时查询第一页
+    private String cursor;
+
+    //游标分页时是否返回总记录数
+    private Boolean withTotal;
+
+    //手机号、订单号模糊查询时由检索表得到的候选订单ID，由服务端填充
+    private List<Long> candidateIds;
+
 }
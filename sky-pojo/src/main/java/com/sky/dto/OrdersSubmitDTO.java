@@ -28,4 +28,6 @@ public class OrdersSubmitDTO implements Serializable {
     private Integer packAmount;
     //总金额
     private BigDecimal amount;
+    //幂等键，客户端重试下单时携带同一个值
+    private String idempotencyKey;
 }
@@ -9,5 +9,7 @@ public class ShoppingCartDTO implements Serializable {
     private Long dishId;
     private Long setmealId;
     private String dishFlavor;
+    //批量设置数量时使用
+    private Integer number;
 
 }
@@ -0,0 +1,45 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 每日商品销量汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyItemSales implements Serializable {
+
+    /**
+     * 商品类型 1菜品 2套餐
+     */
+    public static final Integer DISH = 1;
+    public static final Integer SETMEAL = 2;
+
+    private static final long serialVersionUID = 1L;
+
+    //日期(下单日期)
+    private LocalDate reportDate;
+
+    //商品类型
+    private Integer itemType;
+
+    //菜品id或套餐id
+    private Long itemId;
+
+    //分类id
+    private Long categoryId;
+
+    //商品名称
+    private String name;
+
+    //销量
+    private Integer number;
+}
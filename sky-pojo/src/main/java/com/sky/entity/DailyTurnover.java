@@ -0,0 +1,31 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 每日营业额汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyTurnover implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //日期(下单日期)
+    private LocalDate reportDate;
+
+    //已完成订单的金额合计
+    private BigDecimal turnover;
+
+    //已完成订单数
+    private Integer orderCount;
+}
@@ -0,0 +1,49 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 两级缓存命中统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatsVO implements Serializable {
+
+    //进程内缓存当前条目数
+    private Integer localSize;
+
+    //进程内缓存命中次数
+    private Long localHits;
+
+    //进程内缓存未命中次数
+    private Long localMisses;
+
+    //进程内缓存淘汰次数(容量淘汰、过期、失效广播)
+    private Long localEvictions;
+
+    //Redis缓存命中次数
+    private Long redisHits;
+
+    //Redis缓存未命中次数
+    private Long redisMisses;
+
+    //Redis缓存失效次数(分类版本号递增)
+    private Long redisEvictions;
+
+    //未命中进程内缓存后执行加载任务的次数
+    private Long loads;
+
+    //被合并、等待同一加载结果的次数
+    private Long coalesced;
+
+    //返回旧数据并在后台重新加载的次数
+    private Long staleHits;
+
+}
@@ -0,0 +1,50 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 报表导出的订单明细行，每个订单明细一行
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderExportRowVO implements Serializable {
+
+    //订单号
+    private String number;
+
+    //下单时间
+    private LocalDateTime orderTime;
+
+    //订单状态
+    private Integer status;
+
+    //收货人
+    private String consignee;
+
+    //手机号
+    private String phone;
+
+    //地址
+    private String address;
+
+    //商品名称
+    private String name;
+
+    //口味
+    private String dishFlavor;
+
+    //数量
+    private Integer itemNumber;
+
+    //金额
+    private BigDecimal itemAmount;
+}
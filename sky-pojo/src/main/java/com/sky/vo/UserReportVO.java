@@ -22,4 +22,7 @@ public class UserReportVO implements Serializable {
     //新增用户，以逗号分隔，例如：20,21,10
     private String newUserList;
 
+    //活跃用户(估算值)，以逗号分隔，例如：120,131,98
+    private String activeUserList;
+
 }
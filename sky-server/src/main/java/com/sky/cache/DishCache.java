@@ -0,0 +1,354 @@
+package com.sky.cache;
+
+import com.sky.properties.DishCacheProperties;
+import com.sky.vo.CacheStatsVO;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * C端菜品缓存，进程内 + Redis 两级
+ * 每个分类的缓存key带有版本号：dish_分类id_v版本号，版本号保存在 dish_gen_分类id 中，
+ * 菜品变更时只需要递增受影响分类的版本号，旧版本的key依靠过期时间自然清理，无需扫描keyspace。
+ * 进程内缓存的失效通过 Redis 发布/订阅广播到集群中的每个节点。
+ * 缓存未命中时同一分类在每个节点上只有一个加载任务，可选通过Redis租约限制为整个集群只有一个。
+ */
+@Component
+@Slf4j
+public class DishCache implements MessageListener {
+
+    //失效广播频道，消息内容为逗号分隔的分类id
+    private static final String CHANNEL = "dish_cache_evict";
+    private static final String KEY_PREFIX = "dish_";
+    private static final String GEN_PREFIX = "dish_gen_";
+    private static final String LEASE_PREFIX = "dish_lease_";
+    private static final String MODE_REDIS = "redis";
+    private static final long LEASE_POLL_MILLIS = 50;
+
+    //只有租约持有者才能释放租约
+    private static final RedisScript<Long> RELEASE_LEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private DishCacheProperties dishCacheProperties;
+
+    //按访问顺序排列的LRU，所有访问都在 synchronized(local) 内进行
+    private Map<Long, LocalEntry> local;
+
+    private final SingleFlight<Long, List<DishVO>> singleFlight = new SingleFlight<>();
+
+    //每收到一次失效就递增，加载期间发生过失效的结果不写入进程内缓存，避免旧数据覆盖失效
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    //后台刷新旧数据的线程池，队列满时直接丢弃，下次访问再刷新
+    private ThreadPoolExecutor refreshExecutor;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder localEvictions = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder redisEvictions = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int maxSize = dishCacheProperties.getLocalMaxSize();
+        local = new LinkedHashMap<Long, LocalEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LocalEntry> eldest) {
+                if (size() > maxSize) {
+                    localEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        refreshExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64),
+                r -> {
+                    Thread thread = new Thread(r, "dish-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 查询分类下的菜品，先查进程内缓存，再查Redis，都未命中时调用loader查询数据库并写入两级缓存
+     * @param categoryId 为null时表示查询全部分类，不做缓存
+     * @param loader
+     * @return
+     */
+    public List<DishVO> get(Long categoryId, Supplier<List<DishVO>> loader) {
+        if (categoryId == null) {
+            return loader.get();
+        }
+
+        LocalEntry stale = null;
+        synchronized (local) {
+            LocalEntry entry = local.get(categoryId);
+            if (entry != null) {
+                if (entry.isFresh()) {
+                    localHits.increment();
+                    return entry.value;
+                }
+                if (dishCacheProperties.isStaleWhileRevalidate()
+                        && entry.isWithinStaleWindow(dishCacheProperties.getStaleMaxSeconds())) {
+                    stale = entry;
+                } else {
+                    local.remove(categoryId);
+                    localEvictions.increment();
+                }
+            }
+        }
+
+        if (stale != null) {
+            //返回旧数据，同时在后台重新加载
+            staleHits.increment();
+            singleFlight.executeAsync(categoryId, () -> load(categoryId, loader), refreshExecutor);
+            return stale.value;
+        }
+
+        localMisses.increment();
+        return singleFlight.execute(categoryId, () -> load(categoryId, loader));
+    }
+
+    /**
+     * 使指定分类的缓存失效：递增分类的版本号，并通知其他节点清理进程内缓存
+     * @param categoryIds
+     */
+    public void invalidate(Collection<Long> categoryIds) {
+        Set<Long> ids = categoryIds == null ? new LinkedHashSet<>() : categoryIds.stream()
+                .filter(id -> id != null)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (Long categoryId : ids) {
+            stringRedisTemplate.opsForValue().increment(GEN_PREFIX + categoryId);
+        }
+        redisEvictions.add(ids.size());
+
+        evictLocal(ids);
+        redisTemplate.convertAndSend(CHANNEL, ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    /**
+     * 两级缓存的命中统计
+     * @return
+     */
+    public CacheStatsVO stats() {
+        int size;
+        synchronized (local) {
+            size = local.size();
+        }
+        return CacheStatsVO.builder()
+                .localSize(size)
+                .localHits(localHits.sum())
+                .localMisses(localMisses.sum())
+                .localEvictions(localEvictions.sum())
+                .redisHits(redisHits.sum())
+                .redisMisses(redisMisses.sum())
+                .redisEvictions(redisEvictions.sum())
+                .loads(singleFlight.getLoads())
+                .coalesced(singleFlight.getCoalesced())
+                .staleHits(staleHits.sum())
+                .build();
+    }
+
+    /**
+     * 接收失效广播，清理本节点的进程内缓存
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = (String) redisTemplate.getValueSerializer().deserialize(message.getBody());
+        log.info("收到菜品缓存失效广播：{}", body);
+        if (body == null || body.isEmpty()) {
+            return;
+        }
+        List<Long> categoryIds = Arrays.stream(body.split(","))
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+        evictLocal(categoryIds);
+    }
+
+    /**
+     * 读取Redis中当前版本的缓存，未命中时查询数据库并写回
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    private List<DishVO> load(Long categoryId, Supplier<List<DishVO>> loader) {
+        long epoch = invalidationEpoch.get();
+        //先读取当前版本号，数据库查询结果写回这一版本，期间如果版本号被递增，写回的旧版本不会再被读到
+        long gen = currentGen(categoryId);
+        String key = dataKey(categoryId, gen);
+        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (list != null) {
+            redisHits.increment();
+            putLocal(categoryId, list, epoch);
+            return list;
+        }
+        redisMisses.increment();
+
+        if (MODE_REDIS.equals(dishCacheProperties.getSingleFlightMode())) {
+            list = loadWithLease(key, loader);
+        } else {
+            list = loader.get();
+            redisTemplate.opsForValue().set(key, list, dishCacheProperties.getRedisTtlSeconds(), TimeUnit.SECONDS);
+        }
+        putLocal(categoryId, list, epoch);
+        return list;
+    }
+
+    /**
+     * 通过Redis租约保证集群中只有一个节点查询数据库，其他节点等待结果写回
+     * @param key
+     * @param loader
+     * @return
+     */
+    private List<DishVO> loadWithLease(String key, Supplier<List<DishVO>> loader) {
+        String leaseKey = LEASE_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = stringRedisTemplate.opsForValue()
+                .setIfAbsent(leaseKey, token, dishCacheProperties.getLeaseMillis(), TimeUnit.MILLISECONDS);
+
+        if (Boolean.TRUE.equals(acquired)) {
+            try {
+                List<DishVO> list = loader.get();
+                redisTemplate.opsForValue().set(key, list, dishCacheProperties.getRedisTtlSeconds(), TimeUnit.SECONDS);
+                return list;
+            } finally {
+                stringRedisTemplate.execute(RELEASE_LEASE, Collections.singletonList(leaseKey), token);
+            }
+        }
+
+        //其他节点正在加载，轮询等待结果写回
+        long deadline = System.currentTimeMillis() + dishCacheProperties.getLeaseWaitMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+            if (list != null) {
+                return list;
+            }
+        }
+
+        //等待超时，自行查询数据库，但不覆盖租约持有者的写回
+        log.warn("等待菜品缓存租约超时，直接查询数据库：{}", key);
+        List<DishVO> list = loader.get();
+        redisTemplate.opsForValue().setIfAbsent(key, list, dishCacheProperties.getRedisTtlSeconds(), TimeUnit.SECONDS);
+        return list;
+    }
+
+    private long currentGen(Long categoryId) {
+        String gen = stringRedisTemplate.opsForValue().get(GEN_PREFIX + categoryId);
+        return gen == null ? 0 : Long.parseLong(gen);
+    }
+
+    private String dataKey(Long categoryId, long gen) {
+        return KEY_PREFIX + categoryId + "_v" + gen;
+    }
+
+    private void putLocal(Long categoryId, List<DishVO> list, long epoch) {
+        long expireAt = System.currentTimeMillis() + dishCacheProperties.getLocalTtlSeconds() * 1000;
+        synchronized (local) {
+            if (invalidationEpoch.get() != epoch) {
+                return;
+            }
+            local.put(categoryId, new LocalEntry(list, expireAt));
+        }
+    }
+
+    /**
+     * 清理进程内缓存，开启 stale-while-revalidate 时只标记为旧数据
+     * @param categoryIds
+     */
+    private void evictLocal(Collection<Long> categoryIds) {
+        boolean keepStale = dishCacheProperties.isStaleWhileRevalidate();
+        long now = System.currentTimeMillis();
+        synchronized (local) {
+            invalidationEpoch.incrementAndGet();
+            for (Long categoryId : categoryIds) {
+                if (keepStale) {
+                    LocalEntry entry = local.get(categoryId);
+                    if (entry != null && entry.staleSince == 0) {
+                        entry.staleSince = now;
+                        localEvictions.increment();
+                    }
+                } else if (local.remove(categoryId) != null) {
+                    localEvictions.increment();
+                }
+            }
+        }
+    }
+
+    private static class LocalEntry {
+        private final List<DishVO> value;
+        private final long expireAt;
+        //被失效广播标记为旧数据的时间，0表示未被标记
+        private volatile long staleSince;
+
+        LocalEntry(List<DishVO> value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isFresh() {
+            return staleSince == 0 && System.currentTimeMillis() <= expireAt;
+        }
+
+        boolean isWithinStaleWindow(long staleMaxSeconds) {
+            long staleStart = staleSince == 0 ? expireAt : Math.min(staleSince, expireAt);
+            return System.currentTimeMillis() - staleStart <= staleMaxSeconds * 1000;
+        }
+    }
+}
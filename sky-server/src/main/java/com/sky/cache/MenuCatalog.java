@@ -0,0 +1,185 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.MenuCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内的菜品、套餐目录，按ID缓存名称、图片、价格、状态
+ * 未命中的ID一次性批量查询；菜品或套餐修改后通过Redis频道通知所有节点清理，
+ * 缓存数量有上限(LRU淘汰)且按过期时间兜底，错过失效广播时旧数据最多保留一个过期时间
+ */
+@Component
+@Slf4j
+public class MenuCatalog implements MessageListener {
+
+    //失效广播频道，消息内容为 d:1,2,3 或 s:1,2,3
+    private static final String CHANNEL = "menu_catalog_evict";
+    private static final String DISH = "d";
+    private static final String SETMEAL = "s";
+
+    //按访问顺序排列的LRU缓存，读写都在缓存对象上加锁
+    private Map<Long, CachedItem<Dish>> dishes;
+    private Map<Long, CachedItem<Setmeal>> setmeals;
+
+    //每次清理加一，查询期间发生过清理时查询结果不放入缓存，避免旧数据覆盖清理
+    private final AtomicLong evictionEpoch = new AtomicLong();
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+
+    @PostConstruct
+    public void init() {
+        dishes = lru(menuCacheProperties.getMaxSize());
+        setmeals = lru(menuCacheProperties.getMaxSize());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 批量获取菜品，不存在的菜品不在结果中
+     * @param ids
+     * @return 菜品ID -> 菜品
+     */
+    public Map<Long, Dish> getDishes(Collection<Long> ids) {
+        return get(ids, dishes, dishMapper::getByIds, Dish::getId);
+    }
+
+    /**
+     * 批量获取套餐，不存在的套餐不在结果中
+     * @param ids
+     * @return 套餐ID -> 套餐
+     */
+    public Map<Long, Setmeal> getSetmeals(Collection<Long> ids) {
+        return get(ids, setmeals, setmealMapper::getByIds, Setmeal::getId);
+    }
+
+    /**
+     * 菜品修改后清理所有节点的缓存
+     * @param ids
+     */
+    public void evictDishes(Collection<Long> ids) {
+        evict(DISH, ids);
+    }
+
+    /**
+     * 套餐修改后清理所有节点的缓存
+     * @param ids
+     */
+    public void evictSetmeals(Collection<Long> ids) {
+        evict(SETMEAL, ids);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.info("收到菜品目录失效广播：{}", body);
+        int index = body.indexOf(':');
+        if (index <= 0 || index == body.length() - 1) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (String id : body.substring(index + 1).split(",")) {
+            ids.add(Long.valueOf(id));
+        }
+        evictLocal(DISH.equals(body.substring(0, index)) ? dishes : setmeals, ids);
+    }
+
+    private <T> Map<Long, T> get(Collection<Long> ids, Map<Long, CachedItem<T>> cache,
+                                 Function<List<Long>, List<T>> loader, Function<T, Long> idGetter) {
+        Map<Long, T> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            for (Long id : ids) {
+                CachedItem<T> entry = cache.get(id);
+                if (entry != null && now <= entry.expireAt) {
+                    result.put(id, entry.value);
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            long epoch = evictionEpoch.get();
+            List<T> loaded = loader.apply(new ArrayList<>(missing));
+            long expireAt = System.currentTimeMillis() + menuCacheProperties.getTtlSeconds() * 1000;
+            synchronized (cache) {
+                boolean cacheable = evictionEpoch.get() == epoch;
+                for (T value : loaded) {
+                    result.put(idGetter.apply(value), value);
+                    if (cacheable) {
+                        cache.put(idGetter.apply(value), new CachedItem<>(value, expireAt));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void evict(String type, Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        evictLocal(DISH.equals(type) ? dishes : setmeals, ids);
+        stringRedisTemplate.convertAndSend(CHANNEL,
+                type + ":" + ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    private void evictLocal(Map<Long, ? extends CachedItem<?>> cache, Collection<Long> ids) {
+        synchronized (cache) {
+            evictionEpoch.incrementAndGet();
+            ids.forEach(cache::remove);
+        }
+    }
+
+    private static <T> Map<Long, CachedItem<T>> lru(int maxSize) {
+        return new LinkedHashMap<Long, CachedItem<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedItem<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static class CachedItem<T> {
+        private final T value;
+        private final long expireAt;
+
+        CachedItem(T value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.sky.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并：同一个key同一时刻只有一个加载任务在执行，并发的调用方等待并共享同一个结果
+ * @param <K>
+ * @param <V>
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    //真正执行加载的次数
+    private final LongAdder loads = new LongAdder();
+    //被合并、等待其他调用方结果的次数
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 执行加载，如果同一个key已有加载任务在执行，则等待该任务的结果
+     * @param key
+     * @param loader
+     * @return
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 在后台线程执行加载，如果同一个key已有加载任务在执行则直接忽略
+     * @param key
+     * @param loader
+     * @param executor
+     */
+    public void executeAsync(K key, Supplier<V> loader, Executor executor) {
+        if (inFlight.containsKey(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> execute(key, loader));
+        } catch (RejectedExecutionException e) {
+            //后台刷新队列已满，下次访问时再刷新
+        }
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
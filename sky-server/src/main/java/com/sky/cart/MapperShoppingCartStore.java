@@ -0,0 +1,61 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 直接读写 shopping_cart 表的购物车存储
+ */
+@Component
+@ConditionalOnProperty(name = "sky.cart.store", havingValue = "mapper", matchIfMissing = true)
+public class MapperShoppingCartStore implements ShoppingCartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Override
+    public void add(ShoppingCart item, Consumer<ShoppingCart> detailLoader) {
+        //一条 insert ... on duplicate key update，商品信息直接从菜品/套餐表查询，不需要 detailLoader
+        shoppingCartMapper.upsertIncrement(item);
+    }
+
+    @Override
+    public void sub(ShoppingCart item) {
+        shoppingCartMapper.decrement(item);
+    }
+
+    @Override
+    public void setNumbers(Long userId, List<ShoppingCart> items, Consumer<ShoppingCart> detailLoader) {
+        if (items.isEmpty()) {
+            return;
+        }
+        items.forEach(item -> item.setUserId(userId));
+        shoppingCartMapper.setNumbers(items);
+    }
+
+    @Override
+    public void addAll(List<ShoppingCart> items) {
+        if (!items.isEmpty()) {
+            shoppingCartMapper.insertBatchMerge(items);
+        }
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    @Override
+    public void clean(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+}
@@ -0,0 +1,346 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 基于Redis哈希的购物车存储
+ * cart_{userId} 保存 商品 -> 数量，cart_meta_{userId} 保存 商品 -> 名称、图片、金额等信息，
+ * 商品由菜品ID+口味或套餐ID确定，数量通过 HINCRBY 原子增减；
+ * 开启回写时修改过的用户记录在 cart_dirty 中，由定时任务整体写回 shopping_cart 表，
+ * Redis中没有的购物车先从MySQL加载，加载过的购物车用占位字段标记
+ */
+@Component
+@ConditionalOnProperty(name = "sky.cart.store", havingValue = "redis")
+@Slf4j
+public class RedisShoppingCartStore implements ShoppingCartStore {
+
+    private static final String KEY_PREFIX = "cart_";
+    private static final String META_KEY_PREFIX = "cart_meta_";
+    private static final String DIRTY_KEY = "cart_dirty";
+
+    //购物车已加载的占位字段，开启回写时使用
+    private static final String LOADED_FIELD = "#";
+
+    //KEYS: 数量、商品信息、待回写用户；ARGV: 商品、增量、过期时间、是否回写、商品信息、用户ID
+    //开启回写且购物车未加载时返回-1，否则返回商品的新数量
+    private static final RedisScript<Long> ADD = new DefaultRedisScript<>(
+            "if ARGV[4] == '1' and redis.call('exists', KEYS[1]) == 0 then return -1 end "
+                    + "local n = redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "if ARGV[5] ~= '' then redis.call('hset', KEYS[2], ARGV[1], ARGV[5]) end "
+                    + "redis.call('pexpire', KEYS[1], ARGV[3]) redis.call('pexpire', KEYS[2], ARGV[3]) "
+                    + "if ARGV[4] == '1' then redis.call('sadd', KEYS[3], ARGV[6]) end "
+                    + "return n",
+            Long.class);
+
+    //KEYS: 数量、商品信息、待回写用户；ARGV: 过期时间、是否回写、用户ID，之后每三个一组为 商品、增量、商品信息
+    //开启回写且购物车未加载时返回-1
+    private static final RedisScript<Long> ADD_ALL = new DefaultRedisScript<>(
+            "if ARGV[2] == '1' and redis.call('exists', KEYS[1]) == 0 then return -1 end "
+                    + "for i = 4, #ARGV, 3 do "
+                    + "redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1]) redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) end "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) redis.call('pexpire', KEYS[2], ARGV[1]) "
+                    + "if ARGV[2] == '1' then redis.call('sadd', KEYS[3], ARGV[3]) end "
+                    + "return 1",
+            Long.class);
+
+    //KEYS: 数量、商品信息、待回写用户；ARGV: 商品、过期时间、是否回写、用户ID
+    //开启回写且购物车未加载时返回-1，否则返回商品的新数量，减到0时移出购物车
+    private static final RedisScript<Long> SUB = new DefaultRedisScript<>(
+            "if ARGV[3] == '1' and redis.call('exists', KEYS[1]) == 0 then return -1 end "
+                    + "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return 0 end "
+                    + "local n = redis.call('hincrby', KEYS[1], ARGV[1], -1) "
+                    + "if n <= 0 then redis.call('hdel', KEYS[1], ARGV[1]) redis.call('hdel', KEYS[2], ARGV[1]) n = 0 end "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) redis.call('pexpire', KEYS[2], ARGV[2]) "
+                    + "if ARGV[3] == '1' then redis.call('sadd', KEYS[3], ARGV[4]) end "
+                    + "return n",
+            Long.class);
+
+    //KEYS: 数量、商品信息、待回写用户；ARGV: 过期时间、是否回写、用户ID，之后每两个一组为 商品、数量
+    //开启回写且购物车未加载时返回只包含占位字段的列表，否则返回还没有商品信息的商品
+    private static final RedisScript<List> SET_NUMBERS = new DefaultRedisScript<>(
+            "if ARGV[2] == '1' and redis.call('exists', KEYS[1]) == 0 then return {'" + LOADED_FIELD + "'} end "
+                    + "local missing = {} "
+                    + "for i = 4, #ARGV, 2 do "
+                    + "if tonumber(ARGV[i + 1]) > 0 then "
+                    + "redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) "
+                    + "if redis.call('hexists', KEYS[2], ARGV[i]) == 0 then table.insert(missing, ARGV[i]) end "
+                    + "else redis.call('hdel', KEYS[1], ARGV[i]) redis.call('hdel', KEYS[2], ARGV[i]) end end "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) redis.call('pexpire', KEYS[2], ARGV[1]) "
+                    + "if ARGV[2] == '1' then redis.call('sadd', KEYS[3], ARGV[3]) end "
+                    + "return missing",
+            List.class);
+
+    //KEYS: 数量、商品信息、待回写用户；ARGV: 过期时间、是否回写、用户ID
+    private static final RedisScript<Long> CLEAN = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1], KEYS[2]) "
+                    + "if ARGV[2] == '1' then "
+                    + "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', 0) redis.call('pexpire', KEYS[1], ARGV[1]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[3]) end "
+                    + "return 1",
+            Long.class);
+
+    //KEYS: 数量、商品信息；ARGV: 过期时间，之后每三个一组为 商品、数量、商品信息
+    //其他请求已经加载过时不再覆盖
+    private static final RedisScript<Long> LOAD = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end "
+                    + "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', 0) "
+                    + "for i = 2, #ARGV, 3 do "
+                    + "redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) end "
+                    + "redis.call('pexpire', KEYS[1], ARGV[1]) redis.call('pexpire', KEYS[2], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+
+    @Override
+    public void add(ShoppingCart item, Consumer<ShoppingCart> detailLoader) {
+        String field = itemKey(item);
+        long number = increment(item.getUserId(), field, 1, "");
+        if (number == 1) {
+            //第一次加入购物车，补全商品信息
+            detailLoader.accept(item);
+            item.setCreateTime(LocalDateTime.now());
+            increment(item.getUserId(), field, 0, JSON.toJSONString(item));
+        }
+    }
+
+    @Override
+    public void sub(ShoppingCart item) {
+        List<String> keys = keys(item.getUserId());
+        String[] args = {itemKey(item), String.valueOf(ttlMillis()), writeBehindFlag(), String.valueOf(item.getUserId())};
+        Long number = stringRedisTemplate.execute(SUB, keys, (Object[]) args);
+        if (number != null && number == -1) {
+            load(item.getUserId());
+            stringRedisTemplate.execute(SUB, keys, (Object[]) args);
+        }
+    }
+
+    @Override
+    public void setNumbers(Long userId, List<ShoppingCart> items, Consumer<ShoppingCart> detailLoader) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Map<String, ShoppingCart> itemMap = new HashMap<>();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ttlMillis()));
+        args.add(writeBehindFlag());
+        args.add(String.valueOf(userId));
+        for (ShoppingCart item : items) {
+            item.setUserId(userId);
+            String field = itemKey(item);
+            itemMap.put(field, item);
+            args.add(field);
+            args.add(String.valueOf(item.getNumber() == null ? 0 : item.getNumber()));
+        }
+
+        List<String> keys = keys(userId);
+        List<?> missing = stringRedisTemplate.execute(SET_NUMBERS, keys, args.toArray());
+        if (missing != null && missing.size() == 1 && LOADED_FIELD.equals(missing.get(0))) {
+            //Redis中还没有该用户的购物车，先从MySQL加载
+            load(userId);
+            missing = stringRedisTemplate.execute(SET_NUMBERS, keys, args.toArray());
+        }
+
+        //新加入购物车的商品补全商品信息
+        if (missing != null) {
+            for (Object field : missing) {
+                ShoppingCart item = itemMap.get(field.toString());
+                detailLoader.accept(item);
+                item.setCreateTime(LocalDateTime.now());
+                increment(userId, field.toString(), 0, JSON.toJSONString(item));
+            }
+        }
+    }
+
+    @Override
+    public void addAll(List<ShoppingCart> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        //同一批商品属于同一个用户，一次脚本调用全部加入
+        Long userId = items.get(0).getUserId();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ttlMillis()));
+        args.add(writeBehindFlag());
+        args.add(String.valueOf(userId));
+        for (ShoppingCart item : items) {
+            args.add(itemKey(item));
+            args.add(String.valueOf(item.getNumber()));
+            args.add(JSON.toJSONString(item));
+        }
+        List<String> keys = keys(userId);
+        Long result = stringRedisTemplate.execute(ADD_ALL, keys, args.toArray());
+        if (result != null && result == -1) {
+            load(userId);
+            stringRedisTemplate.execute(ADD_ALL, keys, args.toArray());
+        }
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        List<ShoppingCart> list = read(userId);
+        if (list == null) {
+            if (!cartProperties.isWriteBehind()) {
+                return new ArrayList<>();
+            }
+            load(userId);
+            list = read(userId);
+        }
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    @Override
+    public void clean(Long userId) {
+        //下单时在事务提交后再清空，事务回滚时购物车保持不变
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doClean(userId);
+                }
+            });
+        } else {
+            doClean(userId);
+        }
+    }
+
+    /**
+     * 将修改过的购物车整体写回MySQL
+     */
+    @Scheduled(fixedDelayString = "${sky.cart.flush-interval-millis:5000}")
+    public void flush() {
+        if (!cartProperties.isWriteBehind()) {
+            return;
+        }
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, cartProperties.getFlushBatchSize());
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        for (String userId : userIds) {
+            try {
+                List<ShoppingCart> list = read(Long.valueOf(userId));
+                if (list == null) {
+                    //购物车已过期，MySQL中的数据保持不变
+                    continue;
+                }
+                transactionTemplate.execute(status -> {
+                    shoppingCartMapper.deleteByUserId(Long.valueOf(userId));
+                    if (!list.isEmpty()) {
+                        shoppingCartMapper.insertBatch(list);
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.error("购物车回写失败：{}", userId, e);
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, userId);
+            }
+        }
+        log.info("购物车回写完成，共 {} 个用户", userIds.size());
+    }
+
+    private long increment(Long userId, String field, int delta, String meta) {
+        List<String> keys = keys(userId);
+        String[] args = {field, String.valueOf(delta), String.valueOf(ttlMillis()), writeBehindFlag(), meta, String.valueOf(userId)};
+        Long number = stringRedisTemplate.execute(ADD, keys, (Object[]) args);
+        if (number != null && number == -1) {
+            //Redis中还没有该用户的购物车，先从MySQL加载
+            load(userId);
+            number = stringRedisTemplate.execute(ADD, keys, (Object[]) args);
+        }
+        return number == null ? 0 : number;
+    }
+
+    private void doClean(Long userId) {
+        stringRedisTemplate.execute(CLEAN, keys(userId),
+                String.valueOf(ttlMillis()), writeBehindFlag(), String.valueOf(userId));
+    }
+
+    /**
+     * 从MySQL加载购物车到Redis
+     */
+    private void load(Long userId) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ttlMillis()));
+        for (ShoppingCart cart : shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build())) {
+            args.add(itemKey(cart));
+            args.add(String.valueOf(cart.getNumber()));
+            args.add(JSON.toJSONString(cart));
+        }
+        stringRedisTemplate.execute(LOAD, keys(userId), args.toArray());
+    }
+
+    /**
+     * 读取Redis中的购物车
+     * @return Redis中没有该用户的购物车时返回null
+     */
+    private List<ShoppingCart> read(Long userId) {
+        Map<Object, Object> counts = stringRedisTemplate.opsForHash().entries(KEY_PREFIX + userId);
+        if (counts.isEmpty()) {
+            return null;
+        }
+        Map<Object, Object> metas = stringRedisTemplate.opsForHash().entries(META_KEY_PREFIX + userId);
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : counts.entrySet()) {
+            int number = Integer.parseInt((String) entry.getValue());
+            Object meta = metas.get(entry.getKey());
+            //占位字段、数量已减到0、商品信息还未写入的商品不返回
+            if (LOADED_FIELD.equals(entry.getKey()) || number <= 0 || meta == null) {
+                continue;
+            }
+            ShoppingCart cart = JSON.parseObject((String) meta, ShoppingCart.class);
+            cart.setId(null);
+            cart.setUserId(userId);
+            cart.setNumber(number);
+            list.add(cart);
+        }
+        return list;
+    }
+
+    private String itemKey(ShoppingCart item) {
+        if (item.getDishId() != null) {
+            return "d" + item.getDishId() + ":" + (item.getDishFlavor() == null ? "" : item.getDishFlavor());
+        }
+        return "s" + item.getSetmealId();
+    }
+
+    private List<String> keys(Long userId) {
+        return Arrays.asList(KEY_PREFIX + userId, META_KEY_PREFIX + userId, DIRTY_KEY);
+    }
+
+    private String writeBehindFlag() {
+        return cartProperties.isWriteBehind() ? "1" : "0";
+    }
+
+    private long ttlMillis() {
+        return cartProperties.getTtlSeconds() * 1000;
+    }
+}
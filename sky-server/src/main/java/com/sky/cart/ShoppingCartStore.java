@@ -0,0 +1,52 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 购物车存储
+ */
+public interface ShoppingCartStore {
+
+    /**
+     * 将商品数量加一，商品不在购物车中时先由 detailLoader 补全名称、图片、金额再加入
+     * @param item 用户ID、菜品ID/套餐ID、口味
+     * @param detailLoader
+     */
+    void add(ShoppingCart item, Consumer<ShoppingCart> detailLoader);
+
+    /**
+     * 将商品数量减一，减到0时移出购物车
+     * @param item 用户ID、菜品ID/套餐ID、口味
+     */
+    void sub(ShoppingCart item);
+
+    /**
+     * 批量设置商品数量，数量小于等于0的商品移出购物车
+     * @param userId
+     * @param items 菜品ID/套餐ID、口味、数量
+     * @param detailLoader 补全新加入商品的名称、图片、金额
+     */
+    void setNumbers(Long userId, List<ShoppingCart> items, Consumer<ShoppingCart> detailLoader);
+
+    /**
+     * 批量加入完整的购物车商品，已存在的商品累加数量并使用新的名称、图片、金额
+     * @param items 同一个用户的商品
+     */
+    void addAll(List<ShoppingCart> items);
+
+    /**
+     * 查询用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+}
@@ -0,0 +1,84 @@
+package com.sky.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.sky.datasource.ShardRoutingDataSource;
+import com.sky.properties.OrderShardProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单分片多实例配置，配置了 sky.order.shard.instances 时生效
+ * 在默认数据源(开启读写分离时为读写分离数据源)外包装一层分片路由，指定了分片的语句使用分片所在的实例；
+ * 各实例的连接池配置来自 spring.datasource.druid，只覆盖地址和账号
+ */
+@Configuration
+@ConditionalOnProperty(name = "sky.order.shard.instances[0].url")
+@Slf4j
+public class OrderShardDataSourceConfiguration {
+
+    private static final String DATA_SOURCE_BEAN_NAME = "dataSource";
+
+    @Bean
+    public static BeanPostProcessor orderShardDataSourcePostProcessor() {
+        return new ShardDataSourcePostProcessor();
+    }
+
+    /**
+     * 数据源由Druid或读写分离配置创建，这里在其创建完成后替换为分片路由数据源
+     */
+    private static class ShardDataSourcePostProcessor implements BeanPostProcessor, EnvironmentAware, DisposableBean {
+
+        private Environment environment;
+        private final List<DruidDataSource> instances = new ArrayList<>();
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!DATA_SOURCE_BEAN_NAME.equals(beanName) || !(bean instanceof DataSource)) {
+                return bean;
+            }
+            OrderShardProperties orderShardProperties = Binder.get(environment)
+                    .bind("sky.order.shard", OrderShardProperties.class).orElseGet(OrderShardProperties::new);
+            log.info("开始创建订单分片数据源，实例数量：{}", orderShardProperties.getInstances().size());
+            for (OrderShardProperties.Instance instance : orderShardProperties.getInstances()) {
+                DruidDataSource dataSource = ReadWriteDataSourceConfiguration.druidDataSource(environment);
+                dataSource.setUrl(instance.getUrl());
+                if (instance.getUsername() != null) {
+                    dataSource.setUsername(instance.getUsername());
+                }
+                if (instance.getPassword() != null) {
+                    dataSource.setPassword(instance.getPassword());
+                }
+                instances.add(dataSource);
+            }
+            //读写分离数据源已有延迟获取连接的代理，直接路由到被代理的数据源
+            DataSource defaultDataSource = bean instanceof LazyConnectionDataSourceProxy
+                    ? ((LazyConnectionDataSourceProxy) bean).getTargetDataSource() : (DataSource) bean;
+            ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(defaultDataSource, instances);
+            routingDataSource.afterPropertiesSet();
+            //事务的第一条语句执行时才确定分片所在的实例
+            return new LazyConnectionDataSourceProxy(routingDataSource);
+        }
+
+        @Override
+        public void destroy() {
+            instances.forEach(DruidDataSource::close);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sky.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.sky.datasource.ReadWriteRoutingDataSource;
+import com.sky.datasource.StatementRouteInterceptor;
+import com.sky.properties.ReadWriteProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置，开启后替代默认的Druid数据源
+ * 主库和从库的连接池配置都来自 spring.datasource.druid，从库只覆盖地址和账号
+ */
+@Configuration
+@ConditionalOnProperty(name = "sky.read-write.enabled", havingValue = "true")
+@Slf4j
+public class ReadWriteDataSourceConfiguration {
+
+    private static final String DRUID_PREFIX = "spring.datasource.druid";
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(Environment environment, ReadWriteProperties readWriteProperties) {
+        log.info("开始创建读写分离数据源，从库数量：{}", readWriteProperties.getReplicas().size());
+        DruidDataSource primary = druidDataSource(environment);
+        List<DruidDataSource> replicas = new ArrayList<>();
+        for (ReadWriteProperties.Replica replica : readWriteProperties.getReplicas()) {
+            DruidDataSource replicaDataSource = druidDataSource(environment);
+            replicaDataSource.setUrl(replica.getUrl());
+            if (replica.getUsername() != null) {
+                replicaDataSource.setUsername(replica.getUsername());
+            }
+            if (replica.getPassword() != null) {
+                replicaDataSource.setPassword(replica.getPassword());
+            }
+            replicas.add(replicaDataSource);
+        }
+        ReadWriteRoutingDataSource routingDataSource =
+                new ReadWriteRoutingDataSource(primary, replicas, readWriteProperties.getMaxReplicaLagSeconds());
+        routingDataSource.startLagCheck(readWriteProperties.getLagCheckIntervalMillis());
+        return routingDataSource;
+    }
+
+    /**
+     * 延迟到执行第一条语句时才获取连接，此时事务的只读属性和当前语句类型已经确定
+     * @param readWriteRoutingDataSource
+     * @return
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    @Bean
+    public StatementRouteInterceptor statementRouteInterceptor() {
+        return new StatementRouteInterceptor();
+    }
+
+    /**
+     * 按默认数据源的连接池配置创建Druid数据源
+     * @param environment
+     * @return
+     */
+    static DruidDataSource druidDataSource(Environment environment) {
+        DruidDataSource dataSource = new DruidDataSource();
+        Binder.get(environment).bind(DRUID_PREFIX, Bindable.ofInstance(dataSource));
+        return dataSource;
+    }
+}
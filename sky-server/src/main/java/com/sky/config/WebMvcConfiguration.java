@@ -2,13 +2,17 @@ package com.sky.config;
 
 import com.sky.interceptor.JwtTokenAdminInterceptor;
 import com.sky.interceptor.JwtTokenUserInterceptor;
+import com.sky.interceptor.ReadWriteRouteInterceptor;
 import com.sky.json.JacksonObjectMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.report.ReportExporter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
@@ -20,6 +24,7 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 配置类，注册web层相关组件
@@ -34,6 +39,15 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
     @Autowired
     private JwtTokenUserInterceptor jwtTokenUserInterceptor;
 
+    @Autowired
+    private ReadWriteRouteInterceptor readWriteRouteInterceptor;
+
+    @Autowired
+    private ReportExporter reportExporter;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
     /**
      * 注册自定义拦截器
      *
@@ -49,6 +63,20 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
                 .addPathPatterns("/user/**")
                 .excludePathPatterns("/user/user/login")
                 .excludePathPatterns("/user/shop/status"); //营业状态查询
+
+        //读写分离，需在令牌校验之后执行以获取当前用户
+        registry.addInterceptor(readWriteRouteInterceptor)
+                .addPathPatterns("/admin/**", "/user/**");
+    }
+
+    /**
+     * 异步请求(目前只有报表导出)在导出专用的线程池中执行
+     *
+     * @param configurer
+     */
+    protected void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(reportExporter.getExecutor());
+        configurer.setDefaultTimeout(TimeUnit.SECONDS.toMillis(reportProperties.getExportTimeoutSeconds()));
     }
 
     /**
@@ -1,21 +1,23 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.DishCache;
+import com.sky.cache.MenuCatalog;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.DishService;
+import com.sky.vo.CacheStatsVO;
 import com.sky.vo.DishVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 /**
  * 菜品管理
@@ -29,7 +31,9 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private DishCache dishCache;
+    @Autowired
+    private MenuCatalog menuCatalog;
 
     /**
      * 新增菜品
@@ -43,8 +47,7 @@ public class DishController {
         dishService.saveWithFlavor(dishDTO);
 
         //清理缓存数据
-        String key = "dish_" + dishDTO.getCategoryId();
-        clearRedisCache(key);
+        dishCache.invalidate(Collections.singletonList(dishDTO.getCategoryId()));
 
         return Result.success();
     }
@@ -71,10 +74,13 @@ public class DishController {
     @ApiOperation("菜品批量删除")
     public Result deleteByIds(@RequestParam List<Long> ids){
         log.info("菜品批量删除：{}", ids);
+        //删除前先查出菜品所属的分类
+        List<Long> categoryIds = dishService.getCategoryIdsByIds(ids);
         dishService.deleteBatch(ids);
 
-        //将所有的菜品缓存数据清理掉，所有以dish_开头的key
-        clearRedisCache("dish_*");
+        //只清理受影响分类的缓存
+        dishCache.invalidate(categoryIds);
+        menuCatalog.evictDishes(ids);
 
         return Result.success();
     }
@@ -101,10 +107,13 @@ public class DishController {
     @ApiOperation("更新菜品")
     public Result update(@RequestBody DishDTO dishDTO){
         log.info("更新菜品:{}", dishDTO);
+        //菜品可能被移动到其他分类，原分类和新分类的缓存都需要清理
+        List<Long> categoryIds = dishService.getCategoryIdsByIds(Collections.singletonList(dishDTO.getId()));
         dishService.updateWithFlavor(dishDTO);
 
-        //将所有的菜品缓存数据清理掉，所有以dish_开头的key
-        clearRedisCache("dish_*");
+        categoryIds.add(dishDTO.getCategoryId());
+        dishCache.invalidate(categoryIds);
+        menuCatalog.evictDishes(Collections.singletonList(dishDTO.getId()));
 
         return Result.success();
     }
@@ -121,16 +130,21 @@ public class DishController {
         log.info("更新ID为{}的菜品状态为{}", id, status);
         dishService.setStatus(status, id);
 
-        //将所有的菜品缓存数据清理掉，所有以dish_开头的key
-        clearRedisCache("dish_*");
+        //只清理菜品所属分类的缓存
+        dishCache.invalidate(dishService.getCategoryIdsByIds(Collections.singletonList(id)));
+        menuCatalog.evictDishes(Collections.singletonList(id));
 
         return Result.success();
     }
 
-    private void clearRedisCache(String pattern){
-        //将所有的菜品缓存数据清理掉，所有以dish_开头的key
-        Set keys = redisTemplate.keys("dish_*");
-        redisTemplate.delete(keys);
+    /**
+     * 查询C端菜品缓存命中统计
+     * @return
+     */
+    @GetMapping("/cache/stats")
+    @ApiOperation("查询菜品缓存命中统计")
+    public Result<CacheStatsVO> cacheStats(){
+        return Result.success(dishCache.stats());
     }
 
     /**
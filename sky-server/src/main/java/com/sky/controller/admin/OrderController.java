@@ -2,8 +2,10 @@ package com.sky.controller.admin;
 
 
 import com.sky.dto.OrderIdDTO;
+import com.sky.dto.OrdersCancelDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersRejectionDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -39,6 +41,19 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 订单搜索(游标分页)
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @GetMapping("/conditionSearch/cursor")
+    @ApiOperation("订单搜索(游标分页)")
+    public Result<CursorPageResult> pageByCursor(OrdersPageQueryDTO ordersPageQueryDTO){
+        log.info("订单搜索(游标分页):{}", ordersPageQueryDTO);
+        CursorPageResult cursorPageResult = orderService.pageByCursor(ordersPageQueryDTO);
+        return Result.success(cursorPageResult);
+    }
+
     /**
      * 各个状态的订单数量统计
      * @return
@@ -48,7 +63,7 @@ public class OrderController {
     public Result<OrderStatisticsVO> statistics(){
         log.info("各个状态的订单数量统计");
         OrderStatisticsVO orderStatisticsVO = orderService.statistics();
-        return Result.success();
+        return Result.success(orderStatisticsVO);
     }
 
     /**
@@ -90,4 +105,43 @@ public class OrderController {
         return Result.success();
     }
 
+    /**
+     * 取消订单
+     * @param ordersCancelDTO
+     * @return
+     */
+    @PutMapping("/cancel")
+    @ApiOperation("取消订单")
+    public Result cancel(@RequestBody OrdersCancelDTO ordersCancelDTO){
+        log.info("取消订单:{}", ordersCancelDTO);
+        orderService.adminCancel(ordersCancelDTO);
+        return Result.success();
+    }
+
+    /**
+     * 派送订单
+     * @param id
+     * @return
+     */
+    @PutMapping("/delivery/{id}")
+    @ApiOperation("派送订单")
+    public Result delivery(@PathVariable Long id){
+        log.info("派送订单:{}", id);
+        orderService.delivery(id);
+        return Result.success();
+    }
+
+    /**
+     * 完成订单
+     * @param id
+     * @return
+     */
+    @PutMapping("/complete/{id}")
+    @ApiOperation("完成订单")
+    public Result complete(@PathVariable Long id){
+        log.info("完成订单:{}", id);
+        orderService.complete(id);
+        return Result.success();
+    }
+
 }
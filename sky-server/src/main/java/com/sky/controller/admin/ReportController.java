@@ -0,0 +1,132 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.service.ReportService;
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/admin/report")
+@Api(tags = "数据统计相关接口")
+@Slf4j
+public class ReportController {
+
+    @Autowired
+    private ReportService reportService;
+
+    /**
+     * 营业额统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/turnoverStatistics")
+    @ApiOperation("营业额统计")
+    public Result<TurnoverReportVO> turnoverStatistics(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("营业额统计:{} ~ {}", begin, end);
+        return Result.success(reportService.getTurnoverStatistics(begin, end));
+    }
+
+    /**
+     * 回填营业额汇总
+     * @param begin
+     * @param end
+     * @return 有已完成订单的天数
+     */
+    @PostMapping("/turnoverStatistics/backfill")
+    @ApiOperation("回填营业额汇总")
+    public Result<Integer> backfillTurnover(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("回填营业额汇总:{} ~ {}", begin, end);
+        return Result.success(reportService.backfillTurnover(begin, end));
+    }
+
+    /**
+     * 销量排名
+     * @param begin
+     * @param end
+     * @param type dish、setmeal、category，为空表示菜品和套餐一起排名
+     * @param categoryId 只统计该分类下的菜品、套餐
+     * @param limit 默认前10名
+     * @return
+     */
+    @GetMapping("/top10")
+    @ApiOperation("销量排名")
+    public Result<SalesTop10ReportVO> top10(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                                            String type, Long categoryId, Integer limit){
+        log.info("销量排名:{} ~ {}，类型：{}，分类：{}，数量：{}", begin, end, type, categoryId, limit);
+        return Result.success(reportService.getSalesTop(begin, end, type, categoryId, limit));
+    }
+
+    /**
+     * 回填商品销量汇总
+     * @param begin
+     * @param end
+     * @return 写入的汇总记录数
+     */
+    @PostMapping("/top10/backfill")
+    @ApiOperation("回填商品销量汇总")
+    public Result<Integer> backfillSales(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                         @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("回填商品销量汇总:{} ~ {}", begin, end);
+        return Result.success(reportService.backfillSales(begin, end));
+    }
+
+    /**
+     * 用户统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/userStatistics")
+    @ApiOperation("用户统计")
+    public Result<UserReportVO> userStatistics(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                               @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("用户统计:{} ~ {}", begin, end);
+        return Result.success(reportService.getUserStatistics(begin, end));
+    }
+
+    /**
+     * 从用户表回填每日新增用户数，只需在启用用户统计时执行一次
+     * @return 有新增用户的天数
+     */
+    @PostMapping("/userStatistics/backfill")
+    @ApiOperation("回填每日新增用户数")
+    public Result<Integer> backfillUsers(){
+        log.info("回填每日新增用户数");
+        return Result.success(reportService.backfillUsers());
+    }
+
+    /**
+     * 导出运营数据报表
+     * @return
+     */
+    @GetMapping("/export")
+    @ApiOperation("导出运营数据报表")
+    public ResponseEntity<StreamingResponseBody> export(){
+        log.info("导出运营数据报表");
+        StreamingResponseBody body = reportService.exportBusinessData();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=business-data.xlsx")
+                .body(body);
+    }
+}
@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuCatalog;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.result.PageResult;
@@ -14,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.List;
 
 @RestController
@@ -24,6 +26,8 @@ public class SetmealController {
 
     @Autowired
     private SetmealService setmealService;
+    @Autowired
+    private MenuCatalog menuCatalog;
 
     /**
      * 新增套餐
@@ -63,6 +67,7 @@ public class SetmealController {
     public Result deleteByIds(@RequestParam List<Long> ids){
         log.info("删除套餐:{}", ids);
         setmealService.deleteByIds(ids);
+        menuCatalog.evictSetmeals(ids);
         return Result.success();
     }
 
@@ -90,6 +95,7 @@ public class SetmealController {
     public Result update(@RequestBody SetmealDTO setmealDTO){
         log.info("修改套餐：{}", setmealDTO);
         setmealService.updateWithDishes(setmealDTO);
+        menuCatalog.evictSetmeals(Collections.singletonList(setmealDTO.getId()));
         return Result.success();
     }
 
@@ -105,6 +111,7 @@ public class SetmealController {
     public Result setStatus(@PathVariable Integer status, Long id){
         log.info("起售停售套餐，id:{}, status:{}", id, status);
         setmealService.setStatus(status, id);
+        menuCatalog.evictSetmeals(Collections.singletonList(id));
         return Result.success();
     }
 
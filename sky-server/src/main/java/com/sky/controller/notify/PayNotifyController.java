@@ -3,8 +3,8 @@ package com.sky.controller.notify;
 import com.alibaba.druid.support.json.JSONUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.order.PayNotifyInbox;
 import com.sky.properties.WeChatProperties;
-import com.sky.service.OrderService;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
@@ -25,12 +25,13 @@ import java.util.HashMap;
 @Slf4j
 public class PayNotifyController {
     @Autowired
-    private OrderService orderService;
+    private PayNotifyInbox payNotifyInbox;
     @Autowired
     private WeChatProperties weChatProperties;
 
     /**
      * 支付成功回调
+     * 只做解密和去重入队，业务处理由收件箱异步完成，避免数据库变慢时微信超时重试放大压力
      *
      * @param request
      */
@@ -51,8 +52,8 @@ public class PayNotifyController {
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //写入收件箱(已处理完成的交易号直接丢弃)，由收件箱异步修改订单状态、来单提醒；写入失败时抛出异常，由微信重试
+        payNotifyInbox.offer(transactionId, outTradeNo);
 
         //给微信响应
         responseToWeixin(response);
@@ -1,9 +1,12 @@
 package com.sky.controller.user;
 
+import com.sky.context.BaseContext;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersPaymentDTO;
 import com.sky.dto.OrdersSubmitDTO;
 import com.sky.entity.OrderDetail;
+import com.sky.order.OrderSubmitIdempotency;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -24,6 +27,8 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private OrderSubmitIdempotency orderSubmitIdempotency;
 
     /**
      * 用户下单
@@ -34,7 +39,9 @@ public class OrderController {
     @ApiOperation("用户下单")
     public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO){
         log.info("用户下单：{}", ordersSubmitDTO);
-        OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
+        // 在事务外做幂等控制，事务提交后才记录下单结果
+        OrderSubmitVO orderSubmitVO = orderSubmitIdempotency.submit(BaseContext.getCurrentId(),
+                ordersSubmitDTO.getIdempotencyKey(), () -> orderService.submitOrder(ordersSubmitDTO));
         return Result.success(orderSubmitVO);
     }
 
@@ -66,6 +73,20 @@ public class OrderController {
         return Result.success(data);
     }
 
+    /**
+     * 历史订单查询(游标分页)
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @GetMapping("/historyOrders/cursor")
+    @ApiOperation("历史订单查询(游标分页)")
+    public Result<CursorPageResult> pageHistoryOrdersByCursor(OrdersPageQueryDTO ordersPageQueryDTO){
+        log.info("历史订单查询(游标分页):{}", ordersPageQueryDTO);
+        ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        CursorPageResult data = orderService.pageByCursor(ordersPageQueryDTO);
+        return Result.success(data);
+    }
+
     /**
      * 查询订单详情
      * @param id
@@ -105,4 +126,17 @@ public class OrderController {
         return Result.success();
     }
 
+    /**
+     * 客户催单
+     * @param id
+     * @return
+     */
+    @GetMapping("/reminder/{id}")
+    @ApiOperation("客户催单")
+    public Result reminder(@PathVariable Long id){
+        log.info("客户催单:{}", id);
+        orderService.reminder(id);
+        return Result.success();
+    }
+
 }
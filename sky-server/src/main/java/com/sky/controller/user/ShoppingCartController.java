@@ -36,6 +36,32 @@ public class ShoppingCartController {
     }
 
 
+    /**
+     * 减少购物车中的商品数量
+     * @param shoppingCartDTO
+     * @return
+     */
+    @PostMapping("/sub")
+    @ApiOperation("减少购物车中的商品数量")
+    public Result sub(@RequestBody ShoppingCartDTO shoppingCartDTO){
+        log.info("减少购物车中的商品数量:{}", shoppingCartDTO);
+        shoppingCartService.subShoppingCart(shoppingCartDTO);
+        return Result.success();
+    }
+
+    /**
+     * 批量设置购物车中的商品数量
+     * @param shoppingCartDTOList
+     * @return
+     */
+    @PutMapping("/batch")
+    @ApiOperation("批量设置购物车中的商品数量")
+    public Result setNumbers(@RequestBody List<ShoppingCartDTO> shoppingCartDTOList){
+        log.info("批量设置购物车中的商品数量:{}", shoppingCartDTOList);
+        shoppingCartService.setShoppingCartNumbers(shoppingCartDTOList);
+        return Result.success();
+    }
+
     /**
      * 查看购物车
      * @return
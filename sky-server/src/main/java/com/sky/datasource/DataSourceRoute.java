@@ -0,0 +1,97 @@
+package com.sky.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的数据源路由状态
+ * 只有在允许使用从库的请求线程中，查询语句和只读事务才会使用从库；
+ * 请求中发生过写入或用户处于写后读时间窗口内时，后续查询都使用主库
+ */
+public class DataSourceRoute {
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private static class State {
+        private boolean replicaAllowed;
+        private boolean primaryPinned;
+        private boolean written;
+        private boolean readStatement;
+
+        private State copy() {
+            State state = new State();
+            state.replicaAllowed = replicaAllowed;
+            state.primaryPinned = primaryPinned;
+            state.written = written;
+            state.readStatement = readStatement;
+            return state;
+        }
+    }
+
+    /**
+     * 当前请求允许使用从库
+     */
+    public static void allowReplica() {
+        STATE.get().replicaAllowed = true;
+    }
+
+    /**
+     * 当前请求固定使用主库
+     */
+    public static void pinPrimary() {
+        STATE.get().primaryPinned = true;
+    }
+
+    /**
+     * 记录当前请求执行过写入语句
+     */
+    public static void markWritten() {
+        STATE.get().written = true;
+    }
+
+    public static boolean hasWritten() {
+        return STATE.get().written;
+    }
+
+    /**
+     * 标记正在执行的是否为查询语句
+     * @param readStatement
+     */
+    public static void setReadStatement(boolean readStatement) {
+        STATE.get().readStatement = readStatement;
+    }
+
+    public static boolean isReadStatement() {
+        return STATE.get().readStatement;
+    }
+
+    /**
+     * 当前是否可以使用从库
+     * @return
+     */
+    public static boolean isReplicaUsable() {
+        State state = STATE.get();
+        return state.replicaAllowed && !state.primaryPinned && !state.written;
+    }
+
+    /**
+     * 让在其他线程中执行的任务使用当前线程的路由状态，任务结束后清除
+     * 任务中的写入不会反映到当前线程
+     * @param task
+     * @return
+     */
+    public static <T> Supplier<T> inherit(Supplier<T> task) {
+        State state = STATE.get().copy();
+        return () -> {
+            STATE.set(state.copy());
+            try {
+                return task.get();
+            } finally {
+                STATE.remove();
+            }
+        };
+    }
+
+    public static void clear() {
+        STATE.remove();
+    }
+}
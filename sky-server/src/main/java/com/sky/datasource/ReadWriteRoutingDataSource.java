@@ -0,0 +1,161 @@
+package com.sky.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离数据源
+ * 允许使用从库时，查询语句和只读事务轮询使用延迟正常的从库，其余情况使用主库；
+ * 从库延迟由独立的线程定时检查，不占用定时任务线程池
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+
+    //复制状态中的延迟字段，MySQL 8.0.22 起改名
+    private static final String[][] LAG_QUERIES = {
+            {"show replica status", "Seconds_Behind_Source"},
+            {"show slave status", "Seconds_Behind_Master"}
+    };
+
+    private final DruidDataSource primary;
+    private final List<DruidDataSource> replicas;
+    private final long maxReplicaLagSeconds;
+
+    //延迟正常的从库
+    private volatile List<String> healthyReplicas = new ArrayList<>();
+    //延迟正常的从库中最大的延迟(秒)
+    private volatile long replicaLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService lagChecker;
+
+    public ReadWriteRoutingDataSource(DruidDataSource primary, List<DruidDataSource> replicas, long maxReplicaLagSeconds) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(REPLICA_PREFIX + i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!DataSourceRoute.isReplicaUsable()) {
+            return PRIMARY;
+        }
+        boolean read = TransactionSynchronizationManager.isActualTransactionActive()
+                ? TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                : DataSourceRoute.isReadStatement();
+        List<String> candidates = healthyReplicas;
+        if (!read || candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * 立即检查一次从库延迟，之后按间隔定时检查
+     * @param intervalMillis
+     */
+    public void startLagCheck(long intervalMillis) {
+        checkReplicaLag();
+        lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagChecker.scheduleWithFixedDelay(() -> {
+            try {
+                checkReplicaLag();
+            } catch (RuntimeException e) {
+                log.error("检查从库延迟失败", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 检查各从库的复制延迟，延迟过大或复制异常的从库暂停使用
+     */
+    public void checkReplicaLag() {
+        List<String> healthy = new ArrayList<>();
+        long maxLag = 0;
+        for (int i = 0; i < replicas.size(); i++) {
+            Long lag = queryLag(replicas.get(i));
+            if (lag != null && lag <= maxReplicaLagSeconds) {
+                healthy.add(REPLICA_PREFIX + i);
+                maxLag = Math.max(maxLag, lag);
+            } else if (healthyReplicas.contains(REPLICA_PREFIX + i)) {
+                log.warn("从库 {} 延迟 {} 秒，暂停使用", replicas.get(i).getUrl(), lag);
+            }
+        }
+        healthyReplicas = healthy;
+        replicaLagSeconds = maxLag;
+    }
+
+    /**
+     * 正在使用的从库中最大的复制延迟(秒)
+     * @return
+     */
+    public long getReplicaLagSeconds() {
+        return replicaLagSeconds;
+    }
+
+    /**
+     * 查询从库的复制延迟，复制未运行或查询失败时返回null
+     */
+    private Long queryLag(DruidDataSource replica) {
+        try (Connection connection = replica.getConnection(); Statement statement = connection.createStatement()) {
+            for (String[] query : LAG_QUERIES) {
+                try (ResultSet rs = statement.executeQuery(query[0])) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                        if (query[1].equalsIgnoreCase(metaData.getColumnLabel(column))) {
+                            long lag = rs.getLong(column);
+                            return rs.wasNull() ? null : lag;
+                        }
+                    }
+                } catch (SQLException e) {
+                    //低版本不支持 show replica status，继续尝试下一条
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("查询从库 {} 复制状态失败：{}", replica.getUrl(), e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        replicas.forEach(DruidDataSource::close);
+        primary.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.sky.datasource;
+
+import com.sky.order.OrderShards;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单分片数据源
+ * 指定了分片的语句使用分片所在的数据库实例，其余语句使用默认数据源；
+ * 需要由 LazyConnectionDataSourceProxy 包装，在事务的第一条语句执行时才按当前分片确定实例
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final int instanceCount;
+
+    public ShardRoutingDataSource(DataSource defaultDataSource, List<? extends DataSource> instances) {
+        this.instanceCount = instances.size();
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < instances.size(); i++) {
+            targets.put(i, instances.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(defaultDataSource);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = OrderShards.current();
+        return shard == null ? null : OrderShards.instanceOf(shard, instanceCount);
+    }
+}
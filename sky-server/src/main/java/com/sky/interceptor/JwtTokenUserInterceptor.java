@@ -3,13 +3,14 @@ package com.sky.interceptor;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
+import com.sky.report.UserStats;
 import com.sky.utils.JwtUtil;
 import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -19,11 +20,14 @@ import javax.servlet.http.HttpServletResponse;
  */
 @Component
 @Slf4j
-public class JwtTokenUserInterceptor implements HandlerInterceptor {
+public class JwtTokenUserInterceptor implements AsyncHandlerInterceptor {
 
     @Autowired
     private JwtProperties jwtProperties;
 
+    @Autowired
+    private UserStats userStats;
+
     /**
      * 校验jwt
      *
@@ -50,12 +54,33 @@ public class JwtTokenUserInterceptor implements HandlerInterceptor {
             Long userId = Long.valueOf(claims.get(JwtClaimsConstant.USER_ID).toString());
             log.info("当前用户id：{}", userId);
             BaseContext.setCurrentId(userId);
-            //3、通过，放行
-            return true;
         } catch (Exception ex) {
             //4、不通过，响应401状态码
             response.setStatus(401);
             return false;
         }
+
+        //记录当天活跃用户，统计失败不影响请求
+        try {
+            userStats.active(BaseContext.getCurrentId());
+        } catch (RuntimeException e) {
+            log.error("记录活跃用户失败", e);
+        }
+        //3、通过，放行
+        return true;
+    }
+
+    /**
+     * 请求结束时清除当前用户，避免线程处理下一个不校验令牌的请求(如登录)时取到上一个用户
+     */
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        BaseContext.removeCurrentId();
+    }
+
+    /**
+     * 异步请求的请求线程不会执行afterCompletion，在这里清除
+     */
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        BaseContext.removeCurrentId();
     }
 }
@@ -0,0 +1,37 @@
+package com.sky.interceptor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 写入响应体之前开启写后读时间窗口
+ * 拦截器的afterCompletion在响应体提交之后才执行，客户端可能已经发起下一个查询并读到从库的旧数据
+ */
+@ControllerAdvice
+public class ReadWritePinAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    private ReadWriteRouteInterceptor readWriteRouteInterceptor;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            readWriteRouteInterceptor.pinIfWritten(((ServletServerHttpRequest) request).getServletRequest());
+        }
+        return body;
+    }
+}
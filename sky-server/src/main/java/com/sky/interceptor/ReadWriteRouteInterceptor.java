@@ -0,0 +1,96 @@
+package com.sky.interceptor;
+
+import com.sky.context.BaseContext;
+import com.sky.datasource.DataSourceRoute;
+import com.sky.datasource.ReadWriteRoutingDataSource;
+import com.sky.properties.ReadWriteProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写分离的请求拦截器
+ * 请求开始时允许使用从库，当前用户处于写后读时间窗口内时固定使用主库；
+ * 请求中发生过写入时为当前用户开启写后读时间窗口，窗口长度不小于从库的当前延迟。
+ * 窗口在写入响应体之前开启(见 {@link ReadWritePinAdvice})，客户端收到响应后立即发起的查询也能读到刚写入的数据
+ */
+@Component
+@Slf4j
+public class ReadWriteRouteInterceptor implements HandlerInterceptor {
+
+    private static final String PIN_KEY_PREFIX = "rw_pin_";
+    //请求属性：本次请求已开启写后读时间窗口
+    private static final String PINNED_ATTRIBUTE = ReadWriteRouteInterceptor.class.getName() + ".PINNED";
+
+    @Autowired(required = false)
+    private ReadWriteRoutingDataSource readWriteRoutingDataSource;
+    @Autowired
+    private ReadWriteProperties readWriteProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (readWriteRoutingDataSource == null) {
+            return true;
+        }
+        //清除本线程处理其他请求时留下的状态
+        DataSourceRoute.clear();
+        DataSourceRoute.allowReplica();
+        String pinKey = pinKey(request);
+        if (pinKey != null && Boolean.TRUE.equals(stringRedisTemplate.hasKey(pinKey))) {
+            DataSourceRoute.pinPrimary();
+        }
+        return true;
+    }
+
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        if (readWriteRoutingDataSource == null) {
+            return;
+        }
+        try {
+            //没有响应体的请求在这里补充开启
+            pinIfWritten(request);
+        } finally {
+            DataSourceRoute.clear();
+        }
+    }
+
+    /**
+     * 请求中发生过写入时为当前用户开启写后读时间窗口，每个请求只开启一次
+     * @param request
+     */
+    public void pinIfWritten(HttpServletRequest request) {
+        if (readWriteRoutingDataSource == null || !DataSourceRoute.hasWritten()
+                || request.getAttribute(PINNED_ATTRIBUTE) != null) {
+            return;
+        }
+        try {
+            String pinKey = pinKey(request);
+            if (pinKey != null) {
+                long seconds = Math.max(readWriteProperties.getReadYourWritesSeconds(),
+                        readWriteRoutingDataSource.getReplicaLagSeconds() + 1);
+                stringRedisTemplate.opsForValue().set(pinKey, "1", seconds, TimeUnit.SECONDS);
+            }
+            request.setAttribute(PINNED_ATTRIBUTE, Boolean.TRUE);
+        } catch (RuntimeException e) {
+            log.error("记录写后读时间窗口失败", e);
+        }
+    }
+
+    /**
+     * 管理端和用户端的ID分开记录；当前用户由令牌校验拦截器设置，请求结束时清除
+     */
+    private String pinKey(HttpServletRequest request) {
+        Long id = BaseContext.getCurrentId();
+        if (id == null) {
+            return null;
+        }
+        return PIN_KEY_PREFIX + (request.getRequestURI().startsWith("/admin") ? "admin_" : "user_") + id;
+    }
+}
@@ -0,0 +1,59 @@
+package com.sky.mapper;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyItemSales;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyItemSalesMapper {
+
+    /**
+     * 批量累加销量，同一天同一商品已存在时累加
+     * @param items
+     */
+    void addBatch(@Param("items") List<DailyItemSales> items);
+
+    /**
+     * 按商品合计日期范围内的销量
+     * @param begin
+     * @param end
+     * @param itemType 为空表示菜品和套餐
+     * @param categoryId 为空表示不限
+     * @return 每个商品一条，reportDate为空
+     */
+    List<DailyItemSales> sumByItem(@Param("begin") LocalDate begin, @Param("end") LocalDate end,
+                                   @Param("itemType") Integer itemType, @Param("categoryId") Long categoryId);
+
+    /**
+     * 按分类合计日期范围内的销量
+     * @param begin
+     * @param end
+     * @return 分类名称和销量
+     */
+    List<GoodsSalesDTO> sumByCategory(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 从订单明细中按下单日期、商品聚合指定状态的订单的销量
+     * @param hot 是否查询订单表
+     * @param months 需要查询的归档月份
+     * @param status
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<DailyItemSales> aggregate(@Param("hot") boolean hot, @Param("months") List<String> months,
+                                   @Param("status") Integer status,
+                                   @Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 删除日期范围内的汇总
+     * @param begin
+     * @param end
+     */
+    void deleteByRange(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+}
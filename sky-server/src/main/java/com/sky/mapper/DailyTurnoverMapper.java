@@ -0,0 +1,53 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyTurnover;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyTurnoverMapper {
+
+    /**
+     * 累加一个已完成订单
+     * @param reportDate
+     * @param amount
+     */
+    void add(@Param("reportDate") LocalDate reportDate, @Param("amount") BigDecimal amount);
+
+    /**
+     * 查询日期范围内的汇总，没有已完成订单的日期不返回
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyTurnover> listByRange(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 从订单表和归档表中按下单日期聚合指定状态的订单
+     * @param tables
+     * @param status 为空表示全部状态
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<DailyTurnover> aggregate(@Param("tables") List<String> tables, @Param("status") Integer status,
+                                  @Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 删除日期范围内的汇总
+     * @param begin
+     * @param end
+     */
+    void deleteByRange(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 批量插入汇总
+     * @param dailyTurnovers
+     */
+    void insertBatch(List<DailyTurnover> dailyTurnovers);
+}
@@ -0,0 +1,102 @@
+package com.sky.mapper;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单归档，归档表按下单月份划分：orders_archive_yyyyMM、order_detail_archive_yyyyMM
+ */
+@Mapper
+public interface OrderArchiveMapper {
+
+    /**
+     * 创建指定月份的订单归档表和订单明细归档表，并登记该月份
+     * @param month yyyyMM
+     */
+    void createTables(@Param("month") String month);
+
+    /**
+     * 查询所有已登记的归档月份
+     * @return
+     */
+    @Select("select month from order_archive_month order by month desc")
+    List<String> listMonths();
+
+    /**
+     * 按下单时间从早到晚查询可以归档的订单
+     * @param statuses 可以归档的订单状态
+     * @param before 只归档下单时间早于该时间的订单
+     * @param limit
+     * @return
+     */
+    List<Orders> listArchivable(@Param("statuses") Collection<Integer> statuses,
+                                @Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    /**
+     * 将订单及订单明细复制到指定月份的归档表
+     * @param month
+     * @param ids 订单ID
+     */
+    void copyToArchive(@Param("month") String month, @Param("ids") Collection<Long> ids);
+
+    /**
+     * 登记订单所在的归档月份，用于按ID、订单号查询归档订单
+     * @param ids
+     */
+    void insertIndex(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 删除已归档的订单及订单明细
+     * @param ids
+     */
+    void deleteArchived(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 根据订单ID查询订单所在的归档月份
+     * @param id
+     * @return
+     */
+    @Select("select archive_month from order_archive_index where id = #{id}")
+    String getMonthById(Long id);
+
+    /**
+     * 根据订单号查询订单所在的归档月份
+     * @param number
+     * @return
+     */
+    @Select("select archive_month from order_archive_index where number = #{number}")
+    String getMonthByNumber(String number);
+
+    /**
+     * 根据ID查询归档订单
+     * @param month
+     * @param id
+     * @return
+     */
+    @Select("select * from orders_archive_${month} where id = #{id}")
+    Orders getById(@Param("month") String month, @Param("id") Long id);
+
+    /**
+     * 根据订单号查询归档订单
+     * @param month
+     * @param number
+     * @return
+     */
+    @Select("select * from orders_archive_${month} where number = #{number}")
+    Orders getByNumber(@Param("month") String month, @Param("number") String number);
+
+    /**
+     * 根据订单ID批量查询归档的订单明细
+     * @param month
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getDetailsByOrderIds(@Param("month") String month, @Param("orderIds") Collection<Long> orderIds);
+}
@@ -4,6 +4,7 @@ import com.sky.entity.OrderDetail;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -21,4 +22,11 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id = #{orderId}")
     List<OrderDetail> getByOrderId(Long orderId);
+
+    /**
+     * 根据订单ID批量查询订单详细信息
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(Collection<Long> orderIds);
 }
@@ -0,0 +1,24 @@
+package com.sky.mapper;
+
+import com.sky.vo.OrderExportRowVO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface OrderExportMapper {
+
+    /**
+     * 流式查询时间范围内的订单明细，需要在事务中遍历
+     * @param hot 是否查询订单表
+     * @param months 需要查询的归档月份
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    Cursor<OrderExportRowVO> cursorDetails(@Param("hot") boolean hot, @Param("months") List<String> months,
+                                           @Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+}
@@ -3,9 +3,15 @@ package com.sky.mapper;
 import com.github.pagehelper.Page;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
+import com.sky.order.OrderPageCursor;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface OrderMapper {
     /**
@@ -27,12 +33,61 @@ public interface OrderMapper {
      */
     void update(Orders orders);
 
+    /**
+     * 查询订单当前状态并加行锁，按ID定位订单，ID为空时按订单号定位
+     * @param orders
+     * @return 订单不存在时返回null
+     */
+    Integer lockStatus(@Param("orders") Orders orders);
+
+    /**
+     * 带状态条件的订单状态流转，按ID定位订单，ID为空时按订单号定位
+     * @param orders 目标状态及需要同时更新的字段
+     * @param fromStatuses 订单当前必须处于的状态之一
+     * @param refundFrom 从这些状态流转时将已支付的订单标记为退款
+     * @return 影响行数，为0说明订单不存在或状态已被其他操作修改
+     */
+    int transit(@Param("orders") Orders orders, @Param("fromStatuses") Collection<Integer> fromStatuses,
+                @Param("refundFrom") Collection<Integer> refundFrom);
+
+    /**
+     * 按订单号批量进行带状态条件的订单状态流转
+     * @param orders 目标状态及需要同时更新的字段
+     * @param numbers
+     * @param fromStatuses 订单当前必须处于的状态之一
+     * @param refundFrom 从这些状态流转时将已支付的订单标记为退款
+     * @return 影响行数
+     */
+    int transitBatchByNumber(@Param("orders") Orders orders, @Param("numbers") Collection<String> numbers,
+                             @Param("fromStatuses") Collection<Integer> fromStatuses,
+                             @Param("refundFrom") Collection<Integer> refundFrom);
+
     /**
      * 分页查询
-     * @param ordersPageQueryDTO
+     * @param query 查询条件
+     * @param tables 需要查询的订单表及归档表
      * @return
      */
-    Page<Orders> page(OrdersPageQueryDTO ordersPageQueryDTO);
+    Page<Orders> page(@Param("query") OrdersPageQueryDTO query, @Param("tables") List<String> tables);
+
+    /**
+     * 游标分页查询，按 (order_time, id) 倒序从游标位置之后开始查询，不统计总数
+     * @param query 查询条件
+     * @param cursor 上一页最后一条订单的位置，为空时查询第一页
+     * @param limit
+     * @param tables 需要查询的订单表及归档表
+     * @return
+     */
+    List<Orders> pageByCursor(@Param("query") OrdersPageQueryDTO query, @Param("cursor") OrderPageCursor cursor,
+                              @Param("limit") int limit, @Param("tables") List<String> tables);
+
+    /**
+     * 按分页查询条件统计订单数量
+     * @param query 查询条件
+     * @param tables 需要查询的订单表及归档表
+     * @return
+     */
+    Long countByCondition(@Param("query") OrdersPageQueryDTO query, @Param("tables") List<String> tables);
 
     /**
      * 根据ID查询订单
@@ -49,4 +104,11 @@ public interface OrderMapper {
      */
     @Select("select count(*) from orders where status = #{status}")
     Integer getCountByStatus(Integer status);
+
+    /**
+     * 按状态分组统计订单数量
+     * @return 每行包含 status 和 count
+     */
+    @Select("select status, count(*) as count from orders group by status")
+    List<Map<String, Object>> countGroupByStatus();
 }
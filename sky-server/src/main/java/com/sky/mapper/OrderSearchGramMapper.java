@@ -0,0 +1,34 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface OrderSearchGramMapper {
+
+    /**
+     * 批量插入订单的检索片段
+     * @param orderId
+     * @param grams
+     */
+    void insertBatch(@Param("orderId") Long orderId, @Param("grams") Collection<String> grams);
+
+    /**
+     * 查询同时包含全部片段的订单ID
+     * @param grams 按区分度从高到低排列，第一个片段驱动连接
+     * @param limit
+     * @return
+     */
+    List<Long> matchAll(@Param("grams") List<String> grams, @Param("limit") int limit);
+
+    /**
+     * 统计包含片段的订单数量，最多统计到 limit
+     * @param gram
+     * @param limit
+     * @return
+     */
+    long countGram(@Param("gram") String gram, @Param("limit") int limit);
+}
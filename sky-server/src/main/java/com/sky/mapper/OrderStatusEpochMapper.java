@@ -0,0 +1,25 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+@Mapper
+public interface OrderStatusEpochMapper {
+
+    /**
+     * 以共享锁读取分片的计数重建版本，锁持有到事务结束，期间重建无法修改版本
+     * @param shard
+     * @return 版本不存在时返回null
+     */
+    @Select("select epoch from order_status_epoch where id = #{shard} lock in share mode")
+    Long lockShared(@Param("shard") int shard);
+
+    /**
+     * 一致性读取分片的计数重建版本，在可重复读事务中同时确定了之后查询所用的快照
+     * @param shard
+     * @return
+     */
+    @Select("select epoch from order_status_epoch where id = #{shard}")
+    Long current(@Param("shard") int shard);
+}
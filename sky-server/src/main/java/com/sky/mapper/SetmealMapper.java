@@ -46,6 +46,13 @@ public interface SetmealMapper {
     @Select("select * from setmeal where id = #{id}")
     Setmeal getById(Long id);
 
+    /**
+     * 根据ID批量查询套餐
+     * @param ids
+     * @return
+     */
+    List<Setmeal> getByIds(List<Long> ids);
+
     /**
      * 删除套餐
      * @param ids
@@ -4,6 +4,7 @@ import com.sky.entity.ShoppingCart;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
@@ -34,6 +35,36 @@ public interface ShoppingCartMapper {
             " values (#{name}, #{image}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, #{number}, #{amount}, #{createTime})")
     void insert(ShoppingCart shoppingCart);
 
+    /**
+     * 商品数量加一，不存在时从菜品/套餐表补全信息后插入，依赖 uk_user_item 唯一索引
+     * @param shoppingCart 用户ID、菜品ID/套餐ID、口味
+     */
+    void upsertIncrement(@Param("sc") ShoppingCart shoppingCart);
+
+    /**
+     * 商品数量减一，减到0时删除
+     * @param shoppingCart 用户ID、菜品ID/套餐ID、口味
+     */
+    void decrement(@Param("sc") ShoppingCart shoppingCart);
+
+    /**
+     * 批量设置商品数量，数量小于等于0的商品删除
+     * @param shoppingCartList
+     */
+    void setNumbers(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 批量加入购物车，已存在的商品累加数量并刷新名称、图片、金额
+     * @param shoppingCartList
+     */
+    void insertBatchMerge(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 批量插入购物车
+     * @param shoppingCartList
+     */
+    void insertBatch(List<ShoppingCart> shoppingCartList);
+
     /**
      * 根据用户ID删除购物车数据
      * @param userId
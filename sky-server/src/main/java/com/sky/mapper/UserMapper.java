@@ -4,6 +4,10 @@ import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface UserMapper {
 
@@ -23,4 +27,13 @@ public interface UserMapper {
 
     @Select("select * from user where id = #{userId}")
     User getById(Long userId);
+
+    /**
+     * 按注册日期分组统计用户数量
+     * @param before 只统计该时间之前注册的用户
+     * @return 每行包含 create_date(yyyy-MM-dd) 和 count
+     */
+    @Select("select date_format(create_time, '%Y-%m-%d') as create_date, count(*) as count from user " +
+            "where create_time < #{before} group by date_format(create_time, '%Y-%m-%d')")
+    List<Map<String, Object>> countGroupByCreateDate(LocalDateTime before);
 }
@@ -0,0 +1,136 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从Redis租用当前节点的节点ID，保证集群中同一时刻每个节点ID只被一个节点使用
+ * 续约在独立的线程中执行，不受其他定时任务影响；租约到期前没有续约成功时停止发号，
+ * 避免租约过期后节点ID被其他节点租用而产生重复的订单号
+ */
+@Component
+@Slf4j
+public class NodeIdLease {
+
+    private static final String KEY_PREFIX = "order_node_";
+
+    //只有租约持有者才能续约
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    //只有租约持有者才能释放
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+
+    //当前节点的租约标识
+    private final String token = UUID.randomUUID().toString();
+
+    private volatile long nodeId = -1;
+
+    //租约的本地到期时间(System.nanoTime)，以发出租用、续约命令前的时间计算，不晚于Redis中的实际到期时间
+    private volatile long expiresAtNanos;
+
+    private ScheduledExecutorService renewer;
+
+    @PostConstruct
+    public void init() {
+        acquire();
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-node-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = leaseMillis() / 3;
+        renewer.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 当前节点ID
+     * @return
+     * @throws IllegalStateException 租约已过期且未能续约
+     */
+    public long getNodeId() {
+        if (System.nanoTime() - expiresAtNanos >= 0) {
+            throw new IllegalStateException("订单号节点ID " + nodeId + " 的租约已过期，暂停生成订单号");
+        }
+        return nodeId;
+    }
+
+    /**
+     * 定时续约，续约失败说明租约已过期被其他节点占用，需要重新租用
+     */
+    public void renew() {
+        try {
+            long start = System.nanoTime();
+            Long renewed = stringRedisTemplate.execute(RENEW,
+                    Collections.singletonList(KEY_PREFIX + nodeId),
+                    token, String.valueOf(leaseMillis()));
+            if (renewed != null && renewed == 1) {
+                expiresAtNanos = start + TimeUnit.MILLISECONDS.toNanos(leaseMillis());
+                return;
+            }
+            log.warn("节点ID {} 的租约已丢失，重新租用", nodeId);
+            expiresAtNanos = System.nanoTime();
+            acquire();
+        } catch (RuntimeException e) {
+            //Redis不可用时保持当前租约，到期后 getNodeId 拒绝发号
+            log.error("续约订单号节点ID {} 失败", nodeId, e);
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        if (renewer != null) {
+            renewer.shutdownNow();
+        }
+        //先使本地租约失效，再释放Redis中的租约
+        expiresAtNanos = System.nanoTime();
+        stringRedisTemplate.execute(RELEASE, Collections.singletonList(KEY_PREFIX + nodeId), token);
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用空闲的节点ID
+     */
+    private synchronized void acquire() {
+        long maxNodes = 1L << orderNumberProperties.getNodeBits();
+        long start = ThreadLocalRandom.current().nextLong(maxNodes);
+        for (long i = 0; i < maxNodes; i++) {
+            long candidate = (start + i) % maxNodes;
+            long requestedAt = System.nanoTime();
+            Boolean ok = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(KEY_PREFIX + candidate, token, leaseMillis(), TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(ok)) {
+                nodeId = candidate;
+                expiresAtNanos = requestedAt + TimeUnit.MILLISECONDS.toNanos(leaseMillis());
+                log.info("租用订单号节点ID：{}", candidate);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的订单号节点ID");
+    }
+
+    private long leaseMillis() {
+        return orderNumberProperties.getNodeLeaseSeconds() * 1000;
+    }
+}
@@ -0,0 +1,249 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderArchiveMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 订单查询路由
+ * 先查询订单表，只有查询不到或查询的时间范围覆盖到已归档的月份时才查询归档表；
+ * 归档表与订单所在的分片位于同一实例，按ID、订单号的查询整体在分片上执行；
+ * 归档月份列表缓存在本地，归档任务新建月份后通过Redis频道通知所有节点刷新
+ */
+@Component
+@Slf4j
+public class OrderArchiveRouter implements MessageListener {
+
+    public static final String HOT_TABLE = "orders";
+    private static final String ARCHIVE_TABLE_PREFIX = "orders_archive_";
+    public static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    //新建归档月份的广播频道，消息内容为月份
+    private static final String MONTHS_CHANNEL = "order_archive_months";
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+    @Autowired
+    private OrderArchiveMapper orderArchiveMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private volatile CachedMonths cachedMonths;
+    //每次刷新加一，查询期间发生过刷新时查询结果不放入缓存
+    private final AtomicLong refreshEpoch = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(MONTHS_CHANNEL));
+    }
+
+    /**
+     * 根据ID查询订单，包括已归档的订单
+     * @param id
+     * @return
+     */
+    public Orders getById(Long id) {
+        return orderShards.read(orderShards.ofId(id), () -> {
+            Orders orders = orderMapper.getById(id);
+            if (orders != null) {
+                return orders;
+            }
+            String month = orderArchiveMapper.getMonthById(id);
+            return month == null ? null : orderArchiveMapper.getById(month, id);
+        });
+    }
+
+    /**
+     * 根据订单号查询订单，包括已归档的订单
+     * @param number
+     * @return
+     */
+    public Orders getByNumber(String number) {
+        return orderShards.read(orderShards.ofNumber(number), () -> {
+            Orders orders = orderMapper.getByNumber(number);
+            if (orders != null) {
+                return orders;
+            }
+            String month = orderArchiveMapper.getMonthByNumber(number);
+            return month == null ? null : orderArchiveMapper.getByNumber(month, number);
+        });
+    }
+
+    /**
+     * 根据订单ID查询订单明细，包括已归档的订单
+     * @param orderId
+     * @return
+     */
+    public List<OrderDetail> getDetailsByOrderId(Long orderId) {
+        return orderShards.read(orderShards.ofId(orderId), () -> {
+            List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(orderId);
+            if (!orderDetails.isEmpty()) {
+                return orderDetails;
+            }
+            String month = orderArchiveMapper.getMonthById(orderId);
+            return month == null ? orderDetails
+                    : orderArchiveMapper.getDetailsByOrderIds(month, Collections.singletonList(orderId));
+        });
+    }
+
+    /**
+     * 批量查询订单明细，订单表中没有明细的订单按下单月份到归档表中查询
+     * @param ordersList
+     * @return 订单ID -> 订单明细
+     */
+    public Map<Long, List<OrderDetail>> getDetails(List<Orders> ordersList) {
+        Map<Long, Orders> ordersMap = ordersList.stream().collect(Collectors.toMap(Orders::getId, o -> o, (a, b) -> a));
+        Map<Long, List<OrderDetail>> detailMap = new HashMap<>();
+        orderShards.groupIds(ordersMap.keySet()).forEach((shard, ids) -> orderShards.read(shard, () -> {
+            detailMap.putAll(orderDetailMapper.getByOrderIds(ids).stream()
+                    .collect(Collectors.groupingBy(OrderDetail::getOrderId)));
+
+            //每个订单至少有一条明细，查询不到的订单已被归档，归档月份即下单月份
+            Map<String, List<Long>> missing = new HashMap<>();
+            for (Long id : ids) {
+                Orders orders = ordersMap.get(id);
+                if (!detailMap.containsKey(id) && orders.getOrderTime() != null) {
+                    missing.computeIfAbsent(orders.getOrderTime().format(MONTH_FORMATTER), k -> new ArrayList<>()).add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                List<String> months = listMonths();
+                missing.forEach((month, missingIds) -> {
+                    if (months.contains(month)) {
+                        orderArchiveMapper.getDetailsByOrderIds(month, missingIds)
+                                .forEach(d -> detailMap.computeIfAbsent(d.getOrderId(), k -> new ArrayList<>()).add(d));
+                    }
+                });
+            }
+            return null;
+        }));
+        return detailMap;
+    }
+
+    /**
+     * 分页查询需要查询的表，订单表在前，之后是与时间范围有交集的归档表(按月份倒序)
+     * @param beginTime 为空表示不限
+     * @param endTime 为空表示不限
+     * @return
+     */
+    public List<String> tables(LocalDateTime beginTime, LocalDateTime endTime) {
+        List<String> tables = new ArrayList<>();
+        tables.add(HOT_TABLE);
+        for (String month : months(beginTime, endTime)) {
+            tables.add(ARCHIVE_TABLE_PREFIX + month);
+        }
+        return tables;
+    }
+
+    /**
+     * 与时间范围有交集的归档月份(按月份倒序)
+     * @param beginTime 为空表示不限
+     * @param endTime 为空表示不限
+     * @return
+     */
+    public List<String> months(LocalDateTime beginTime, LocalDateTime endTime) {
+        //归档的订单都早于归档时限，查询的开始时间晚于时限时不需要查询归档表
+        if (beginTime != null && beginTime.isAfter(horizon())) {
+            return Collections.emptyList();
+        }
+        String first = beginTime == null ? null : YearMonth.from(beginTime).format(MONTH_FORMATTER);
+        String last = endTime == null ? null : YearMonth.from(endTime).format(MONTH_FORMATTER);
+        List<String> months = new ArrayList<>();
+        for (String month : listMonths()) {
+            if ((first == null || month.compareTo(first) >= 0) && (last == null || month.compareTo(last) <= 0)) {
+                months.add(month);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * 归档时限，归档表中的订单都早于该时间
+     * @return
+     */
+    public LocalDateTime horizon() {
+        return LocalDateTime.now().minusDays(orderProperties.getArchiveAfterDays());
+    }
+
+    /**
+     * 已有的归档月份(按月份倒序)，优先使用本地缓存
+     * @return
+     */
+    public List<String> listMonths() {
+        CachedMonths cached = cachedMonths;
+        if (cached != null && System.currentTimeMillis() <= cached.expireAt) {
+            return cached.months;
+        }
+        long epoch = refreshEpoch.get();
+        //各实例的归档月份相同，只查询第一个实例
+        List<String> months = Collections.unmodifiableList(orderShards.read(0, orderArchiveMapper::listMonths));
+        synchronized (this) {
+            if (refreshEpoch.get() == epoch) {
+                cachedMonths = new CachedMonths(months,
+                        System.currentTimeMillis() + orderProperties.getArchiveMonthsCacheSeconds() * 1000);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * 归档任务新建月份后刷新所有节点的缓存
+     * @param month
+     */
+    public void monthCreated(String month) {
+        refreshLocal();
+        stringRedisTemplate.convertAndSend(MONTHS_CHANNEL, month);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        log.info("收到新建归档月份广播：{}", new String(message.getBody(), StandardCharsets.UTF_8));
+        refreshLocal();
+    }
+
+    private synchronized void refreshLocal() {
+        refreshEpoch.incrementAndGet();
+        cachedMonths = null;
+    }
+
+    private static class CachedMonths {
+        private final List<String> months;
+        private final long expireAt;
+
+        CachedMonths(List<String> months, long expireAt) {
+            this.months = months;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderArchiveMapper;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 订单归档
+ * 定时把已完成、已取消且超过归档时限的订单分批移入按下单月份划分的归档表，
+ * 每批订单的复制、登记索引和删除在分片所在的实例上的同一事务中完成；集群中每个周期只有一个节点执行。
+ * 分片分布在多个实例上时每个实例都有各自的归档表，新的归档月份在所有实例上同时建表，各实例的归档月份保持一致
+ */
+@Component
+@Slf4j
+public class OrderArchiver {
+
+    private static final String LOCK_KEY = "order_archive_lock";
+
+    //已完成、已取消的订单不会再发生状态流转，可以归档
+    private static final List<Integer> ARCHIVABLE_STATUSES = Arrays.asList(Orders.COMPLETED, Orders.CANCELLED);
+
+    @Autowired
+    private OrderArchiveMapper orderArchiveMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private OrderArchiveRouter orderArchiveRouter;
+
+    //本节点已确认存在的归档月份
+    private final Set<String> createdMonths = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "#{${sky.order.archive-interval-seconds:3600} * 1000}")
+    public void archive() {
+        if (!orderProperties.isArchiveEnabled()) {
+            return;
+        }
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_KEY, "1", orderProperties.getArchiveIntervalSeconds() / 2, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusDays(orderProperties.getArchiveAfterDays());
+        for (int shard = 0; shard < orderShards.getCount(); shard++) {
+            int total = orderShards.on(shard, () -> archiveShard(before));
+            log.info("分片 {} 本次归档订单：{} 条，下单时间早于 {}", shard, total, before);
+        }
+    }
+
+    private int archiveShard(LocalDateTime before) {
+        int total = 0;
+        for (int i = 0; i < orderProperties.getArchiveMaxBatches(); i++) {
+            List<Orders> ordersList = orderArchiveMapper.listArchivable(ARCHIVABLE_STATUSES, before,
+                    orderProperties.getArchiveBatchSize());
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            archiveBatch(ordersList);
+            total += ordersList.size();
+        }
+        return total;
+    }
+
+    private void archiveBatch(List<Orders> ordersList) {
+        Map<String, List<Long>> idsByMonth = ordersList.stream().collect(Collectors.groupingBy(
+                o -> o.getOrderTime().format(OrderArchiveRouter.MONTH_FORMATTER), TreeMap::new,
+                Collectors.mapping(Orders::getId, Collectors.toList())));
+
+        //建表会隐式提交，必须在事务开始前完成
+        for (String month : idsByMonth.keySet()) {
+            if (!createdMonths.contains(month)) {
+                orderShards.instanceShards().forEach(s -> orderShards.on(s, () -> orderArchiveMapper.createTables(month)));
+                createdMonths.add(month);
+                //移入订单前通知各节点，查询时能看到新的归档月份
+                orderArchiveRouter.monthCreated(month);
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(ordersList.size());
+        idsByMonth.values().forEach(ids::addAll);
+        orderShards.inTransaction(OrderShards.current(), () -> {
+            idsByMonth.forEach(orderArchiveMapper::copyToArchive);
+            orderArchiveMapper.insertIndex(ids);
+            orderArchiveMapper.deleteArchived(ids);
+        });
+    }
+}
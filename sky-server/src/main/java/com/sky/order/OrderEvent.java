@@ -0,0 +1,31 @@
+package com.sky.order;
+
+/**
+ * 订单状态流转事件
+ */
+public enum OrderEvent {
+
+    //用户支付成功
+    PAY,
+
+    //商家接单
+    CONFIRM,
+
+    //商家拒单
+    REJECT,
+
+    //用户取消
+    USER_CANCEL,
+
+    //商家取消
+    ADMIN_CANCEL,
+
+    //超时未支付自动取消
+    TIMEOUT_CANCEL,
+
+    //商家派送
+    DELIVER,
+
+    //订单完成
+    COMPLETE
+}
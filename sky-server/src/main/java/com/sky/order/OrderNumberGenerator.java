@@ -0,0 +1,30 @@
+package com.sky.order;
+
+/**
+ * 订单号生成器
+ */
+public interface OrderNumberGenerator {
+
+    /**
+     * 生成全局唯一的订单ID，ID中包含订单所在的分片
+     * @param shard
+     * @return
+     */
+    long nextId(int shard);
+
+    /**
+     * 生成全局唯一的订单ID
+     * @return
+     */
+    default long nextId() {
+        return nextId(0);
+    }
+
+    /**
+     * 生成全局唯一的订单号(商户订单号)
+     * @return
+     */
+    default String nextNumber() {
+        return String.valueOf(nextId());
+    }
+}
@@ -0,0 +1,50 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 订单游标分页的游标，记录上一页最后一条订单的下单时间和ID
+ * 对客户端是不透明的字符串，下一页从 (order_time, id) 小于该位置的订单开始查询
+ */
+@Getter
+@AllArgsConstructor
+public class OrderPageCursor {
+
+    private static final String SEPARATOR = ",";
+
+    private final LocalDateTime orderTime;
+
+    private final Long id;
+
+    /**
+     * 编码为客户端使用的游标字符串
+     * @return
+     */
+    public String encode() {
+        String text = orderTime + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析客户端传入的游标字符串
+     * @param cursor
+     * @return
+     */
+    public static OrderPageCursor decode(String cursor) {
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = text.lastIndexOf(SEPARATOR);
+            return new OrderPageCursor(LocalDateTime.parse(text.substring(0, index)),
+                    Long.valueOf(text.substring(index + 1)));
+        } catch (RuntimeException e) {
+            throw new OrderBusinessException(MessageConstant.ORDER_PAGE_CURSOR_INVALID);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.sky.order;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 订单计价结果，金额单位为分
+ */
+@Getter
+public class OrderPrice {
+
+    //商品金额
+    private final long itemsCents;
+    //打包费
+    private final long packCents;
+    //餐具费
+    private final long tablewareCents;
+    //配送费
+    private final long deliveryCents;
+    //购物车行(菜品ID或套餐ID) -> 当前单价
+    private final Map<String, Long> unitCents;
+
+    OrderPrice(long itemsCents, long packCents, long tablewareCents, long deliveryCents, Map<String, Long> unitCents) {
+        this.itemsCents = itemsCents;
+        this.packCents = packCents;
+        this.tablewareCents = tablewareCents;
+        this.deliveryCents = deliveryCents;
+        this.unitCents = unitCents;
+    }
+
+    /**
+     * 订单总金额(分)
+     * @return
+     */
+    public long getTotalCents() {
+        return itemsCents + packCents + tablewareCents + deliveryCents;
+    }
+
+    /**
+     * 分转换为元
+     * @param cents
+     * @return
+     */
+    public static BigDecimal toYuan(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * 元转换为分
+     * @param yuan
+     * @return
+     */
+    public static long toCents(BigDecimal yuan) {
+        return yuan.movePointRight(2).setScale(0, BigDecimal.ROUND_HALF_UP).longValue();
+    }
+}
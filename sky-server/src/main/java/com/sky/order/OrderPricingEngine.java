@@ -0,0 +1,101 @@
+package com.sky.order;
+
+import com.sky.cache.MenuCatalog;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 订单计价
+ * 以菜品目录中的当前价格为准重新计算订单金额，不信任客户端提交的金额；
+ * 价格转换为分之后全部使用 long 计算
+ */
+@Component
+public class OrderPricingEngine {
+
+    //餐具数量状态：按餐量提供
+    private static final Integer TABLEWARE_BY_ITEMS = 1;
+
+    @Autowired
+    private MenuCatalog menuCatalog;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    /**
+     * 计算购物车的订单金额
+     * @param cart
+     * @param tablewareStatus 餐具数量状态  1按餐量提供  0选择具体数量
+     * @param tablewareNumber 餐具数量
+     * @return
+     */
+    public OrderPrice price(List<ShoppingCart> cart, Integer tablewareStatus, Integer tablewareNumber) {
+        Map<Long, Dish> dishes = menuCatalog.getDishes(cart.stream()
+                .map(ShoppingCart::getDishId).filter(Objects::nonNull).collect(Collectors.toList()));
+        Map<Long, Setmeal> setmeals = menuCatalog.getSetmeals(cart.stream()
+                .map(ShoppingCart::getSetmealId).filter(Objects::nonNull).collect(Collectors.toList()));
+
+        long itemsCents = 0;
+        long quantity = 0;
+        Map<String, Long> unitCents = new HashMap<>();
+        for (ShoppingCart item : cart) {
+            long unit = unitCents(item, dishes, setmeals);
+            unitCents.put(lineKey(item), unit);
+            itemsCents += unit * item.getNumber();
+            quantity += item.getNumber();
+        }
+
+        long packCents = quantity * orderProperties.getPackFeeCents();
+        long tablewareCount = Objects.equals(tablewareStatus, TABLEWARE_BY_ITEMS) || tablewareNumber == null
+                ? quantity : tablewareNumber;
+        long tablewareCents = tablewareCount * orderProperties.getTablewareFeeCents();
+        return new OrderPrice(itemsCents, packCents, tablewareCents, orderProperties.getDeliveryFeeCents(), unitCents);
+    }
+
+    /**
+     * 校验客户端提交的总金额与计价结果一致
+     * @param price
+     * @param clientAmount 客户端提交的总金额(元)，为空时不校验
+     */
+    public void verify(OrderPrice price, BigDecimal clientAmount) {
+        if (clientAmount != null && OrderPrice.toCents(clientAmount) != price.getTotalCents()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_AMOUNT_MISMATCH);
+        }
+    }
+
+    /**
+     * 购物车行的标识，与 OrderPrice#getUnitCents 的键对应
+     * @param item
+     * @return
+     */
+    public static String lineKey(ShoppingCart item) {
+        return item.getDishId() != null ? "d" + item.getDishId() : "s" + item.getSetmealId();
+    }
+
+    private long unitCents(ShoppingCart item, Map<Long, Dish> dishes, Map<Long, Setmeal> setmeals) {
+        if (item.getDishId() != null) {
+            Dish dish = dishes.get(item.getDishId());
+            if (dish == null || !Objects.equals(dish.getStatus(), StatusConstant.ENABLE)) {
+                throw new OrderBusinessException(MessageConstant.ORDER_ITEM_UNAVAILABLE);
+            }
+            return OrderPrice.toCents(dish.getPrice());
+        }
+        Setmeal setmeal = setmeals.get(item.getSetmealId());
+        if (setmeal == null || !Objects.equals(setmeal.getStatus(), StatusConstant.ENABLE)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_ITEM_UNAVAILABLE);
+        }
+        return OrderPrice.toCents(setmeal.getPrice());
+    }
+}
@@ -0,0 +1,165 @@
+package com.sky.order;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderSearchGramMapper;
+import com.sky.properties.OrderProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 订单手机号、订单号的子串检索
+ * 下单时把两个字段拆成连续3个字符的片段写入检索表，模糊查询时先用片段求交得到候选订单ID，
+ * 避免前置通配符的 like 对订单表全表扫描。
+ * 片段按包含它的订单数量从少到多排序，由最少的片段驱动求交；短关键字的片段都很常见时匹配的订单很多，
+ * 按下单时间顺序扫描更快，不使用检索表
+ */
+@Component
+public class OrderSearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final String PHONE = "p";
+    private static final String NUMBER = "n";
+    //参与求交的片段数量，区分度最高的几个片段已足够缩小候选范围
+    private static final int MAX_JOIN_GRAMS = 3;
+    //统计片段订单数量时最多统计到该值
+    private static final int GRAM_COUNT_LIMIT = 1_000_000;
+    //本地缓存的片段数量上限，手机号、订单号都是数字，片段总数有限
+    private static final int MAX_CACHED_GRAMS = 10000;
+
+    @Autowired
+    private OrderSearchGramMapper orderSearchGramMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    //片段 -> 包含该片段的订单数量
+    private final Map<String, CachedCount> gramCounts = new LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+            return size() > MAX_CACHED_GRAMS;
+        }
+    };
+
+    /**
+     * 为新订单建立检索片段，与订单插入在同一事务中执行
+     * @param orders
+     */
+    public void index(Orders orders) {
+        Set<String> grams = new LinkedHashSet<>();
+        addGrams(grams, PHONE, orders.getPhone(), 1);
+        addGrams(grams, NUMBER, orders.getNumber(), 1);
+        if (!grams.isEmpty()) {
+            orderSearchGramMapper.insertBatch(orders.getId(), grams);
+        }
+    }
+
+    /**
+     * 根据查询条件中的手机号、订单号关键字查询候选订单ID
+     * @param ordersPageQueryDTO
+     * @return 候选订单ID；关键字过短无法使用检索表或候选订单过多时返回null，此时按原条件查询
+     */
+    public List<Long> candidates(OrdersPageQueryDTO ordersPageQueryDTO) {
+        Set<String> grams = new LinkedHashSet<>();
+        addGrams(grams, PHONE, ordersPageQueryDTO.getPhone(), 1);
+        addGrams(grams, NUMBER, ordersPageQueryDTO.getNumber(), 1);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        //候选订单还要经过原有的 like 条件过滤，只用区分度最高的几个片段求交即可
+        List<String> ordered = new ArrayList<>(grams);
+        Map<String, Long> counts = countGrams(ordered);
+        ordered.sort(Comparator.comparing(counts::get));
+        long rarest = counts.get(ordered.get(0));
+        if (rarest == 0) {
+            return Collections.emptyList();
+        }
+        int limit = orderProperties.getSearchCandidateLimit();
+        if (rarest > limit && keywordLength(ordersPageQueryDTO) < orderProperties.getSearchDenseKeywordLength()) {
+            //如手机号后4位：片段都很常见，求交的代价高且结果仍会超过上限
+            return null;
+        }
+        List<Long> ids = orderSearchGramMapper.matchAll(ordered.subList(0, Math.min(MAX_JOIN_GRAMS, ordered.size())), limit + 1);
+        if (ids.size() > limit) {
+            //关键字区分度低，匹配的订单很多，按下单时间顺序扫描很快就能凑满一页
+            return null;
+        }
+        return ids.isEmpty() ? Collections.emptyList() : ids;
+    }
+
+    /**
+     * 查询各片段的订单数量，优先使用本地缓存
+     */
+    private Map<String, Long> countGrams(List<String> grams) {
+        Map<String, Long> counts = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (gramCounts) {
+            for (String gram : grams) {
+                CachedCount cached = gramCounts.get(gram);
+                if (cached != null && now <= cached.expireAt) {
+                    counts.put(gram, cached.count);
+                } else {
+                    missing.add(gram);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            long expireAt = now + orderProperties.getSearchGramCountTtlSeconds() * 1000;
+            for (String gram : missing) {
+                long count = orderSearchGramMapper.countGram(gram, GRAM_COUNT_LIMIT);
+                counts.put(gram, count);
+                if (count == 0) {
+                    //新订单随时可能包含该片段，不缓存，以免在缓存期内查不到新订单
+                    continue;
+                }
+                synchronized (gramCounts) {
+                    gramCounts.put(gram, new CachedCount(count, expireAt));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 查询条件中最长的关键字长度
+     */
+    private int keywordLength(OrdersPageQueryDTO ordersPageQueryDTO) {
+        String phone = ordersPageQueryDTO.getPhone();
+        String number = ordersPageQueryDTO.getNumber();
+        return Math.max(phone == null ? 0 : phone.length(), number == null ? 0 : number.length());
+    }
+
+    /**
+     * 按步长取字段值中连续3个字符的片段，最后一个片段总是取到末尾以覆盖整个值
+     */
+    private void addGrams(Set<String> grams, String field, String value, int step) {
+        if (value == null || value.length() < GRAM_LENGTH) {
+            return;
+        }
+        int last = value.length() - GRAM_LENGTH;
+        for (int i = 0; i < last; i += step) {
+            grams.add(field + value.substring(i, i + GRAM_LENGTH));
+        }
+        grams.add(field + value.substring(last));
+    }
+
+    private static class CachedCount {
+        private final long count;
+        private final long expireAt;
+
+        CachedCount(long count, long expireAt) {
+            this.count = count;
+            this.expireAt = expireAt;
+        }
+    }
+}
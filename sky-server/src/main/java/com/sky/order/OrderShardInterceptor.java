@@ -0,0 +1,49 @@
+package com.sky.order;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 订单分片的表名改写
+ * 开启分片后，把SQL中的 orders、order_detail 改写为当前分片的表名；
+ * 未指定分片时访问这两张表直接报错，避免遗漏分片的查询落到不存在的表上
+ */
+@Component
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class OrderShardInterceptor implements Interceptor {
+
+    //归档表等以 orders_、order_detail_ 开头的表名不会被匹配
+    private static final Pattern TABLE = Pattern.compile("\\b(orders|order_detail)\\b");
+
+    @Autowired
+    private OrderShards orderShards;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!orderShards.isEnabled()) {
+            return invocation.proceed();
+        }
+        BoundSql boundSql = ((StatementHandler) invocation.getTarget()).getBoundSql();
+        Matcher matcher = TABLE.matcher(boundSql.getSql());
+        if (!matcher.find()) {
+            return invocation.proceed();
+        }
+        Integer shard = OrderShards.current();
+        if (shard == null) {
+            throw new IllegalStateException("访问订单表前未指定分片：" + boundSql.getSql());
+        }
+        SystemMetaObject.forObject(boundSql).setValue("sql", matcher.replaceAll("$1_" + shard));
+        return invocation.proceed();
+    }
+}
@@ -0,0 +1,342 @@
+package com.sky.order;
+
+import com.sky.datasource.DataSourceRoute;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 订单分片
+ * 订单表、订单明细表按用户ID分为 2^shardBits 个分片(orders_0、order_detail_0 ...)，
+ * 订单ID和订单号中带有分片号，因此按ID、订单号也能直接定位分片；
+ * 执行SQL前需通过 on 指定当前分片，跨分片的查询通过 scatter 在各分片上并行执行。
+ * 配置了 sky.order.shard.instances 时分片分布在多个数据库实例上(分片k位于第 k % 实例数 个实例)，
+ * 每个实例上的事务相互独立，分片上的写入需通过 inTransaction 在该分片所在的实例上开启事务
+ */
+@Component
+public class OrderShards {
+
+    //当前线程访问的分片，为空表示未指定
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+    @Autowired
+    private OrderShardProperties orderShardProperties;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private int count;
+    private int shardShift;
+    //数据库实例数量，分片都在默认数据源中时为1
+    private int instanceCount;
+    //分片是否分布在多个实例上
+    private boolean independent;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        count = 1 << orderNumberProperties.getShardBits();
+        shardShift = orderNumberProperties.getNodeBits() + orderNumberProperties.getSequenceBits();
+        independent = !orderShardProperties.getInstances().isEmpty();
+        instanceCount = independent ? Math.min(orderShardProperties.getInstances().size(), count) : 1;
+        if (count > 1) {
+            AtomicInteger index = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(count, r -> {
+                Thread thread = new Thread(r, "order-shard-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 是否开启了分片
+     * @return
+     */
+    public boolean isEnabled() {
+        return count > 1;
+    }
+
+    /**
+     * 分片数量
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 分片是否分布在多个数据库实例上
+     * @return
+     */
+    public boolean isIndependent() {
+        return independent;
+    }
+
+    /**
+     * 每个数据库实例上取一个分片，用于访问各实例上都有的表(如归档表)
+     * @return 分片都在默认数据源中时只有分片0
+     */
+    public List<Integer> instanceShards() {
+        List<Integer> shards = new ArrayList<>(instanceCount);
+        for (int shard = 0; shard < instanceCount; shard++) {
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    /**
+     * 分片所在的数据库实例
+     * @param shard
+     * @param instanceCount
+     * @return
+     */
+    public static int instanceOf(int shard, int instanceCount) {
+        return shard % instanceCount;
+    }
+
+    /**
+     * 当前线程访问的分片
+     * @return 未指定时返回null
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 用户的订单所在的分片
+     * @param userId
+     * @return
+     */
+    public int ofUser(Long userId) {
+        return (int) Math.floorMod(userId, (long) count);
+    }
+
+    /**
+     * 订单ID所在的分片
+     * @param id
+     * @return
+     */
+    public int ofId(Long id) {
+        return (int) ((id >>> shardShift) & (count - 1));
+    }
+
+    /**
+     * 订单号所在的分片
+     * @param number
+     * @return
+     */
+    public int ofNumber(String number) {
+        return ofId(Long.valueOf(number));
+    }
+
+    /**
+     * 在指定分片上执行
+     * @param shard
+     * @param supplier
+     * @return
+     */
+    public <T> T on(int shard, Supplier<T> supplier) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在指定分片上执行
+     * @param shard
+     * @param runnable
+     */
+    public void on(int shard, Runnable runnable) {
+        on(shard, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * 在指定分片所在的实例上开启事务执行
+     * 分片分布在多个实例上时总是开启新事务，与调用方的事务分别提交；否则加入调用方的事务
+     * @param shard
+     * @param supplier
+     * @return
+     */
+    public <T> T inTransaction(int shard, Supplier<T> supplier) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(independent
+                ? TransactionDefinition.PROPAGATION_REQUIRES_NEW : TransactionDefinition.PROPAGATION_REQUIRED);
+        return on(shard, () -> transactionTemplate.execute(status -> supplier.get()));
+    }
+
+    /**
+     * 在指定分片所在的实例上开启事务执行
+     * @param shard
+     * @param runnable
+     */
+    public void inTransaction(int shard, Runnable runnable) {
+        inTransaction(shard, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * 在指定分片上查询
+     * 分片分布在多个实例上且调用方处于事务中时，事务的连接可能不在该分片的实例上，改为在新的只读事务中查询
+     * @param shard
+     * @param supplier
+     * @return
+     */
+    public <T> T read(int shard, Supplier<T> supplier) {
+        if (!independent || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return on(shard, supplier);
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return on(shard, () -> transactionTemplate.execute(status -> supplier.get()));
+    }
+
+    /**
+     * 在所有分片上并行执行，返回各分片的结果
+     * 任务继承调用线程的读写分离路由状态；调用方处于只读事务中时，任务也在各自分片的只读事务中执行
+     * @param query 参数为分片号
+     * @return 按分片号顺序排列的结果
+     */
+    public <T> List<T> scatter(Function<Integer, T> query) {
+        return scatter(count, query);
+    }
+
+    /**
+     * 在每个数据库实例上并行执行一次，参数为 instanceShards 中的分片号
+     * @param query
+     * @return 按实例顺序排列的结果
+     */
+    public <T> List<T> scatterInstances(Function<Integer, T> query) {
+        return scatter(instanceCount, query);
+    }
+
+    private <T> List<T> scatter(int shards, Function<Integer, T> query) {
+        List<T> results = new ArrayList<>(shards);
+        if (shards == 1) {
+            results.add(read(0, () -> query.apply(0)));
+            return results;
+        }
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int s = shard;
+            Supplier<T> task = readOnly ? () -> readOnlyTransaction(() -> query.apply(s)) : () -> query.apply(s);
+            futures.add(CompletableFuture.supplyAsync(DataSourceRoute.inherit(() -> on(s, task)), executor));
+        }
+        try {
+            futures.forEach(f -> results.add(f.join()));
+        } catch (CompletionException e) {
+            //业务异常原样抛出
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private <T> T readOnlyTransaction(Supplier<T> supplier) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> supplier.get());
+    }
+
+    /**
+     * 多路归并各分片已排好序的结果
+     * @param sortedLists 各分片的结果，每个结果都已按 comparator 排序
+     * @param comparator
+     * @param limit 最多返回的数量
+     * @return
+     */
+    public static <T> List<T> merge(List<? extends List<T>> sortedLists, Comparator<? super T> comparator, int limit) {
+        //队列中保存各分片的下一个元素及其所在的分片和位置
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(sortedLists.size(), 1),
+                (a, b) -> comparator.compare(sortedLists.get(a[0]).get(a[1]), sortedLists.get(b[0]).get(b[1])));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<T> merged = new ArrayList<>();
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> list = sortedLists.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (head[1] + 1 < list.size()) {
+                heads.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 将订单ID按分片分组
+     * @param ids
+     * @return 分片号 -> 该分片上的订单ID
+     */
+    public Map<Integer, List<Long>> groupIds(Collection<Long> ids) {
+        Map<Integer, List<Long>> groups = new HashMap<>();
+        for (Long id : ids) {
+            groups.computeIfAbsent(ofId(id), k -> new ArrayList<>()).add(id);
+        }
+        return groups;
+    }
+
+    /**
+     * 将订单号按分片分组
+     * @param numbers
+     * @return 分片号 -> 该分片上的订单号
+     */
+    public Map<Integer, List<String>> groupNumbers(Collection<String> numbers) {
+        Map<Integer, List<String>> groups = new HashMap<>();
+        for (String number : numbers) {
+            groups.computeIfAbsent(ofNumber(number), k -> new ArrayList<>()).add(number);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,169 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单状态机
+ * 每次状态流转都是一条带状态条件的 UPDATE ... WHERE id = ? AND status IN (...)，
+ * 根据影响行数判断是否流转成功，并发的操作也不会互相覆盖；
+ * 状态计数需要知道原状态，在同一事务中先 SELECT ... FOR UPDATE 读取原状态
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    //状态流转表：事件 -> 允许的源状态、目标状态、需要退款的源状态
+    private static final Map<OrderEvent, Transition> TRANSITIONS = new EnumMap<>(OrderEvent.class);
+
+    static {
+        add(OrderEvent.PAY,
+                Arrays.asList(Orders.PENDING_PAYMENT), Orders.TO_BE_CONFIRMED,
+                Collections.emptyList());
+        add(OrderEvent.CONFIRM,
+                Arrays.asList(Orders.TO_BE_CONFIRMED), Orders.CONFIRMED,
+                Collections.emptyList());
+        add(OrderEvent.REJECT,
+                Arrays.asList(Orders.TO_BE_CONFIRMED), Orders.CANCELLED,
+                Arrays.asList(Orders.TO_BE_CONFIRMED));
+        add(OrderEvent.USER_CANCEL,
+                Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED), Orders.CANCELLED,
+                Arrays.asList(Orders.TO_BE_CONFIRMED));
+        add(OrderEvent.ADMIN_CANCEL,
+                Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS, Orders.PENDING_PAYMENT), Orders.CANCELLED,
+                Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS));
+        add(OrderEvent.TIMEOUT_CANCEL,
+                Arrays.asList(Orders.PENDING_PAYMENT), Orders.CANCELLED,
+                Collections.emptyList());
+        add(OrderEvent.DELIVER,
+                Arrays.asList(Orders.CONFIRMED), Orders.DELIVERY_IN_PROGRESS,
+                Collections.emptyList());
+        add(OrderEvent.COMPLETE,
+                Arrays.asList(Orders.DELIVERY_IN_PROGRESS), Orders.COMPLETED,
+                Collections.emptyList());
+    }
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    /**
+     * 根据订单ID触发状态流转
+     * @param id
+     * @param event
+     * @param patch 需要同时更新的字段，如取消原因、取消时间等，可以为null
+     * @return 流转成功时返回订单原来的状态，订单不存在或当前状态不允许该流转时返回null
+     */
+    public Integer fire(Long id, OrderEvent event, Orders patch) {
+        Orders orders = copyOf(patch);
+        orders.setId(id);
+        return orderShards.inTransaction(orderShards.ofId(id), () -> transit(orders, event));
+    }
+
+    /**
+     * 根据订单号触发状态流转
+     * @param number
+     * @param event
+     * @param patch
+     * @return 流转成功时返回订单原来的状态，否则返回null
+     */
+    public Integer fireByNumber(String number, OrderEvent event, Orders patch) {
+        Orders orders = copyOf(patch);
+        orders.setId(null);
+        orders.setNumber(number);
+        return orderShards.inTransaction(orderShards.ofNumber(number), () -> transit(orders, event));
+    }
+
+    /**
+     * 根据订单号批量触发状态流转，只支持只有一个源状态的事件
+     * @param numbers
+     * @param event
+     * @param patch
+     * @return 流转成功的订单数量
+     */
+    public int fireBatchByNumber(Collection<String> numbers, OrderEvent event, Orders patch) {
+        Transition transition = TRANSITIONS.get(event);
+        if (transition.from.size() != 1) {
+            throw new IllegalArgumentException("事件 " + event + " 有多个源状态，不能批量流转");
+        }
+        if (numbers.isEmpty()) {
+            return 0;
+        }
+        Orders orders = copyOf(patch);
+        orders.setStatus(transition.to);
+        Integer from = transition.from.get(0);
+        int rows = 0;
+        for (Map.Entry<Integer, List<String>> entry : orderShards.groupNumbers(numbers).entrySet()) {
+            //每个分片在各自的事务中流转并计数
+            rows += orderShards.inTransaction(entry.getKey(), () -> {
+                int shardRows = orderMapper.transitBatchByNumber(orders, entry.getValue(), transition.from, transition.refundFrom);
+                orderStatusCounter.transited(from, transition.to, shardRows);
+                return shardRows;
+            });
+        }
+        log.info("订单批量状态流转：{} {} -> {}，共 {} 个订单", event, from, transition.to, rows);
+        return rows;
+    }
+
+    /**
+     * 在分片的事务中执行
+     */
+    private Integer transit(Orders orders, OrderEvent event) {
+        Transition transition = TRANSITIONS.get(event);
+        orders.setStatus(transition.to);
+        //行锁保证读到的原状态就是本次更新前的状态
+        Integer from = orderMapper.lockStatus(orders);
+        if (from == null || !transition.from.contains(from)
+                || orderMapper.transit(orders, transition.from, transition.refundFrom) == 0) {
+            return null;
+        }
+        log.info("订单状态流转：{} {} {} -> {}", orders.getId() != null ? orders.getId() : orders.getNumber(),
+                event, from, transition.to);
+        orderStatusCounter.transited(from, transition.to, 1);
+        return from;
+    }
+
+    private Orders copyOf(Orders patch) {
+        if (patch == null) {
+            return new Orders();
+        }
+        return Orders.builder()
+                .cancelReason(patch.getCancelReason())
+                .rejectionReason(patch.getRejectionReason())
+                .cancelTime(patch.getCancelTime())
+                .payMethod(patch.getPayMethod())
+                .payStatus(patch.getPayStatus())
+                .checkoutTime(patch.getCheckoutTime())
+                .deliveryTime(patch.getDeliveryTime())
+                .build();
+    }
+
+    private static void add(OrderEvent event, List<Integer> from, Integer to, List<Integer> refundFrom) {
+        TRANSITIONS.put(event, new Transition(from, to, refundFrom));
+    }
+
+    private static class Transition {
+        private final List<Integer> from;
+        private final Integer to;
+        private final List<Integer> refundFrom;
+
+        Transition(List<Integer> from, Integer to, List<Integer> refundFrom) {
+            this.from = from;
+            this.to = to;
+            this.refundFrom = refundFrom;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.sky.order;
+
+import com.sky.datasource.DataSourceRoute;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.OrderStatusEpochMapper;
+import com.sky.properties.OrderProperties;
+import com.sky.vo.OrderStatisticsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各状态订单数量计数器
+ * 计数保存在Redis哈希中(字段为 分片:订单状态)，订单创建和每次状态流转提交后原子地增减；
+ * 定时用一条 group by status 查询重建计数，修正异常情况下的偏差。
+ * 重建与流转通过数据库中各分片的重建版本区分先后：每次流转在事务中以共享锁读取所在分片的版本并随计数一起提交给Redis，
+ * 重建在另一个连接上把版本加1，持有排他锁期间开启一致性快照再提交，
+ * 因此版本小于新版本的流转都已包含在快照中，计数时直接丢弃；等于新版本的流转在写回前记录在该版本的增量哈希中，写回时一并加上
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    private static final String KEY = "order_status_count";
+    private static final String RECONCILE_LOCK_KEY = "order_status_count_reconcile";
+    //重建期间的增量哈希，后接 分片_版本；使用与计数相同的哈希标签，集群中与计数位于同一个槽
+    private static final String DELTA_KEY_PREFIX = "{" + KEY + "}_delta_";
+    private static final String EPOCH_FIELD = "epoch";
+    //增量哈希的过期时间(秒)，重建节点宕机时自动清理；重建超过该时间的一半时放弃写回
+    private static final long DELTA_TTL_SECONDS = 120;
+
+    private static final String BUMP_EPOCH_SQL =
+            "insert into order_status_epoch (id, epoch) values (?, 1) on duplicate key update epoch = epoch + 1";
+    private static final String SELECT_EPOCH_SQL = "select epoch from order_status_epoch where id = ?";
+
+    //版本小于计数的版本：已包含在重建结果中，丢弃；版本大于计数的版本(或计数不存在)：对应的重建正在进行，记录增量；
+    //计数存在时源状态减少(新订单没有源状态)、目标状态增加
+    private static final RedisScript<Long> TRANSIT = new DefaultRedisScript<>(
+            "local epoch = tonumber(redis.call('hget', KEYS[1], ARGV[1] .. ':epoch')) "
+                    + "local version = tonumber(ARGV[2]) "
+                    + "if epoch and version < epoch then return 0 end "
+                    + "if epoch == nil or version > epoch then "
+                    + "if ARGV[3] ~= '' then redis.call('hincrby', KEYS[2], ARGV[3], -tonumber(ARGV[5])) end "
+                    + "redis.call('hincrby', KEYS[2], ARGV[4], ARGV[5]) redis.call('expire', KEYS[2], ARGV[6]) end "
+                    + "if epoch == nil then return 0 end "
+                    + "if ARGV[3] ~= '' then redis.call('hincrby', KEYS[1], ARGV[1] .. ':' .. ARGV[3], -tonumber(ARGV[5])) end "
+                    + "redis.call('hincrby', KEYS[1], ARGV[1] .. ':' .. ARGV[4], ARGV[5]) return 1",
+            Long.class);
+
+    //用快照统计结果加上本版本的增量整体替换分片的计数；已有更新版本的重建写回时放弃
+    private static final RedisScript<Long> REBUILD = new DefaultRedisScript<>(
+            "local epoch = tonumber(redis.call('hget', KEYS[1], ARGV[1] .. ':epoch')) "
+                    + "if epoch and epoch >= tonumber(ARGV[2]) then return 0 end "
+                    + "local counts = {} "
+                    + "for i = 3, #ARGV - 1, 2 do counts[ARGV[i]] = tonumber(ARGV[i + 1]) end "
+                    + "local delta = redis.call('hgetall', KEYS[2]) "
+                    + "for i = 1, #delta, 2 do counts[delta[i]] = (counts[delta[i]] or 0) + tonumber(delta[i + 1]) end "
+                    + "for status, count in pairs(counts) do redis.call('hset', KEYS[1], ARGV[1] .. ':' .. status, count) end "
+                    + "redis.call('hset', KEYS[1], ARGV[1] .. ':epoch', ARGV[2]) redis.call('del', KEYS[2]) return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderStatusEpochMapper orderStatusEpochMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate snapshotTransactionTemplate;
+    //正在进行的重建，同一节点上并发的重建请求等待同一次重建完成
+    private CompletableFuture<Void> rebuilding;
+
+    @PostConstruct
+    public void init() {
+        snapshotTransactionTemplate = new TransactionTemplate(transactionManager);
+        snapshotTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * 新订单创建，在当前分片上调用，事务提交后计数
+     * @param status
+     */
+    public void created(Integer status) {
+        record(null, status, 1);
+    }
+
+    /**
+     * 订单状态流转，在当前分片上调用，事务提交后计数
+     * @param from
+     * @param to
+     * @param count 流转的订单数量
+     */
+    public void transited(Integer from, Integer to, int count) {
+        if (count > 0) {
+            record(from, to, count);
+        }
+    }
+
+    /**
+     * 各个状态的订单数量统计，计数还未建立时先重建
+     * @return
+     */
+    public OrderStatisticsVO statistics() {
+        int[] statuses = {Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS};
+        List<Object> fields = new ArrayList<>();
+        for (int shard = 0; shard < orderShards.getCount(); shard++) {
+            fields.add(shard + ":" + EPOCH_FIELD);
+            for (int status : statuses) {
+                fields.add(shard + ":" + status);
+            }
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(KEY, fields);
+        if (values.stream().anyMatch(Objects::isNull)) {
+            //重建时会写入分片的版本和所有状态的计数，有缺失说明计数还未建立
+            rebuildOnce();
+            values = stringRedisTemplate.opsForHash().multiGet(KEY, fields);
+        }
+
+        int[] totals = new int[statuses.length];
+        for (int i = 0; i < values.size(); i++) {
+            int column = i % (statuses.length + 1);
+            if (column > 0) {
+                totals[column - 1] += toInt(values.get(i));
+            }
+        }
+        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
+        orderStatisticsVO.setToBeConfirmed(totals[0]);
+        orderStatisticsVO.setConfirmed(totals[1]);
+        orderStatisticsVO.setDeliveryInProgress(totals[2]);
+        return orderStatisticsVO;
+    }
+
+    /**
+     * 定时重建计数，集群中每个周期只有一个节点执行
+     */
+    @Scheduled(fixedDelayString = "#{${sky.order.status-count-reconcile-seconds:300} * 1000}")
+    public void reconcile() {
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(RECONCILE_LOCK_KEY, "1", orderProperties.getStatusCountReconcileSeconds() / 2, TimeUnit.SECONDS);
+        if (Boolean.TRUE.equals(locked)) {
+            rebuildOnce();
+        }
+    }
+
+    /**
+     * 重建所有分片的计数，同一节点上同时只执行一次，其他调用等待其完成；
+     * 不同节点同时重建时版本较新的结果生效
+     */
+    private void rebuildOnce() {
+        CompletableFuture<Void> future;
+        boolean owner = false;
+        synchronized (this) {
+            if (rebuilding == null) {
+                rebuilding = new CompletableFuture<>();
+                owner = true;
+            }
+            future = rebuilding;
+        }
+        if (owner) {
+            try {
+                //版本和快照必须在主库上，与流转读取的是同一行
+                DataSourceRoute.pinPrimary();
+                for (int shard = 0; shard < orderShards.getCount(); shard++) {
+                    int s = shard;
+                    orderShards.on(s, () -> rebuild(s));
+                }
+                future.complete(null);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    rebuilding = null;
+                }
+            }
+        }
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * 用一条 group by status 查询重建分片的计数
+     * 在另一个连接上把版本加1并持有排他锁，此时正在进行的流转都已提交，新的流转等待该锁；
+     * 在此期间开启快照后提交版本，快照恰好包含版本小于新版本的所有流转
+     */
+    private void rebuild(int shard) {
+        long[] epoch = new long[1];
+        long begin = System.currentTimeMillis();
+        Map<Integer, Integer> counts = snapshotTransactionTemplate.execute(status -> {
+            try (Connection marker = dataSource.getConnection()) {
+                marker.setAutoCommit(false);
+                try {
+                    epoch[0] = bumpEpoch(marker, shard);
+                    //快照在事务的第一次一致性读时建立
+                    orderStatusEpochMapper.current(shard);
+                    marker.commit();
+                } catch (SQLException | RuntimeException e) {
+                    marker.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("更新订单状态计数版本失败", e);
+            }
+            return countByStatus();
+        });
+        if (System.currentTimeMillis() - begin > DELTA_TTL_SECONDS * 1000 / 2) {
+            log.warn("订单状态计数重建耗时过长，放弃本次重建：分片 {}", shard);
+            return;
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(shard));
+        args.add(String.valueOf(epoch[0]));
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            args.add(String.valueOf(entry.getKey()));
+            args.add(String.valueOf(entry.getValue()));
+        }
+        Long rebuilt = stringRedisTemplate.execute(REBUILD, Arrays.asList(KEY, deltaKey(shard, epoch[0])), args.toArray());
+        if (Long.valueOf(1).equals(rebuilt)) {
+            log.info("重建订单状态计数：分片 {}，版本 {}，{}", shard, epoch[0], counts);
+        } else {
+            log.info("订单状态计数已有更新的重建，放弃本次重建：分片 {}，版本 {}", shard, epoch[0]);
+        }
+    }
+
+    private long bumpEpoch(Connection connection, int shard) throws SQLException {
+        try (PreparedStatement bump = connection.prepareStatement(BUMP_EPOCH_SQL)) {
+            bump.setInt(1, shard);
+            bump.executeUpdate();
+        }
+        try (PreparedStatement select = connection.prepareStatement(SELECT_EPOCH_SQL)) {
+            select.setInt(1, shard);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    private Map<Integer, Integer> countByStatus() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        //所有状态都写入计数，没有订单的状态为0
+        for (int status = Orders.PENDING_PAYMENT; status <= Orders.CANCELLED; status++) {
+            counts.put(status, 0);
+        }
+        for (Map<String, Object> row : orderMapper.countGroupByStatus()) {
+            counts.merge(((Number) row.get("status")).intValue(), ((Number) row.get("count")).intValue(), Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * 在当前事务中以共享锁读取版本，提交后带着版本更新计数；回滚的操作不计数
+     */
+    private void record(Integer from, Integer to, int count) {
+        Integer shard = OrderShards.current();
+        if (shard == null) {
+            throw new IllegalStateException("订单状态计数需要在指定的分片上调用");
+        }
+        Long epoch = orderStatusEpochMapper.lockShared(shard);
+        long version = epoch == null ? 0 : epoch;
+        Runnable transit = () -> transit(shard, version, from, to, count);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            transit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                transit.run();
+            }
+        });
+    }
+
+    private void transit(int shard, long epoch, Integer from, Integer to, int count) {
+        try {
+            stringRedisTemplate.execute(TRANSIT, Arrays.asList(KEY, deltaKey(shard, epoch)),
+                    String.valueOf(shard), String.valueOf(epoch),
+                    from == null ? "" : String.valueOf(from), String.valueOf(to), String.valueOf(count),
+                    String.valueOf(DELTA_TTL_SECONDS));
+        } catch (RuntimeException e) {
+            //计数失败不影响订单业务，由定时重建修正
+            log.error("更新订单状态计数失败：{} -> {}", from, to, e);
+        }
+    }
+
+    private String deltaKey(int shard, long epoch) {
+        return DELTA_KEY_PREFIX + shard + "_" + epoch;
+    }
+
+    private Integer toInt(Object value) {
+        return value == null ? 0 : Integer.valueOf(value.toString());
+    }
+}
@@ -0,0 +1,131 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 下单幂等控制
+ * 第一次请求通过 SETNX 写入处理中标记，下单成功后把结果写回同一个key；
+ * 使用同一个幂等键的重试请求直接返回第一次的下单结果，不再访问MySQL。
+ * 下单期间定时为处理中标记续期，下单较慢时标记也不会过期，避免重试请求重复下单
+ */
+@Component
+@Slf4j
+public class OrderSubmitIdempotency {
+
+    private static final String KEY_PREFIX = "order_idem_";
+
+    //处理中标记
+    private static final String PENDING = "PENDING";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    private ScheduledExecutorService renewer;
+
+    @PostConstruct
+    public void init() {
+        if (orderProperties.getIdempotencyPendingSeconds() <= orderProperties.getSubmitTimeoutSeconds()) {
+            throw new IllegalStateException("下单处理中标记的过期时间必须大于下单事务的超时时间");
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-idem-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewer.shutdownNow();
+    }
+
+    /**
+     * 按幂等键执行下单，幂等键为空时直接下单
+     * @param userId
+     * @param idempotencyKey
+     * @param submitter
+     * @param <T>
+     * @return
+     */
+    public <T> T submit(Long userId, String idempotencyKey, Supplier<T> submitter) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return submitter.get();
+        }
+
+        //幂等键按用户隔离
+        String key = KEY_PREFIX + userId + "_" + idempotencyKey;
+        Boolean first = redisTemplate.opsForValue()
+                .setIfAbsent(key, PENDING, orderProperties.getIdempotencyPendingSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(first)) {
+            Object previous = redisTemplate.opsForValue().get(key);
+            if (previous == null || PENDING.equals(previous)) {
+                //第一次请求还没有处理完，或处理中标记刚好过期
+                throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_IN_PROGRESS);
+            }
+            log.info("重复的下单请求，返回第一次的下单结果：{}", key);
+            return (T) previous;
+        }
+
+        Renewal renewal = new Renewal(key);
+        long interval = Math.max(orderProperties.getIdempotencyPendingSeconds() / 3, 1);
+        ScheduledFuture<?> future = renewer.scheduleWithFixedDelay(renewal, interval, interval, TimeUnit.SECONDS);
+        T result;
+        try {
+            result = submitter.get();
+        } catch (RuntimeException e) {
+            renewal.finish(future);
+            //下单失败，允许客户端使用同一个幂等键重试
+            redisTemplate.delete(key);
+            throw e;
+        }
+        renewal.finish(future);
+        redisTemplate.opsForValue().set(key, result, orderProperties.getIdempotencyTtlSeconds(), TimeUnit.SECONDS);
+        return result;
+    }
+
+    /**
+     * 处理中标记的续期任务，结束后不再续期，保证不会在写入下单结果或删除标记之后再执行
+     */
+    private class Renewal implements Runnable {
+
+        private final String key;
+        private boolean finished;
+
+        Renewal(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (finished) {
+                return;
+            }
+            try {
+                redisTemplate.expire(key, orderProperties.getIdempotencyPendingSeconds(), TimeUnit.SECONDS);
+            } catch (RuntimeException e) {
+                log.error("下单处理中标记续期失败：{}", key, e);
+            }
+        }
+
+        synchronized void finish(ScheduledFuture<?> future) {
+            finished = true;
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 待付款订单超时自动取消
+ * 所有超时任务保存在Redis有序集合中(成员为订单号，分值为到期时间)，重启后不会丢失；
+ * 集群中只有持有主节点租约的节点推进时间轮：定期把即将到期的任务预取到内存时间轮中，
+ * 到期后按批次执行带状态条件的取消，已支付的订单不会被误取消
+ */
+@Component
+@Slf4j
+public class OrderTimeoutScheduler {
+
+    private static final String QUEUE_KEY = "order_timeout";
+    private static final String LEADER_KEY = "order_timeout_leader";
+    private static final String CANCEL_REASON = "订单超时，自动取消";
+
+    //只有租约持有者才能续约
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    //只有租约持有者才能释放
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    //当前节点的租约标识
+    private final String token = UUID.randomUUID().toString();
+
+    //以下状态只在持有主节点租约时由调度线程访问
+    private boolean leader;
+    private TimingWheel<String> wheel;
+    //已经放入时间轮的订单号 -> 到期时间
+    private final Map<String, Long> loaded = new HashMap<>();
+    //已经预取到的到期时间上界
+    private long prefetchedUntil;
+
+    /**
+     * 为新订单登记超时取消任务
+     * @param number
+     * @param orderTime
+     */
+    public void schedule(String number, LocalDateTime orderTime) {
+        long deadline = orderTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                + TimeUnit.MINUTES.toMillis(orderProperties.getTimeoutMinutes());
+        stringRedisTemplate.opsForZSet().add(QUEUE_KEY, number, deadline);
+    }
+
+    /**
+     * 取消超时任务，如订单已支付
+     * 主节点时间轮中残留的任务到期后会被带状态条件的更新忽略
+     * @param number
+     */
+    public void cancel(String number) {
+        stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, number);
+    }
+
+    /**
+     * 推进时间轮
+     */
+    @Scheduled(fixedDelayString = "${sky.order.timeout-tick-millis:1000}")
+    public synchronized void tick() {
+        if (!holdLeadership()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+
+        //到期时间落在已预取范围之前的任务(主节点切换、时间轮启动前的积压)直接取消
+        sweepOverdue(now, expired);
+
+        //预取即将到期的任务
+        if (prefetchedUntil < now + TimeUnit.SECONDS.toMillis(orderProperties.getTimeoutPrefetchSeconds()) / 2) {
+            prefetch(now, expired);
+        }
+
+        wheel.advance(now, number -> {
+            if (loaded.remove(number) != null) {
+                expired.add(number);
+            }
+        });
+
+        cancelExpired(expired);
+    }
+
+    @PreDestroy
+    public void release() {
+        if (leader) {
+            stringRedisTemplate.execute(RELEASE, Collections.singletonList(LEADER_KEY), token);
+        }
+    }
+
+    /**
+     * 获取或续约主节点租约，成为主节点时重建时间轮
+     * @return
+     */
+    private boolean holdLeadership() {
+        long leaseMillis = TimeUnit.SECONDS.toMillis(orderProperties.getTimeoutLeaderLeaseSeconds());
+        boolean held;
+        if (leader) {
+            Long renewed = stringRedisTemplate.execute(RENEW, Collections.singletonList(LEADER_KEY),
+                    token, String.valueOf(leaseMillis));
+            held = renewed != null && renewed > 0;
+        } else {
+            held = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(LEADER_KEY, token, leaseMillis, TimeUnit.MILLISECONDS));
+        }
+
+        if (held && !leader) {
+            log.info("成为订单超时调度主节点");
+            long now = System.currentTimeMillis();
+            wheel = new TimingWheel<>(orderProperties.getTimeoutTickMillis(), orderProperties.getTimeoutWheelSize(), now);
+            loaded.clear();
+            //当前时间之前到期的任务由积压清理处理
+            prefetchedUntil = now;
+        } else if (!held && leader) {
+            log.warn("失去订单超时调度主节点租约");
+            wheel = null;
+            loaded.clear();
+        }
+        leader = held;
+        return held;
+    }
+
+    /**
+     * 取出不在时间轮中且已过期的积压任务，每次最多一批
+     */
+    private void sweepOverdue(long now, List<String> expired) {
+        long max = Math.min(now, prefetchedUntil) - orderProperties.getTimeoutTickMillis();
+        Set<String> overdue = stringRedisTemplate.opsForZSet()
+                .rangeByScore(QUEUE_KEY, Double.NEGATIVE_INFINITY, max, 0, orderProperties.getTimeoutBatchSize());
+        if (overdue == null) {
+            return;
+        }
+        for (String number : overdue) {
+            if (!loaded.containsKey(number)) {
+                expired.add(number);
+            }
+        }
+    }
+
+    /**
+     * 将 [prefetchedUntil, now + 预取范围] 内的任务放入时间轮
+     */
+    private void prefetch(long now, List<String> expired) {
+        long until = now + TimeUnit.SECONDS.toMillis(orderProperties.getTimeoutPrefetchSeconds());
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(QUEUE_KEY, prefetchedUntil, until);
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                String number = tuple.getValue();
+                long deadline = tuple.getScore().longValue();
+                if (loaded.containsKey(number)) {
+                    continue;
+                }
+                if (wheel.add(number, deadline)) {
+                    loaded.put(number, deadline);
+                } else {
+                    expired.add(number);
+                }
+            }
+        }
+        prefetchedUntil = until;
+    }
+
+    /**
+     * 分批取消超时订单，并从Redis中移除对应的任务
+     */
+    private void cancelExpired(List<String> expired) {
+        if (expired.isEmpty()) {
+            return;
+        }
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        for (int i = 0; i < expired.size(); i += batchSize) {
+            List<String> batch = expired.subList(i, Math.min(i + batchSize, expired.size()));
+            Orders orders = Orders.builder()
+                    .cancelReason(CANCEL_REASON)
+                    .cancelTime(LocalDateTime.now())
+                    .build();
+            try {
+                int rows = orderStateMachine.fireBatchByNumber(batch, OrderEvent.TIMEOUT_CANCEL, orders);
+                stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, batch.toArray());
+                log.info("超时取消订单：到期 {} 个，取消 {} 个", batch.size(), rows);
+            } catch (RuntimeException e) {
+                //任务仍保留在Redis中，下次推进时作为积压任务重试
+                log.error("超时取消订单失败", e);
+            }
+        }
+    }
+}
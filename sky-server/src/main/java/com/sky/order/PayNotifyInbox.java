@@ -0,0 +1,335 @@
+package com.sky.order;
+
+import com.sky.properties.PayNotifyProperties;
+import com.sky.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 支付回调收件箱
+ * 回调解密后写入Redis Stream，随即响应微信，已处理完成的交易号直接丢弃；
+ * 各节点以消费组方式读取收件箱，由有界线程池执行支付成功的业务处理，处理成功后登记交易号并确认消息，
+ * 处理失败或节点宕机时消息保持未确认状态，超时后由任一节点重新认领处理；
+ * 处理次数过多的消息转入死信队列(按下次重试时间排序的有序集合)，按翻倍的退避时间继续重试，不会丢弃
+ */
+@Component
+@Slf4j
+public class PayNotifyInbox {
+
+    private static final String KEY = "pay_notify_inbox";
+    private static final String GROUP = "pay_notify";
+    private static final String DEDUP_KEY_PREFIX = "pay_notify_tx_";
+    //死信队列，成员为 交易号,订单号，分数为下次重试时间(毫秒)
+    private static final String DEAD_KEY = "pay_notify_dead";
+    //死信已重试次数
+    private static final String DEAD_ATTEMPTS_KEY = "pay_notify_dead_attempts";
+    private static final String DEAD_SEPARATOR = ",";
+
+    private static final String OUT_TRADE_NO = "outTradeNo";
+    private static final String TRANSACTION_ID = "transactionId";
+
+    //交易号已处理完成时返回空，否则写入收件箱；处理完成前的重复回调也会入队，由处理时按交易号跳过
+    private static final RedisScript<String> OFFER = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 1 then return false end "
+                    + "return redis.call('xadd', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', "
+                    + "'" + OUT_TRADE_NO + "', ARGV[2], '" + TRANSACTION_ID + "', ARGV[3])",
+            String.class);
+
+    //转入死信队列和确认收件箱消息在同一个脚本中完成
+    private static final RedisScript<Long> DEAD_LETTER = new DefaultRedisScript<>(
+            "redis.call('zadd', KEYS[2], 'NX', ARGV[4], ARGV[3]) "
+                    + "redis.call('xack', KEYS[1], ARGV[1], ARGV[2]) return 1",
+            Long.class);
+
+    //取出到期的死信，同时把下次重试时间推后(翻倍退避)，避免其他节点重复取出
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_DEAD = new DefaultRedisScript<>(
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "for _, member in ipairs(due) do "
+                    + "local attempt = redis.call('hincrby', KEYS[2], member, 1) "
+                    + "local backoff = math.min(tonumber(ARGV[3]) * 2 ^ math.min(attempt, 30), tonumber(ARGV[4])) "
+                    + "redis.call('zadd', KEYS[1], tonumber(ARGV[1]) + backoff, member) end "
+                    + "return due",
+            List.class);
+
+    //死信处理成功后删除
+    private static final RedisScript<Long> DEAD_DONE = new DefaultRedisScript<>(
+            "redis.call('zrem', KEYS[1], ARGV[1]) redis.call('hdel', KEYS[2], ARGV[1]) return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private PayNotifyProperties payNotifyProperties;
+
+    //消费者名称，同一节点重启后沿用原名称可直接接管自己未确认的消息
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName();
+
+    //已读取但未处理完的消息数量上限，线程池忙时不再读取，消息留在收件箱中
+    private Semaphore inFlight;
+    private ExecutorService workers;
+    private Thread poller;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        createGroup();
+        inFlight = new Semaphore(payNotifyProperties.getBatchSize());
+        AtomicInteger index = new AtomicInteger();
+        workers = new ThreadPoolExecutor(payNotifyProperties.getWorkers(), payNotifyProperties.getWorkers(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "pay-notify-worker-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        poller = new Thread(this::poll, "pay-notify-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        poller.interrupt();
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 支付回调写入收件箱
+     * @param transactionId 微信支付交易号
+     * @param outTradeNo 商户平台订单号
+     * @return 是否写入收件箱，交易号已处理完成时返回false
+     */
+    public boolean offer(String transactionId, String outTradeNo) {
+        String id = stringRedisTemplate.execute(OFFER, Arrays.asList(KEY, DEDUP_KEY_PREFIX + transactionId),
+                String.valueOf(payNotifyProperties.getStreamMaxLength()),
+                outTradeNo, transactionId);
+        if (id == null) {
+            log.info("支付回调已处理，交易号：{}", transactionId);
+            return false;
+        }
+        log.info("支付回调写入收件箱：{}，订单号：{}，交易号：{}", id, outTradeNo, transactionId);
+        return true;
+    }
+
+    /**
+     * 重新认领超时未确认的消息、重试到期的死信，只认领空闲处理名额数量的消息；处理次数过多的消息转入死信队列
+     */
+    @Scheduled(fixedDelayString = "#{${sky.pay-notify.reclaim-idle-seconds:60} * 1000}")
+    public void reclaim() {
+        int permits = inFlight.drainPermits();
+        try {
+            permits -= reclaimPending(permits);
+            permits -= retryDeadLetters(permits);
+        } finally {
+            inFlight.release(permits);
+        }
+    }
+
+    /**
+     * 认领超时未确认的消息
+     * @param limit 最多认领的数量
+     * @return 交给线程池处理的数量
+     */
+    private int reclaimPending(int limit) {
+        Duration minIdle = Duration.ofSeconds(payNotifyProperties.getReclaimIdleSeconds());
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(KEY, GROUP, Range.unbounded(), payNotifyProperties.getBatchSize());
+        List<RecordId> ids = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) < 0) {
+                continue;
+            }
+            if (message.getTotalDeliveryCount() >= payNotifyProperties.getMaxDeliveries()) {
+                deadLetter(message.getId());
+                continue;
+            }
+            //线程池忙时留给下次认领
+            if (ids.size() < limit) {
+                ids.add(message.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> connection
+                .streamCommands().xClaim(KEY.getBytes(StandardCharsets.UTF_8), GROUP, consumerName, minIdle,
+                        ids.toArray(new RecordId[0])));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        log.info("重新认领未确认的支付回调：{} 条", records.size());
+        for (ByteRecord record : records) {
+            dispatch(record.deserialize(StringRedisSerializer.UTF_8, StringRedisSerializer.UTF_8, StringRedisSerializer.UTF_8));
+        }
+        return records.size();
+    }
+
+    /**
+     * 处理次数过多的消息转入死信队列，首次重试在 reclaimIdleSeconds 之后
+     */
+    private void deadLetter(RecordId id) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(KEY, Range.closed(id.getValue(), id.getValue()));
+        if (records == null || records.isEmpty()) {
+            //消息已被裁剪，只能确认
+            log.error("支付回调 {} 处理次数过多且已不在收件箱中", id);
+            stringRedisTemplate.opsForStream().acknowledge(KEY, GROUP, id);
+            return;
+        }
+        Map<Object, Object> value = records.get(0).getValue();
+        String member = value.get(TRANSACTION_ID) + DEAD_SEPARATOR + value.get(OUT_TRADE_NO);
+        long retryAt = System.currentTimeMillis() + payNotifyProperties.getReclaimIdleSeconds() * 1000;
+        stringRedisTemplate.execute(DEAD_LETTER, Arrays.asList(KEY, DEAD_KEY),
+                GROUP, id.getValue(), member, String.valueOf(retryAt));
+        log.error("支付回调 {} 处理 {} 次仍未成功，转入死信队列：{}", id, payNotifyProperties.getMaxDeliveries(), member);
+    }
+
+    /**
+     * 重试到期的死信
+     * @param limit 最多重试的数量
+     * @return 交给线程池处理的数量
+     */
+    @SuppressWarnings("unchecked")
+    private int retryDeadLetters(int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        List<String> due = stringRedisTemplate.execute(TAKE_DEAD, Arrays.asList(DEAD_KEY, DEAD_ATTEMPTS_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit),
+                String.valueOf(payNotifyProperties.getReclaimIdleSeconds() * 1000),
+                String.valueOf(payNotifyProperties.getDeadLetterMaxBackoffSeconds() * 1000));
+        if (due == null || due.isEmpty()) {
+            return 0;
+        }
+        log.info("重试死信队列中的支付回调：{} 条", due.size());
+        for (String member : due) {
+            int index = member.indexOf(DEAD_SEPARATOR);
+            process(member.substring(index + 1), member.substring(0, index), () -> stringRedisTemplate.execute(DEAD_DONE,
+                    Arrays.asList(DEAD_KEY, DEAD_ATTEMPTS_KEY), member));
+        }
+        return due.size();
+    }
+
+    private void poll() {
+        Consumer consumer = Consumer.from(GROUP, consumerName);
+        StreamReadOptions options = StreamReadOptions.empty()
+                .block(Duration.ofMillis(payNotifyProperties.getPollTimeoutMillis()));
+        while (running) {
+            int permits = 0;
+            try {
+                inFlight.acquire();
+                permits = 1 + inFlight.drainPermits();
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                        .read(consumer, options.count(permits), StreamOffset.create(KEY, ReadOffset.lastConsumed()));
+                if (records != null) {
+                    for (MapRecord<String, Object, Object> record : records) {
+                        permits--;
+                        dispatch(record);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.error("读取支付回调收件箱失败", e);
+                if (String.valueOf(e.getMessage()).contains("NOGROUP")) {
+                    createGroup();
+                }
+                sleep(payNotifyProperties.getPollTimeoutMillis());
+            } finally {
+                inFlight.release(permits);
+            }
+        }
+    }
+
+    /**
+     * 交给线程池处理，调用前需已占用一个处理名额
+     */
+    private void dispatch(MapRecord<String, Object, Object> record) {
+        process((String) record.getValue().get(OUT_TRADE_NO), (String) record.getValue().get(TRANSACTION_ID),
+                () -> stringRedisTemplate.opsForStream().acknowledge(KEY, GROUP, record.getId()));
+    }
+
+    /**
+     * 执行支付成功的业务处理，完成后登记交易号，再执行 onProcessed 确认消息；处理失败时不登记，等待重试
+     */
+    private void process(String outTradeNo, String transactionId, Runnable onProcessed) {
+        workers.execute(() -> {
+            try {
+                String dedupKey = DEDUP_KEY_PREFIX + transactionId;
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(dedupKey))) {
+                    //支付成功的处理本身是幂等的，重复处理同一笔交易不会重复修改订单
+                    orderService.paySuccess(outTradeNo);
+                    stringRedisTemplate.opsForValue().set(dedupKey, "1", payNotifyProperties.getDedupSeconds(), TimeUnit.SECONDS);
+                }
+                onProcessed.run();
+            } catch (RuntimeException e) {
+                log.error("处理支付回调失败，订单号：{}，交易号：{}，等待重新处理", outTradeNo, transactionId, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) (RedisConnection connection) -> connection
+                    .xGroupCreate(KEY.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0-0"), true));
+        } catch (RuntimeException e) {
+            //消费组已存在
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
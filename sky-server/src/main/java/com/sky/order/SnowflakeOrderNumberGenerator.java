@@ -0,0 +1,85 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 风格的订单号生成器
+ * 布局：时间戳(相对epoch的毫秒) | 分片号 | 节点ID | 毫秒内序列号
+ * 时间戳和序列号打包在同一个 AtomicLong 中通过CAS推进，不需要加锁；
+ * 小范围的时钟回拨沿用上一次的时间戳继续发号，保证单调递增
+ */
+@Component
+@Slf4j
+public class SnowflakeOrderNumberGenerator implements OrderNumberGenerator {
+
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+    @Autowired
+    private NodeIdLease nodeIdLease;
+
+    private long epoch;
+    private int sequenceBits;
+    private int shardShift;
+    private int timestampShift;
+    private long sequenceMask;
+    private long maxBackwardMillis;
+
+    //高位为上一次发号的时间戳，低 sequenceBits 位为该毫秒内的序列号
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        epoch = orderNumberProperties.getEpoch();
+        sequenceBits = orderNumberProperties.getSequenceBits();
+        shardShift = orderNumberProperties.getNodeBits() + sequenceBits;
+        timestampShift = orderNumberProperties.getShardBits() + shardShift;
+        if (timestampShift > 22) {
+            //保留41位时间戳，约69年
+            throw new IllegalStateException("分片号、节点ID、序列号的位数之和不能超过22");
+        }
+        sequenceMask = (1L << sequenceBits) - 1;
+        maxBackwardMillis = orderNumberProperties.getMaxBackwardMillis();
+    }
+
+    @Override
+    public long nextId(int shard) {
+        //租约过期时直接抛出异常，不消耗序列号
+        long nodeId = nodeIdLease.getNodeId();
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> sequenceBits;
+            long sequence = current & sequenceMask;
+            long now = System.currentTimeMillis() - epoch;
+
+            long timestamp;
+            long nextSequence;
+            if (now > lastTimestamp) {
+                timestamp = now;
+                nextSequence = 0;
+            } else {
+                if (lastTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("时钟回拨 " + (lastTimestamp - now) + " 毫秒，拒绝生成订单号");
+                }
+                //同一毫秒内或时钟回拨范围内，沿用上一次的时间戳
+                timestamp = lastTimestamp;
+                nextSequence = sequence + 1;
+                if (nextSequence > sequenceMask) {
+                    //当前毫秒的序列号已用完，等待时钟前进
+                    Thread.yield();
+                    continue;
+                }
+            }
+
+            if (state.compareAndSet(current, (timestamp << sequenceBits) | nextSequence)) {
+                return (timestamp << timestampShift) | ((long) shard << shardShift)
+                        | (nodeId << sequenceBits) | nextSequence;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.sky.order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 第一层每格 tickMs 毫秒、共 wheelSize 格，超出本层范围的任务放到上一层(每格为下一层一整圈)；
+ * 时钟推进到上层的某一格时，把该格的任务重新放回下层，最终在第一层到期
+ * 非线程安全，由调用方保证同一时刻只有一个线程访问
+ * @param <T>
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<Entry<T>>[] buckets;
+
+    //当前时间，按 tickMs 向下取整
+    private long currentTime;
+
+    //上一层时间轮，需要时才创建
+    private TimingWheel<T> overflowWheel;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * 添加任务
+     * @param task
+     * @param deadline 到期时间(毫秒)
+     * @return 任务已经到期时返回false，由调用方立即处理
+     */
+    public boolean add(T task, long deadline) {
+        if (deadline < currentTime + tickMs) {
+            return false;
+        }
+        if (deadline < currentTime + interval) {
+            buckets[(int) ((deadline / tickMs) % wheelSize)].add(new Entry<>(task, deadline));
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime);
+        }
+        return overflowWheel.add(task, deadline);
+    }
+
+    /**
+     * 将时钟推进到指定时间，到期的任务交给 expired 处理
+     * @param timeMs
+     * @param expired
+     */
+    public void advance(long timeMs, Consumer<T> expired) {
+        advance(timeMs, this, expired);
+    }
+
+    private void advance(long timeMs, TimingWheel<T> root, Consumer<T> expired) {
+        while (currentTime + tickMs <= timeMs) {
+            currentTime += tickMs;
+            if (overflowWheel != null) {
+                overflowWheel.advance(currentTime, root, expired);
+            }
+            List<Entry<T>> bucket = buckets[(int) ((currentTime / tickMs) % wheelSize)];
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            buckets[(int) ((currentTime / tickMs) % wheelSize)] = new ArrayList<>();
+            for (Entry<T> entry : bucket) {
+                //上层的任务重新放回第一层，放不进去说明已经到期
+                if (!root.add(entry.task, entry.deadline)) {
+                    expired.accept(entry.task);
+                }
+            }
+        }
+    }
+
+    private static class Entry<T> {
+        private final T task;
+        private final long deadline;
+
+        Entry(T task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
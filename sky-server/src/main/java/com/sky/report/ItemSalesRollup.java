@@ -0,0 +1,173 @@
+package com.sky.report;
+
+import com.sky.cache.MenuCatalog;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyItemSales;
+import com.sky.entity.Dish;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DailyItemSalesMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.ReportProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * 每日商品销量汇总
+ * 订单完成时按下单日期累加每个菜品、套餐的销量到 daily_item_sales，
+ * 排名时按商品或分类合计日期范围内的销量，再用容量为N的小顶堆选出前N名
+ */
+@Component
+@Slf4j
+public class ItemSalesRollup {
+
+    //销量从低到高，销量相同时名称靠后的在前，堆顶是当前前N名中最靠后的一个
+    private static final Comparator<GoodsSalesDTO> BY_SALES = Comparator.comparing(GoodsSalesDTO::getNumber)
+            .thenComparing(GoodsSalesDTO::getName, Comparator.reverseOrder());
+
+    @Autowired
+    private DailyItemSalesMapper dailyItemSalesMapper;
+    @Autowired
+    private MenuCatalog menuCatalog;
+    @Autowired
+    private OrderArchiveRouter orderArchiveRouter;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private ReportProperties reportProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 订单完成，需要在完成订单的事务中调用
+     * @param orders
+     * @param orderDetails
+     */
+    public void completed(Orders orders, List<OrderDetail> orderDetails) {
+        if (orderDetails.isEmpty()) {
+            return;
+        }
+        LocalDate reportDate = orders.getOrderTime().toLocalDate();
+        Map<Long, Dish> dishes = menuCatalog.getDishes(orderDetails.stream().map(OrderDetail::getDishId)
+                .filter(Objects::nonNull).collect(Collectors.toSet()));
+        Map<Long, Setmeal> setmeals = menuCatalog.getSetmeals(orderDetails.stream().map(OrderDetail::getSetmealId)
+                .filter(Objects::nonNull).collect(Collectors.toSet()));
+
+        List<DailyItemSales> items = new ArrayList<>(orderDetails.size());
+        for (OrderDetail orderDetail : orderDetails) {
+            boolean isDish = orderDetail.getDishId() != null;
+            Long itemId = isDish ? orderDetail.getDishId() : orderDetail.getSetmealId();
+            Dish dish = isDish ? dishes.get(itemId) : null;
+            Setmeal setmeal = isDish ? null : setmeals.get(itemId);
+            items.add(DailyItemSales.builder()
+                    .reportDate(reportDate)
+                    .itemType(isDish ? DailyItemSales.DISH : DailyItemSales.SETMEAL)
+                    .itemId(itemId)
+                    .categoryId(dish != null ? dish.getCategoryId() : setmeal != null ? setmeal.getCategoryId() : null)
+                    .name(orderDetail.getName())
+                    .number(orderDetail.getNumber())
+                    .build());
+        }
+        dailyItemSalesMapper.addBatch(items);
+    }
+
+    /**
+     * 日期范围内销量前N的菜品、套餐
+     * @param begin
+     * @param end
+     * @param itemType 为空表示菜品和套餐一起排名
+     * @param categoryId 为空表示不限分类
+     * @param limit
+     * @return 按销量从高到低排列
+     */
+    public List<GoodsSalesDTO> topItems(LocalDate begin, LocalDate end, Integer itemType, Long categoryId, int limit) {
+        List<GoodsSalesDTO> sales = dailyItemSalesMapper.sumByItem(begin, end, itemType, categoryId).stream()
+                .map(s -> new GoodsSalesDTO(s.getName(), s.getNumber()))
+                .collect(Collectors.toList());
+        return top(sales, limit);
+    }
+
+    /**
+     * 日期范围内销量前N的分类
+     * @param begin
+     * @param end
+     * @param limit
+     * @return 按销量从高到低排列
+     */
+    public List<GoodsSalesDTO> topCategories(LocalDate begin, LocalDate end, int limit) {
+        return top(dailyItemSalesMapper.sumByCategory(begin, end), limit);
+    }
+
+    /**
+     * 按日期分批重新计算汇总，每批在各分片上聚合后整批替换
+     * 回填期间完成的订单可能被覆盖，只应回填今天之前的日期，并避开归档任务的运行时间
+     * @param begin
+     * @param end
+     * @return 写入的汇总记录数
+     */
+    public int backfill(LocalDate begin, LocalDate end) {
+        int rows = 0;
+        int batchDays = Math.max(reportProperties.getBackfillBatchDays(), 1);
+        for (LocalDate from = begin; !from.isAfter(end); from = from.plusDays(batchDays)) {
+            LocalDate to = from.plusDays(batchDays - 1).isAfter(end) ? end : from.plusDays(batchDays - 1);
+            LocalDateTime beginTime = from.atStartOfDay();
+            LocalDateTime endTime = to.plusDays(1).atStartOfDay();
+            List<List<DailyItemSales>> parts = new ArrayList<>(orderShards.scatter(shard -> dailyItemSalesMapper
+                    .aggregate(true, Collections.emptyList(), Orders.COMPLETED, beginTime, endTime)));
+            //归档表不分片，每个数据库实例上只查询一次
+            List<String> months = orderArchiveRouter.months(beginTime, endTime.minusNanos(1));
+            if (!months.isEmpty()) {
+                parts.addAll(orderShards.scatterInstances(shard -> dailyItemSalesMapper
+                        .aggregate(false, months, Orders.COMPLETED, beginTime, endTime)));
+            }
+
+            LocalDate batchBegin = from;
+            transactionTemplate.executeWithoutResult(status -> {
+                dailyItemSalesMapper.deleteByRange(batchBegin, to);
+                //各分片的同一天同一商品在写入时累加
+                for (List<DailyItemSales> part : parts) {
+                    if (!part.isEmpty()) {
+                        dailyItemSalesMapper.addBatch(part);
+                    }
+                }
+            });
+            int batchRows = parts.stream().mapToInt(List::size).sum();
+            rows += batchRows;
+            log.info("回填商品销量汇总：{} ~ {}，{} 条", from, to, batchRows);
+        }
+        return rows;
+    }
+
+    /**
+     * 容量为N的小顶堆，只保留当前销量最高的N个
+     */
+    private List<GoodsSalesDTO> top(List<GoodsSalesDTO> sales, int limit) {
+        PriorityQueue<GoodsSalesDTO> heap = new PriorityQueue<>(Math.max(limit, 1), BY_SALES);
+        for (GoodsSalesDTO goodsSales : sales) {
+            if (heap.size() < limit) {
+                heap.add(goodsSales);
+            } else if (limit > 0 && BY_SALES.compare(goodsSales, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(goodsSales);
+            }
+        }
+        List<GoodsSalesDTO> top = new ArrayList<>(heap);
+        top.sort(BY_SALES.reversed());
+        return top;
+    }
+}
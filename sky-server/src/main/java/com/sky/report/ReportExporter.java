@@ -0,0 +1,369 @@
+package com.sky.report;
+
+import com.sky.constant.MessageConstant;
+import com.sky.datasource.DataSourceRoute;
+import com.sky.entity.DailyTurnover;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.OrderExportMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.ReportProperties;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderExportRowVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 运营数据报表导出
+ * 使用SXSSF流式写入xlsx，内存中只保留最近的若干行；订单明细通过MyBatis游标逐行读取，
+ * 内存占用与数据量无关。导出在独立的有界线程池中执行，超过并发上限时直接拒绝，不占用处理订单请求的线程
+ */
+@Component
+@Slf4j
+public class ReportExporter {
+
+    //xlsx每个工作表的最大行数，订单明细写满后换到新的工作表
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    private static final String[] STATUS_NAMES = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消"};
+
+    @Autowired
+    private TurnoverRollup turnoverRollup;
+    @Autowired
+    private UserStats userStats;
+    @Autowired
+    private OrderExportMapper orderExportMapper;
+    @Autowired
+    private OrderArchiveRouter orderArchiveRouter;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private ReportProperties reportProperties;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ThreadPoolTaskExecutor executor;
+    private Semaphore permits;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        int concurrency = Math.max(reportProperties.getExportConcurrency(), 1);
+        permits = new Semaphore(concurrency);
+        //获得许可后才提交任务，许可只在任务结束或任务确定不会执行时释放，
+        //排队和执行中的任务合计不超过线程数，队列容量与线程数相同即不会被拒绝
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(concurrency);
+        executor.setThreadNamePrefix("report-export-");
+        executor.setDaemon(true);
+        executor.initialize();
+
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 导出使用的线程池，作为Spring MVC异步请求的执行器
+     * @return
+     */
+    public ThreadPoolTaskExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 导出日期范围内的运营数据和订单明细
+     * @param begin
+     * @param end
+     * @return 在导出线程池中写入响应的任务
+     */
+    public StreamingResponseBody export(LocalDate begin, LocalDate end) {
+        if (!permits.tryAcquire()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_BUSY);
+        }
+        ExportJob job = new ExportJob();
+        abortOnAsyncEnd(job);
+        return out -> {
+            if (!job.start()) {
+                //异步请求已超时或出错，许可已在回调中释放
+                return;
+            }
+            long start = System.currentTimeMillis();
+            //报表查询允许使用从库
+            DataSourceRoute.allowReplica();
+            try {
+                write(out, begin, end, job);
+                log.info("导出运营数据报表：{} ~ {}，耗时 {} ms", begin, end, System.currentTimeMillis() - start);
+            } finally {
+                DataSourceRoute.clear();
+                job.finish();
+            }
+        };
+    }
+
+    /**
+     * 异步请求超时、出错或结束时中止导出任务：任务还没开始就不再执行并释放许可，
+     * 正在执行时在写入下一行前停止，由任务结束时释放许可
+     */
+    private void abortOnAsyncEnd(ExportJob job) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return;
+        }
+        WebAsyncUtils.getAsyncManager(((ServletRequestAttributes) attributes).getRequest())
+                .registerCallableInterceptor(ReportExporter.class.getName(), new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+                        job.abort();
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> Object handleError(NativeWebRequest request, Callable<T> task, Throwable t) {
+                        job.abort();
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        job.abort();
+                    }
+                });
+    }
+
+    private void write(OutputStream out, LocalDate begin, LocalDate end, ExportJob job) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(reportProperties.getExportRowWindow());
+        try {
+            writeBusinessData(workbook.createSheet("运营数据"), begin, end);
+            writeOrderDetails(new DetailSheets(workbook, job), begin, end);
+            workbook.write(out);
+        } finally {
+            //删除写入过程中产生的临时文件
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private void writeBusinessData(Sheet sheet, LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyTurnover> dailyTurnover = turnoverRollup.dailyTurnover(begin, end);
+        Map<LocalDate, Integer> orderCounts = turnoverRollup.orderCounts(begin, end);
+        TreeMap<LocalDate, Long> newUsers = userStats.newUsers();
+
+        //流式写入只能按行号顺序写，先算出每天的数据，合计行写在每天的数据之前
+        Map<LocalDate, BusinessDataVO> days = new TreeMap<>();
+        BigDecimal totalTurnover = BigDecimal.ZERO;
+        int totalValid = 0;
+        int totalOrders = 0;
+        long totalNewUsers = 0;
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyTurnover d = dailyTurnover.get(date);
+            BigDecimal turnover = d == null ? BigDecimal.ZERO : d.getTurnover();
+            int valid = d == null ? 0 : d.getOrderCount();
+            int orders = orderCounts.getOrDefault(date, 0);
+            long newUser = newUsers.getOrDefault(date, 0L);
+            days.put(date, businessData(turnover, valid, orders, newUser));
+            totalTurnover = totalTurnover.add(turnover);
+            totalValid += valid;
+            totalOrders += orders;
+            totalNewUsers += newUser;
+        }
+
+        row(sheet, 0, "时间：" + begin + " 至 " + end);
+        row(sheet, 1, "日期", "营业额", "有效订单数", "订单完成率", "平均客单价", "新增用户数");
+        businessDataRow(sheet, 2, "合计", businessData(totalTurnover, totalValid, totalOrders, totalNewUsers));
+        int rowNum = 3;
+        for (Map.Entry<LocalDate, BusinessDataVO> entry : days.entrySet()) {
+            businessDataRow(sheet, rowNum++, entry.getKey().toString(), entry.getValue());
+        }
+    }
+
+    private BusinessDataVO businessData(BigDecimal turnover, int validOrderCount, int orderCount, long newUsers) {
+        return BusinessDataVO.builder()
+                .turnover(turnover.doubleValue())
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCount == 0 ? 0.0 : (double) validOrderCount / orderCount)
+                .unitPrice(validOrderCount == 0 ? 0.0 : turnover.doubleValue() / validOrderCount)
+                .newUsers((int) newUsers)
+                .build();
+    }
+
+    private void businessDataRow(Sheet sheet, int rowNum, String date, BusinessDataVO businessData) {
+        Row row = sheet.createRow(rowNum);
+        row.createCell(0).setCellValue(date);
+        row.createCell(1).setCellValue(businessData.getTurnover());
+        row.createCell(2).setCellValue(businessData.getValidOrderCount());
+        row.createCell(3).setCellValue(businessData.getOrderCompletionRate());
+        row.createCell(4).setCellValue(businessData.getUnitPrice());
+        row.createCell(5).setCellValue(businessData.getNewUsers());
+    }
+
+    /**
+     * 依次遍历各分片的订单表和归档表，每个游标在一个只读事务中读完
+     */
+    private void writeOrderDetails(DetailSheets sheets, LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = begin.atStartOfDay();
+        LocalDateTime endTime = end.plusDays(1).atStartOfDay();
+        for (int shard = 0; shard < orderShards.getCount(); shard++) {
+            orderShards.on(shard, () -> writeCursor(sheets, true, Collections.emptyList(), beginTime, endTime));
+        }
+        //归档表不分片，每个数据库实例上只查询一次
+        List<String> months = orderArchiveRouter.months(beginTime, endTime.minusNanos(1));
+        if (!months.isEmpty()) {
+            for (int shard : orderShards.instanceShards()) {
+                orderShards.on(shard, () -> writeCursor(sheets, false, months, beginTime, endTime));
+            }
+        }
+    }
+
+    private void writeCursor(DetailSheets sheets, boolean hot, List<String> months,
+                             LocalDateTime beginTime, LocalDateTime endTime) {
+        sheets.checkAborted();
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Cursor<OrderExportRowVO> cursor = orderExportMapper.cursorDetails(hot, months, beginTime, endTime)) {
+                for (OrderExportRowVO r : cursor) {
+                    Row row = sheets.nextRow();
+                    row.createCell(0).setCellValue(r.getNumber());
+                    row.createCell(1).setCellValue(r.getOrderTime().format(TIME_FORMATTER));
+                    row.createCell(2).setCellValue(statusName(r.getStatus()));
+                    row.createCell(3).setCellValue(r.getConsignee());
+                    row.createCell(4).setCellValue(r.getPhone());
+                    row.createCell(5).setCellValue(r.getAddress());
+                    row.createCell(6).setCellValue(r.getName());
+                    row.createCell(7).setCellValue(r.getDishFlavor());
+                    row.createCell(8).setCellValue(r.getItemNumber());
+                    row.createCell(9).setCellValue(r.getItemAmount().doubleValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private String statusName(Integer status) {
+        return status != null && status > 0 && status < STATUS_NAMES.length ? STATUS_NAMES[status] : "";
+    }
+
+    private void row(Sheet sheet, int rowNum, String... values) {
+        Row row = sheet.createRow(rowNum);
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+
+    /**
+     * 一次导出任务的状态
+     * 异步请求超时或出错时Spring会取消任务：排队中的任务不再执行，执行中的任务只会被中断，
+     * 而读取游标不响应中断，因此由任务在写入每一行前检查是否已中止
+     */
+    private class ExportJob {
+
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private volatile boolean aborted;
+
+        boolean start() {
+            return state.compareAndSet(NEW, RUNNING);
+        }
+
+        void finish() {
+            state.set(DONE);
+            permits.release();
+        }
+
+        void abort() {
+            if (state.compareAndSet(NEW, CANCELLED)) {
+                //已取消的任务仍占着队列位置，清除后再释放许可
+                executor.getThreadPoolExecutor().purge();
+                permits.release();
+            } else {
+                aborted = true;
+            }
+        }
+    }
+
+    /**
+     * 订单明细工作表，写满最大行数后换到新的工作表"订单明细(n)"，每个工作表第一行都是表头
+     */
+    private class DetailSheets {
+
+        private final SXSSFWorkbook workbook;
+        private final ExportJob job;
+        private Sheet sheet;
+        private int rowNum;
+        private int count;
+
+        DetailSheets(SXSSFWorkbook workbook, ExportJob job) {
+            this.workbook = workbook;
+            this.job = job;
+            newSheet();
+        }
+
+        void checkAborted() {
+            if (job.aborted) {
+                throw new CancellationException("导出已中止");
+            }
+        }
+
+        Row nextRow() {
+            checkAborted();
+            if (rowNum >= MAX_ROWS) {
+                newSheet();
+            }
+            return sheet.createRow(rowNum++);
+        }
+
+        private void newSheet() {
+            count++;
+            sheet = workbook.createSheet(count == 1 ? "订单明细" : "订单明细(" + count + ")");
+            row(sheet, 0, "订单号", "下单时间", "订单状态", "收货人", "手机号", "地址", "商品名称", "口味", "数量", "金额");
+            rowNum = 1;
+        }
+    }
+}
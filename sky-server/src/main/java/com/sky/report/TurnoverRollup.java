@@ -0,0 +1,139 @@
+package com.sky.report;
+
+import com.sky.entity.DailyTurnover;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyTurnoverMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.ReportProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 每日营业额汇总
+ * 订单完成时按下单日期累加到 daily_turnover，统计时只按日期范围查询汇总表；
+ * 历史数据按日期分批从各分片的订单表和归档表中聚合后回填
+ */
+@Component
+@Slf4j
+public class TurnoverRollup {
+
+    @Autowired
+    private DailyTurnoverMapper dailyTurnoverMapper;
+    @Autowired
+    private OrderArchiveRouter orderArchiveRouter;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private ReportProperties reportProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 订单完成，需要在完成订单的事务中调用
+     * @param orders
+     */
+    public void completed(Orders orders) {
+        dailyTurnoverMapper.add(orders.getOrderTime().toLocalDate(), orders.getAmount());
+    }
+
+    /**
+     * 查询日期范围内每天的营业额
+     * @param begin
+     * @param end
+     * @return 日期 -> 营业额，没有已完成订单的日期不包含在内
+     */
+    public Map<LocalDate, BigDecimal> turnover(LocalDate begin, LocalDate end) {
+        Map<LocalDate, BigDecimal> turnover = new TreeMap<>();
+        dailyTurnover(begin, end).forEach((date, d) -> turnover.put(date, d.getTurnover()));
+        return turnover;
+    }
+
+    /**
+     * 查询日期范围内每天的营业额和已完成订单数
+     * @param begin
+     * @param end
+     * @return 日期 -> 汇总，没有已完成订单的日期不包含在内
+     */
+    public Map<LocalDate, DailyTurnover> dailyTurnover(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyTurnover> dailyTurnover = new TreeMap<>();
+        for (DailyTurnover d : dailyTurnoverMapper.listByRange(begin, end)) {
+            dailyTurnover.put(d.getReportDate(), d);
+        }
+        return dailyTurnover;
+    }
+
+    /**
+     * 从订单表和归档表中统计日期范围内每天的订单总数(包括未完成的订单)
+     * @param begin
+     * @param end
+     * @return 日期 -> 订单数，没有订单的日期不包含在内
+     */
+    public Map<LocalDate, Integer> orderCounts(LocalDate begin, LocalDate end) {
+        Map<LocalDate, Integer> orderCounts = new TreeMap<>();
+        aggregate(begin, end, null).forEach(d -> orderCounts.put(d.getReportDate(), d.getOrderCount()));
+        return orderCounts;
+    }
+
+    /**
+     * 按日期分批重新计算汇总，每批在各分片上聚合后整批替换
+     * 回填期间完成的订单可能被覆盖，只应回填今天之前的日期，并避开归档任务的运行时间
+     * @param begin
+     * @param end
+     * @return 有已完成订单的天数
+     */
+    public int backfill(LocalDate begin, LocalDate end) {
+        int days = 0;
+        int batchDays = Math.max(reportProperties.getBackfillBatchDays(), 1);
+        for (LocalDate from = begin; !from.isAfter(end); from = from.plusDays(batchDays)) {
+            LocalDate to = from.plusDays(batchDays - 1).isAfter(end) ? end : from.plusDays(batchDays - 1);
+            List<DailyTurnover> batch = aggregate(from, to, Orders.COMPLETED);
+            LocalDate batchBegin = from;
+            transactionTemplate.executeWithoutResult(status -> {
+                dailyTurnoverMapper.deleteByRange(batchBegin, to);
+                if (!batch.isEmpty()) {
+                    dailyTurnoverMapper.insertBatch(batch);
+                }
+            });
+            days += batch.size();
+            log.info("回填营业额汇总：{} ~ {}，{} 天", from, to, batch.size());
+        }
+        return days;
+    }
+
+    private List<DailyTurnover> aggregate(LocalDate from, LocalDate to, Integer status) {
+        LocalDateTime beginTime = from.atStartOfDay();
+        LocalDateTime endTime = to.plusDays(1).atStartOfDay();
+        List<List<DailyTurnover>> parts = new ArrayList<>(orderShards.scatter(shard -> dailyTurnoverMapper.aggregate(
+                Collections.singletonList(OrderArchiveRouter.HOT_TABLE), status, beginTime, endTime)));
+        //归档表不分片，每个数据库实例上只查询一次
+        List<String> tables = orderArchiveRouter.tables(beginTime, endTime.minusNanos(1));
+        if (tables.size() > 1) {
+            parts.addAll(orderShards.scatterInstances(shard -> dailyTurnoverMapper
+                    .aggregate(tables.subList(1, tables.size()), status, beginTime, endTime)));
+        }
+
+        Map<LocalDate, DailyTurnover> merged = new TreeMap<>();
+        for (List<DailyTurnover> part : parts) {
+            for (DailyTurnover d : part) {
+                merged.merge(d.getReportDate(), d, (a, b) -> DailyTurnover.builder()
+                        .reportDate(a.getReportDate())
+                        .turnover(a.getTurnover().add(b.getTurnover()))
+                        .orderCount(a.getOrderCount() + b.getOrderCount())
+                        .build());
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+}
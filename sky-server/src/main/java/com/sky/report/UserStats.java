@@ -0,0 +1,139 @@
+package com.sky.report;
+
+import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户统计
+ * 每日新增用户数记录在Redis哈希 report_user_new 中(日期 -> 新增数)，注册时累加，用户总量由新增数累计得到；
+ * 每日活跃用户用HyperLogLog report_user_active_yyyyMMdd 估算，同一节点同一天对同一用户只写入一次
+ */
+@Component
+@Slf4j
+public class UserStats {
+
+    private static final String NEW_USER_KEY = "report_user_new";
+    private static final String ACTIVE_USER_KEY_PREFIX = "report_user_active_";
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    //本节点当天已写入HyperLogLog的用户，超过上限时清空，之后重复写入也不影响统计结果
+    private static final int SEEN_LIMIT = 100000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private ReportProperties reportProperties;
+
+    private volatile LocalDate seenDate;
+    private volatile Set<Long> seen = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 新用户注册
+     * @param date
+     */
+    public void registered(LocalDate date) {
+        stringRedisTemplate.opsForHash().increment(NEW_USER_KEY, date.toString(), 1);
+    }
+
+    /**
+     * 用户访问
+     * @param userId
+     */
+    public void active(Long userId) {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(seenDate)) {
+            synchronized (this) {
+                if (!today.equals(seenDate)) {
+                    seen = ConcurrentHashMap.newKeySet();
+                    seenDate = today;
+                }
+            }
+        }
+        Set<Long> seenToday = seen;
+        if (!seenToday.add(userId)) {
+            return;
+        }
+        if (seenToday.size() > SEEN_LIMIT) {
+            seenToday.clear();
+        }
+        String key = activeKey(today);
+        stringRedisTemplate.opsForHyperLogLog().add(key, userId.toString());
+        stringRedisTemplate.expire(key, reportProperties.getActiveUserRetentionDays(), TimeUnit.DAYS);
+    }
+
+    /**
+     * 每日新增用户数
+     * @return 日期 -> 新增用户数，按日期排序，没有新增用户的日期不包含在内
+     */
+    public TreeMap<LocalDate, Long> newUsers() {
+        TreeMap<LocalDate, Long> newUsers = new TreeMap<>();
+        stringRedisTemplate.<String, String>opsForHash().entries(NEW_USER_KEY)
+                .forEach((date, count) -> newUsers.put(LocalDate.parse(date), Long.valueOf(count)));
+        return newUsers;
+    }
+
+    /**
+     * 日期范围内每天的活跃用户数(估算值)
+     * @param begin
+     * @param end
+     * @return 日期 -> 活跃用户数
+     */
+    public Map<LocalDate, Long> activeUsers(LocalDate begin, LocalDate end) {
+        List<Object> counts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                pfCount(connection, activeKey(date));
+            }
+            return null;
+        });
+        Map<LocalDate, Long> activeUsers = new HashMap<>();
+        LocalDate date = begin;
+        for (Object count : counts) {
+            activeUsers.put(date, count == null ? 0L : ((Number) count).longValue());
+            date = date.plusDays(1);
+        }
+        return activeUsers;
+    }
+
+    /**
+     * 从用户表重新统计今天之前每天的新增用户数，今天的新增数仍由注册时累加
+     * @return 有新增用户的天数
+     */
+    public int backfill() {
+        Map<String, String> newUsers = new HashMap<>();
+        for (Map<String, Object> row : userMapper.countGroupByCreateDate(LocalDate.now().atStartOfDay())) {
+            newUsers.put(row.get("create_date").toString(), row.get("count").toString());
+        }
+        if (!newUsers.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(NEW_USER_KEY, newUsers);
+        }
+        log.info("回填每日新增用户数：{} 天", newUsers.size());
+        return newUsers.size();
+    }
+
+    private void pfCount(RedisConnection connection, String key) {
+        connection.pfCount(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String activeKey(LocalDate date) {
+        return ACTIVE_USER_KEY_PREFIX + date.format(DAY_FORMATTER);
+    }
+}
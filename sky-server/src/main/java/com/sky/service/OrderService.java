@@ -1,6 +1,7 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
@@ -44,6 +45,13 @@ public interface OrderService {
      */
     PageResult page(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 订单游标分页查询
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    CursorPageResult pageByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
     /**
      * 取消订单
      * @param id
@@ -73,4 +81,28 @@ public interface OrderService {
      * @param ordersRejectionDTO
      */
     void reject(OrdersRejectionDTO ordersRejectionDTO);
+
+    /**
+     * 商家取消订单
+     * @param ordersCancelDTO
+     */
+    void adminCancel(OrdersCancelDTO ordersCancelDTO);
+
+    /**
+     * 派送订单
+     * @param id
+     */
+    void delivery(Long id);
+
+    /**
+     * 完成订单
+     * @param id
+     */
+    void complete(Long id);
+
+    /**
+     * 客户催单
+     * @param id
+     */
+    void reminder(Long id);
 }
@@ -0,0 +1,66 @@
+package com.sky.service;
+
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+
+public interface ReportService {
+
+    /**
+     * 营业额统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end);
+
+    /**
+     * 回填营业额汇总
+     * @param begin
+     * @param end
+     * @return 有已完成订单的天数
+     */
+    int backfillTurnover(LocalDate begin, LocalDate end);
+
+    /**
+     * 销量排名
+     * @param begin
+     * @param end
+     * @param type dish、setmeal、category，为空表示菜品和套餐一起排名
+     * @param categoryId 只统计该分类下的菜品、套餐，为空表示不限
+     * @param limit 为空时返回前10名
+     * @return
+     */
+    SalesTop10ReportVO getSalesTop(LocalDate begin, LocalDate end, String type, Long categoryId, Integer limit);
+
+    /**
+     * 回填商品销量汇总
+     * @param begin
+     * @param end
+     * @return 写入的汇总记录数
+     */
+    int backfillSales(LocalDate begin, LocalDate end);
+
+    /**
+     * 用户统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    UserReportVO getUserStatistics(LocalDate begin, LocalDate end);
+
+    /**
+     * 回填每日新增用户数
+     * @return 有新增用户的天数
+     */
+    int backfillUsers();
+
+    /**
+     * 导出最近若干天(截止到昨天)的运营数据报表
+     * @return 写入xlsx的任务，在导出线程池中执行
+     */
+    StreamingResponseBody exportBusinessData();
+}
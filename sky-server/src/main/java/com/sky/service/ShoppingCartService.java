@@ -13,6 +13,18 @@ public interface ShoppingCartService {
      */
     void addShoppingCart(ShoppingCartDTO shoppingCartDTO);
 
+    /**
+     * 减少购物车中的商品数量
+     * @param shoppingCartDTO
+     */
+    void subShoppingCart(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 批量设置购物车中的商品数量
+     * @param shoppingCartDTOList
+     */
+    void setShoppingCartNumbers(List<ShoppingCartDTO> shoppingCartDTOList);
+
     /**
      * 查看购物车
      * @return
@@ -21,7 +21,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class DishServiceImpl implements DishService {
@@ -109,13 +112,10 @@ public class DishServiceImpl implements DishService {
         //根据ID查询菜品
         Dish dish = dishMapper.getById(id);
 
-        //根据ID查询口味
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
-
-        //封装VO
+        //封装VO并查询口味
         DishVO dishVO = new DishVO();
         BeanUtils.copyProperties(dish, dishVO);
-        dishVO.setFlavors(dishFlavors);
+        fillFlavors(Collections.singletonList(dishVO));
 
         return dishVO;
     }
@@ -183,14 +183,42 @@ public class DishServiceImpl implements DishService {
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
         }
 
+        //一次查询出所有菜品的口味，避免逐个菜品查询
+        fillFlavors(dishVOList);
+
         return dishVOList;
     }
+
+    /**
+     * 根据菜品ID查询所属分类ID
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIdsByIds(List<Long> ids) {
+        if(ids == null || ids.isEmpty()){
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
+    }
+
+    /**
+     * 批量查询菜品口味并按菜品ID分组填充，无论多少个菜品都只发出一条SQL
+     * @param dishVOList
+     */
+    private void fillFlavors(List<DishVO> dishVOList) {
+        if(dishVOList.isEmpty()){
+            return;
+        }
+        List<Long> dishIds = dishVOList.stream().map(DishVO::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
+
+        for (DishVO dishVO : dishVOList) {
+            dishVO.setFlavors(flavorMap.getOrDefault(dishVO.getId(), new ArrayList<>()));
+        }
+    }
 }
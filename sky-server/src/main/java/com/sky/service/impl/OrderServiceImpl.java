@@ -3,7 +3,10 @@ package com.sky.service.impl;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.MenuCatalog;
+import com.sky.cart.ShoppingCartStore;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
@@ -11,6 +14,21 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderEvent;
+import com.sky.order.OrderNumberGenerator;
+import com.sky.order.OrderPageCursor;
+import com.sky.order.OrderPrice;
+import com.sky.order.OrderPricingEngine;
+import com.sky.order.OrderSearchIndex;
+import com.sky.order.OrderShards;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.OrderTimeoutScheduler;
+import com.sky.properties.OrderProperties;
+import com.sky.report.ItemSalesRollup;
+import com.sky.report.TurnoverRollup;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
 import com.sky.utils.WeChatPayUtil;
@@ -18,21 +36,45 @@ import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import org.aspectj.weaver.ast.Or;
+import com.sky.websocket.OrderPushService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class OrderServiceImpl implements OrderService {
 
+    //游标分页总记录数缓存的key前缀，后接查询条件的摘要
+    private static final String PAGE_TOTAL_KEY_PREFIX = "order_page_total_";
+    //分页查询中归档订单数量缓存的key前缀，后接归档表数量和查询条件的摘要
+    private static final String ARCHIVED_TOTAL_KEY_PREFIX = "order_page_archived_total_";
+    //只查询订单表
+    private static final List<String> HOT_TABLES = Collections.singletonList(OrderArchiveRouter.HOT_TABLE);
+    //游标分页未指定每页记录数时的默认值
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 10;
+    //分页查询的排序：下单时间倒序，相同时按ID倒序
+    private static final Comparator<Orders> NEWEST_FIRST =
+            Comparator.comparing(Orders::getOrderTime).thenComparing(Orders::getId).reversed();
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -40,7 +82,7 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
     private UserMapper userMapper;
     @Autowired
@@ -49,6 +91,34 @@ public class OrderServiceImpl implements OrderService {
     private SetmealMapper setmealMapper;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Autowired
+    private OrderPushService orderPushService;
+    @Autowired
+    private MenuCatalog menuCatalog;
+    @Autowired
+    private OrderPricingEngine orderPricingEngine;
+    @Autowired
+    private OrderSearchIndex orderSearchIndex;
+    @Autowired
+    private OrderArchiveRouter orderArchiveRouter;
+    @Autowired
+    private OrderShards orderShards;
+    @Autowired
+    private TurnoverRollup turnoverRollup;
+    @Autowired
+    private ItemSalesRollup itemSalesRollup;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
     /**
      * 订单提交
@@ -56,7 +126,7 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     @Override
-    @Transactional
+    @Transactional(timeoutString = "${sky.order.submit-timeout-seconds:10}")
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
 
         // 处理各种业务异常（地址簿为空，购物车数据为空）
@@ -68,39 +138,56 @@ public class OrderServiceImpl implements OrderService {
 
         // 查询当前用户的购物车数据
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = shoppingCartStore.list(userId);
         if(shoppingCartList == null || shoppingCartList.isEmpty()){
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
 
+        // 按当前菜单价格重新计价，客户端提交的总金额与计价结果不一致时拒绝下单
+        OrderPrice price = orderPricingEngine.price(shoppingCartList,
+                ordersSubmitDTO.getTablewareStatus(), ordersSubmitDTO.getTablewareNumber());
+        orderPricingEngine.verify(price, ordersSubmitDTO.getAmount());
+
         // 向订单表插入1条数据
         Orders orders = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, orders);
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID); // 未付款
         orders.setStatus(Orders.PENDING_PAYMENT); // 待付款
-        orders.setNumber(String.valueOf(System.currentTimeMillis())); // 用时间戳当做订单号
+        // 订单ID由时间戳+分片号+节点ID+序列号组成，集群内唯一，同时作为订单号
+        int shard = orderShards.ofUser(userId);
+        orders.setId(orderNumberGenerator.nextId(shard));
+        orders.setNumber(String.valueOf(orders.getId()));
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setAddress(addressBook.getProvinceName() + addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
         orders.setUserId(userId);
-
-        orderMapper.insert(orders);
+        orders.setAmount(OrderPrice.toYuan(price.getTotalCents()));
+        orders.setPackAmount(OrderPrice.toYuan(price.getPackCents()));
 
         List<OrderDetail> orderDetailList = new ArrayList<>();
         // 向订单明细表插入N条数据
         for (ShoppingCart cart : shoppingCartList) {
             OrderDetail orderDetail = new OrderDetail(); // 订单明细
             BeanUtils.copyProperties(cart, orderDetail);
+            orderDetail.setAmount(OrderPrice.toYuan(price.getUnitCents().get(OrderPricingEngine.lineKey(cart)))); // 使用计价时的单价
             orderDetail.setOrderId(orders.getId()); // 设置当前订单明细关联的订单ID
             orderDetailList.add(orderDetail);
         }
-        orderDetailMapper.insertBatch(orderDetailList);
+
+        // 订单和明细在分片所在的实例上一起提交
+        orderShards.inTransaction(shard, () -> {
+            orderMapper.insert(orders);
+            orderStatusCounter.created(orders.getStatus());
+            orderDetailMapper.insertBatch(orderDetailList);
+        });
+        orderSearchIndex.index(orders);
 
         // 清空当前用户的购物车数据
-        shoppingCartMapper.deleteByUserId(userId);
+        shoppingCartStore.clean(userId);
+
+        // 登记超时未支付自动取消，事务回滚时残留的任务到期后不会匹配到订单
+        orderTimeoutScheduler.schedule(orders.getNumber(), orders.getOrderTime());
 
         // 封装VO返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
@@ -149,18 +236,24 @@ public class OrderServiceImpl implements OrderService {
      */
     public void paySuccess(String outTradeNo) {
 
-        // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
-
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
+        // 根据订单号将待付款的订单更新为待接单，同时更新支付状态、结账时间
         Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
                 .payStatus(Orders.PAID)
                 .checkoutTime(LocalDateTime.now())
                 .build();
 
-        orderMapper.update(orders);
+        // 微信可能重复回调，订单不是待付款状态时直接忽略
+        if(orderStateMachine.fireByNumber(outTradeNo, OrderEvent.PAY, orders) == null){
+            log.info("订单 {} 不是待付款状态，忽略支付回调", outTradeNo);
+            return;
+        }
+
+        // 已支付，取消超时自动取消任务
+        orderTimeoutScheduler.cancel(outTradeNo);
+
+        // 通过WebSocket向管理端推送来单提醒
+        Orders ordersDB = orderArchiveRouter.getByNumber(outTradeNo);
+        orderPushService.orderPaid(ordersDB.getId(), outTradeNo);
     }
 
     /**
@@ -169,90 +262,251 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     @Override
+    @Transactional(readOnly = true)
     public PageResult page(OrdersPageQueryDTO ordersPageQueryDTO) {
 
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
-        Page<Orders> ordersPage = orderMapper.page(ordersPageQueryDTO);
+        if(!resolveCandidates(ordersPageQueryDTO)){
+            return new PageResult(0, new ArrayList<>());
+        }
 
-        //封装VO
-        List<OrderVO> voList = new ArrayList<>();
-        List<OrderDetail> orderDetails;
-        if(ordersPage != null && ordersPage.getTotal() > 0){
-            for (Orders orders : ordersPage) {
-                orderDetails = orderDetailMapper.getByOrderId(orders.getId());
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetails);
-
-                voList.add(orderVO);
+        // 先只查询订单表，当前页取满且最后一条晚于归档时限时归档的订单都在当前页之后，不需要查询归档表；
+        // 时间范围覆盖到的归档月份需在开启分页前查询
+        List<String> tables = orderArchiveRouter.tables(ordersPageQueryDTO.getBeginTime(), ordersPageQueryDTO.getEndTime());
+        List<String> archives = tables.subList(1, tables.size());
+        Integer shard = shardOf(ordersPageQueryDTO);
+        int pageSize = ordersPageQueryDTO.getPageSize();
+        long total;
+        List<Orders> ordersList;
+        if(shard != null){
+            Page<Orders> ordersPage = orderShards.read(shard, () -> {
+                PageHelper.startPage(ordersPageQueryDTO.getPage(), pageSize);
+                return orderMapper.page(ordersPageQueryDTO, HOT_TABLES);
+            });
+            if(!archives.isEmpty() && !filledBeforeArchives(ordersPage.getResult(), pageSize)){
+                ordersPage = orderShards.read(shard, () -> {
+                    PageHelper.startPage(ordersPageQueryDTO.getPage(), pageSize);
+                    return orderMapper.page(ordersPageQueryDTO, tables);
+                });
+                total = ordersPage.getTotal();
+            }else{
+                total = ordersPage.getTotal() + archivedTotal(ordersPageQueryDTO, archives);
             }
+            ordersList = ordersPage.getResult();
+        }else{
+            // 跨分片查询：每个分片(及各实例的归档表)查询到当前页末尾为止的订单，归并后截取当前页
+            int offset = (Math.max(ordersPageQueryDTO.getPage(), 1) - 1) * pageSize;
+            int limit = offset + pageSize;
+            List<Page<Orders>> pages = new ArrayList<>(orderShards.scatter(s -> {
+                PageHelper.startPage(1, limit);
+                return orderMapper.page(ordersPageQueryDTO, HOT_TABLES);
+            }));
+            total = pages.stream().mapToLong(Page::getTotal).sum();
+            List<Orders> merged = OrderShards.merge(pages, NEWEST_FIRST, limit);
+            if(!archives.isEmpty() && !filledBeforeArchives(merged, limit)){
+                List<Page<Orders>> archivePages = orderShards.scatterInstances(s -> {
+                    PageHelper.startPage(1, limit);
+                    return orderMapper.page(ordersPageQueryDTO, archives);
+                });
+                total += archivePages.stream().mapToLong(Page::getTotal).sum();
+                pages.addAll(archivePages);
+                merged = OrderShards.merge(pages, NEWEST_FIRST, limit);
+            }else{
+                total += archivedTotal(ordersPageQueryDTO, archives);
+            }
+            ordersList = merged.size() > offset ? merged.subList(offset, merged.size()) : new ArrayList<>();
         }
 
-        return new PageResult(ordersPage.getTotal(), voList);
+        //封装VO，订单明细一次性批量查询
+        List<OrderVO> voList = new ArrayList<>();
+        if(total > 0){
+            boolean withDetails = !Boolean.TRUE.equals(ordersPageQueryDTO.getSummaryOnly());
+            voList = toOrderVOList(ordersList, withDetails);
+        }
+
+        return new PageResult(total, voList);
     }
 
     /**
-     * 取消订单
-     * @param id
+     * 订单游标分页查询
+     * 按 (order_time, id) 定位到上一页末尾继续查询，查询耗时与翻页深度无关；
+     * 默认不统计总数，需要总数时返回短时间内缓存的统计结果
+     * @param ordersPageQueryDTO
+     * @return
      */
     @Override
-    public void cancel(Long id) {
-        Orders currentOrder = orderMapper.getById(id);
+    @Transactional(readOnly = true)
+    public CursorPageResult pageByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        int pageSize = ordersPageQueryDTO.getPageSize() > 0
+                ? Math.min(ordersPageQueryDTO.getPageSize(), orderProperties.getCursorMaxPageSize())
+                : DEFAULT_CURSOR_PAGE_SIZE;
+        String cursorText = ordersPageQueryDTO.getCursor();
+        OrderPageCursor cursor = cursorText == null || cursorText.isEmpty() ? null : OrderPageCursor.decode(cursorText);
+        if(!resolveCandidates(ordersPageQueryDTO)){
+            return new CursorPageResult(new ArrayList<>(), null, Boolean.TRUE.equals(ordersPageQueryDTO.getWithTotal()) ? 0L : null);
+        }
 
-        // 先检查有没有这个订单
-        if(currentOrder == null){
-            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        // 游标之后的订单都早于游标位置，只需查询到游标所在月份为止的归档表
+        LocalDateTime endTime = ordersPageQueryDTO.getEndTime();
+        if(cursor != null && (endTime == null || cursor.getOrderTime().isBefore(endTime))){
+            endTime = cursor.getOrderTime();
+        }
+        List<String> tables = orderArchiveRouter.tables(ordersPageQueryDTO.getBeginTime(), endTime);
+
+        //多查一条用于判断是否还有下一页，跨分片时各分片分别查询后归并；先只查询订单表，取满且最后一条晚于归档时限时不再查询归档表
+        int limit = pageSize + 1;
+        List<String> archives = tables.subList(1, tables.size());
+        Integer shard = shardOf(ordersPageQueryDTO);
+        List<Orders> ordersList = shard != null
+                ? orderShards.read(shard, () -> orderMapper.pageByCursor(ordersPageQueryDTO, cursor, limit, HOT_TABLES))
+                : OrderShards.merge(orderShards.scatter(s -> orderMapper.pageByCursor(ordersPageQueryDTO, cursor, limit, HOT_TABLES)),
+                        NEWEST_FIRST, limit);
+        if(!archives.isEmpty() && !filledBeforeArchives(ordersList, limit)){
+            List<List<Orders>> parts = new ArrayList<>();
+            parts.add(ordersList);
+            if(shard != null){
+                parts.add(orderShards.read(shard, () -> orderMapper.pageByCursor(ordersPageQueryDTO, cursor, limit, archives)));
+            }else{
+                parts.addAll(orderShards.scatterInstances(s -> orderMapper.pageByCursor(ordersPageQueryDTO, cursor, limit, archives)));
+            }
+            ordersList = OrderShards.merge(parts, NEWEST_FIRST, limit);
+        }
+        String nextCursor = null;
+        if(ordersList.size() > pageSize){
+            ordersList = ordersList.subList(0, pageSize);
+            Orders last = ordersList.get(pageSize - 1);
+            nextCursor = new OrderPageCursor(last.getOrderTime(), last.getId()).encode();
         }
 
-        Integer status = currentOrder.getStatus();
+        boolean withDetails = !Boolean.TRUE.equals(ordersPageQueryDTO.getSummaryOnly());
+        Long total = Boolean.TRUE.equals(ordersPageQueryDTO.getWithTotal()) ? cachedTotal(ordersPageQueryDTO) : null;
+        return new CursorPageResult(toOrderVOList(ordersList, withDetails), nextCursor, total);
+    }
 
-        // 商家已接单状态下，用户取消订单需电话沟通商家
-        if(Objects.equals(status, Orders.CONFIRMED)){
-            throw new OrderBusinessException(MessageConstant.ORDER_ALREADY_CONFIRMED);
+    /**
+     * 查询条件能确定分片时返回该分片，否则返回null，需要在所有分片上查询
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private Integer shardOf(OrdersPageQueryDTO ordersPageQueryDTO) {
+        if(!orderShards.isEnabled()){
+            return 0;
         }
+        Long userId = ordersPageQueryDTO.getUserId();
+        return userId == null ? null : orderShards.ofUser(userId);
+    }
 
-        // 派送中状态下，用户取消订单需电话沟通商家
-        if(Objects.equals(status, Orders.DELIVERY_IN_PROGRESS)){
-            throw new OrderBusinessException(MessageConstant.ORDER_DELIVER_ON_THE_WAY);
+    /**
+     * 跨分片查询：订单表在每个分片上查询，归档表不分片，在每个数据库实例上只查询一次，避免归档订单重复出现
+     * @param tables 第一个为订单表，其余为归档表
+     * @param query 参数为本次查询的表
+     * @return 各分片的结果，有归档表时之后是各实例上归档表的结果
+     */
+    private <T> List<T> scatterWithArchives(List<String> tables, Function<List<String>, T> query) {
+        List<T> results = new ArrayList<>(orderShards.scatter(s -> query.apply(Collections.singletonList(OrderArchiveRouter.HOT_TABLE))));
+        if(tables.size() > 1){
+            results.addAll(orderShards.scatterInstances(s -> query.apply(tables.subList(1, tables.size()))));
         }
+        return results;
+    }
 
-        // 如果是已完成的订单，依然不能直接取消
-        if(Objects.equals(status, Orders.COMPLETED)){
-            throw new OrderBusinessException(MessageConstant.ORDER_ALREADY_COMPLETED);
-        }
+    /**
+     * 手机号、订单号模糊查询时先通过检索表得到候选订单ID
+     * @param ordersPageQueryDTO
+     * @return 没有任何订单匹配时返回false
+     */
+    private boolean resolveCandidates(OrdersPageQueryDTO ordersPageQueryDTO) {
+        List<Long> candidateIds = orderSearchIndex.candidates(ordersPageQueryDTO);
+        ordersPageQueryDTO.setCandidateIds(candidateIds);
+        return candidateIds == null || !candidateIds.isEmpty();
+    }
 
-        // 防止对已取消的订单重复操作
-        if(Objects.equals(status, Orders.CANCELLED)){
-            throw new OrderBusinessException(MessageConstant.ORDER_ALREADY_CANCELLED);
+    /**
+     * 按查询条件统计订单总数，结果缓存一段时间，同一条件的后续翻页直接使用缓存
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private Long cachedTotal(OrdersPageQueryDTO ordersPageQueryDTO) {
+        return cachedCount(PAGE_TOTAL_KEY_PREFIX, ordersPageQueryDTO, () -> {
+            List<String> tables = orderArchiveRouter.tables(ordersPageQueryDTO.getBeginTime(), ordersPageQueryDTO.getEndTime());
+            Integer shard = shardOf(ordersPageQueryDTO);
+            return shard != null
+                    ? orderShards.read(shard, () -> orderMapper.countByCondition(ordersPageQueryDTO, tables))
+                    : scatterWithArchives(tables, t -> orderMapper.countByCondition(ordersPageQueryDTO, t)).stream()
+                            .filter(Objects::nonNull).mapToLong(Long::longValue).sum();
+        });
+    }
+
+    /**
+     * 按查询条件统计归档表中的订单数量，结果缓存一段时间；归档表只在归档任务执行时变化
+     * @param ordersPageQueryDTO
+     * @param archives 需要统计的归档表，为空时返回0
+     * @return
+     */
+    private long archivedTotal(OrdersPageQueryDTO ordersPageQueryDTO, List<String> archives) {
+        if(archives.isEmpty()){
+            return 0;
         }
+        return cachedCount(ARCHIVED_TOTAL_KEY_PREFIX + archives.size() + "_", ordersPageQueryDTO, () -> {
+            Integer shard = shardOf(ordersPageQueryDTO);
+            List<Long> counts = shard != null
+                    ? Collections.singletonList(orderShards.read(shard, () -> orderMapper.countByCondition(ordersPageQueryDTO, archives)))
+                    : orderShards.scatterInstances(s -> orderMapper.countByCondition(ordersPageQueryDTO, archives));
+            return counts.stream().filter(Objects::nonNull).mapToLong(Long::longValue).sum();
+        });
+    }
 
-        // 其他意料外的异常状态，如99
-        if(!Objects.equals(status, Orders.PENDING_PAYMENT) && !Objects.equals(status, Orders.TO_BE_CONFIRMED)){
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+    private Long cachedCount(String keyPrefix, OrdersPageQueryDTO ordersPageQueryDTO, Supplier<Long> counter) {
+        String condition = ordersPageQueryDTO.getStatus() + "|" + ordersPageQueryDTO.getUserId() + "|"
+                + ordersPageQueryDTO.getBeginTime() + "|" + ordersPageQueryDTO.getEndTime() + "|"
+                + ordersPageQueryDTO.getPhone() + "|" + ordersPageQueryDTO.getNumber();
+        String key = keyPrefix + DigestUtils.md5DigestAsHex(condition.getBytes(StandardCharsets.UTF_8));
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if(cached != null){
+            return Long.valueOf(cached);
         }
+        Long total = counter.get();
+        stringRedisTemplate.opsForValue().set(key, String.valueOf(total),
+                orderProperties.getPageTotalCacheSeconds(), TimeUnit.SECONDS);
+        return total;
+    }
 
-        // 待支付和待接单状态下，用户可直接取消订单
-        // 构建订单对象准备操作数据库进行订单修改操作
-        // 取消订单后需要将订单状态修改为“已取消”
+    /**
+     * 订单表的查询结果已取满且最后一条晚于归档时限时，归档的订单都排在其后
+     * @param ordersList 按 NEWEST_FIRST 排序的结果
+     * @param limit 需要的数量
+     * @return
+     */
+    private boolean filledBeforeArchives(List<Orders> ordersList, int limit) {
+        return limit > 0 && ordersList.size() >= limit
+                && !ordersList.get(limit - 1).getOrderTime().isBefore(orderArchiveRouter.horizon());
+    }
+
+    /**
+     * 取消订单
+     * @param id
+     */
+    @Override
+    public void cancel(Long id) {
+        // 待支付和待接单状态下，用户可直接取消订单，取消订单后需要将订单状态修改为“已取消”
         Orders order = Orders.builder()
-                .id(id)
-                .status(Orders.CANCELLED)
                 .cancelTime(LocalDateTime.now())
                 .cancelReason("用户取消")
                 .build();
 
-        // 如果在待接单状态下取消订单，需要给用户退款
-        if(Objects.equals(status, Orders.TO_BE_CONFIRMED)){
-            try {
-                // 个人测试环境，暂时将实际退款函数调用注释掉
-                // weChatPayUtil.refund(currentOrder.getNumber(), currentOrder.getNumber(), currentOrder.getAmount(), currentOrder.getAmount());
-                // 更新订单的支付状态
-                order.setPayStatus(Orders.REFUND);
-            } catch (Exception e){
-                throw new OrderBusinessException("订单取消失败，退款异常");
-            }
+        // 带状态条件更新，如果在待接单状态下取消订单，会同时将支付状态更新为退款
+        Integer fromStatus = orderStateMachine.fire(id, OrderEvent.USER_CANCEL, order);
+        if(fromStatus == null){
+            throw new OrderBusinessException(cancelFailedMessage(id));
+        }
+
+        // 待接单的订单已经出现在管理端，通知管理端订单已取消
+        if(Objects.equals(fromStatus, Orders.TO_BE_CONFIRMED)){
+            orderPushService.orderCancelled(id);
         }
-        orderMapper.update(order);
+
+        // 如果在待接单状态下取消订单，需要给用户退款
+        // 个人测试环境，暂时将实际退款函数调用注释掉
+        // weChatPayUtil.refund(currentOrder.getNumber(), currentOrder.getNumber(), currentOrder.getAmount(), currentOrder.getAmount());
     }
 
     /**
@@ -265,25 +519,52 @@ public class OrderServiceImpl implements OrderService {
         Long userId = BaseContext.getCurrentId();
         // 再来一单就是将原订单中的商品重新加入到购物车中
         // 先把订单详情列表查出来
-        List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(id);
+        List<OrderDetail> orderDetails = orderArchiveRouter.getDetailsByOrderId(id);
         if(orderDetails == null) throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
 
-        // 再把详情一个个的封装到购物车并且操作数据库
+        // 名称、图片、价格以当前菜单为准，从菜品目录中批量获取
+        Map<Long, Dish> dishMap = menuCatalog.getDishes(orderDetails.stream()
+                .map(OrderDetail::getDishId).filter(Objects::nonNull).collect(Collectors.toList()));
+        Map<Long, Setmeal> setmealMap = menuCatalog.getSetmeals(orderDetails.stream()
+                .map(OrderDetail::getSetmealId).filter(Objects::nonNull).collect(Collectors.toList()));
+
+        // 再把详情一个个的封装到购物车，一次性加入
+        List<ShoppingCart> shoppingCartList = new ArrayList<>(orderDetails.size());
         for (OrderDetail orderDetail : orderDetails) {
             // 必须在循环内部new对象，保证每件商品都是独立的
             ShoppingCart shoppingCart = new ShoppingCart();
 
-            // 直接把 OrderDetail 里的同名属性（名字、图片、价格、数量、口味等）全部抄到购物车里
+            // 把 OrderDetail 里的菜品/套餐ID、口味、数量抄到购物车里
             // 注意：一定要忽略 "id" 字段，因为订单详情的 id 和购物车的 id 是两码事
             BeanUtils.copyProperties(orderDetail, shoppingCart, "id");
 
+            // 已删除或停售的商品不再加入购物车
+            if (orderDetail.getDishId() != null) {
+                Dish dish = dishMap.get(orderDetail.getDishId());
+                if (dish == null || !Objects.equals(dish.getStatus(), StatusConstant.ENABLE)) {
+                    continue;
+                }
+                shoppingCart.setName(dish.getName());
+                shoppingCart.setImage(dish.getImage());
+                shoppingCart.setAmount(dish.getPrice());
+            } else {
+                Setmeal setmeal = setmealMap.get(orderDetail.getSetmealId());
+                if (setmeal == null || !Objects.equals(setmeal.getStatus(), StatusConstant.ENABLE)) {
+                    continue;
+                }
+                shoppingCart.setName(setmeal.getName());
+                shoppingCart.setImage(setmeal.getImage());
+                shoppingCart.setAmount(setmeal.getPrice());
+            }
+
             // 补充购物车特有的属性
             shoppingCart.setUserId(userId);
             shoppingCart.setCreateTime(LocalDateTime.now());
 
-            // 可以优化成批量插入
-            shoppingCartMapper.insert(shoppingCart);
+            shoppingCartList.add(shoppingCart);
         }
+        // 与购物车中已有的商品合并，一条语句完成
+        shoppingCartStore.addAll(shoppingCartList);
     }
 
     /**
@@ -292,14 +573,8 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO statistics() {
-        Integer confirmed = orderMapper.getCountByStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.getCountByStatus(Orders.DELIVERY_IN_PROGRESS);
-        Integer toBeConfirmed = orderMapper.getCountByStatus(Orders.TO_BE_CONFIRMED);
-        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
-        orderStatisticsVO.setConfirmed(confirmed);
-        orderStatisticsVO.setDeliveryInProgress(deliveryInProgress);
-        orderStatisticsVO.setToBeConfirmed(toBeConfirmed);
-        return orderStatisticsVO;
+        // 直接读取Redis中随状态流转增减的计数
+        return orderStatusCounter.statistics();
     }
 
     /**
@@ -308,10 +583,10 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void confirm(OrderIdDTO orderIdDTO) {
-        // 商家接单其实就是将订单的状态修改为“已接单”
-        Orders order = orderMapper.getById(orderIdDTO.getId());
-        order.setStatus(Orders.CONFIRMED);
-        orderMapper.update(order);
+        // 商家接单其实就是将“待接单”的订单状态修改为“已接单”
+        if(orderStateMachine.fire(orderIdDTO.getId(), OrderEvent.CONFIRM, null) == null){
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
     }
 
     /**
@@ -320,30 +595,69 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void reject(OrdersRejectionDTO ordersRejectionDTO) {
-        Orders currentOrder = orderMapper.getById(ordersRejectionDTO.getId());
-        // 只有订单处于“待接单”状态时可以执行拒单操作
-        if(orderMapper.getById(ordersRejectionDTO.getId()).getStatus() != Orders.TO_BE_CONFIRMED){
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-        // 商家拒单其实就是将订单状态修改为“已取消”
+        // 商家拒单其实就是将“待接单”的订单状态修改为“已取消”，已支付的订单同时标记为退款
         Orders newStatusOrder = Orders.builder()
-                .id(ordersRejectionDTO.getId())
                 .rejectionReason(ordersRejectionDTO.getRejectionReason()) // 商家拒单时需要指定拒单原因
-                .status(Orders.CANCELLED)
+                .cancelTime(LocalDateTime.now())
                 .build();
 
+        // 只有订单处于“待接单”状态时可以执行拒单操作
+        if(orderStateMachine.fire(ordersRejectionDTO.getId(), OrderEvent.REJECT, newStatusOrder) == null){
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
         // 商家拒单时，如果用户已经完成了支付，需要为用户退款
-        if(Objects.equals(currentOrder.getPayStatus(), Orders.PAID)){
-            try {
-                // 个人测试环境，暂时将实际退款函数调用注释掉
-                // weChatPayUtil.refund(currentOrder.getNumber(), currentOrder.getNumber(), currentOrder.getAmount(), currentOrder.getAmount());
-                // 更新订单的支付状态
-                newStatusOrder.setPayStatus(Orders.REFUND);
-            } catch (Exception e){
-                throw new OrderBusinessException("订单取消失败，退款异常");
-            }
+        // 个人测试环境，暂时将实际退款函数调用注释掉
+        // weChatPayUtil.refund(currentOrder.getNumber(), currentOrder.getNumber(), currentOrder.getAmount(), currentOrder.getAmount());
+    }
+
+    /**
+     * 商家取消订单
+     * @param ordersCancelDTO
+     */
+    @Override
+    public void adminCancel(OrdersCancelDTO ordersCancelDTO) {
+        // 已支付的订单取消时同时标记为退款
+        Orders order = Orders.builder()
+                .cancelReason(ordersCancelDTO.getCancelReason())
+                .cancelTime(LocalDateTime.now())
+                .build();
+        if(orderStateMachine.fire(ordersCancelDTO.getId(), OrderEvent.ADMIN_CANCEL, order) == null){
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+    }
+
+    /**
+     * 派送订单
+     * @param id
+     */
+    @Override
+    public void delivery(Long id) {
+        // 只有“已接单”的订单可以派送
+        if(orderStateMachine.fire(id, OrderEvent.DELIVER, null) == null){
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
-        orderMapper.update(newStatusOrder);
+    }
+
+    /**
+     * 完成订单
+     * @param id
+     */
+    @Override
+    @Transactional
+    public void complete(Long id) {
+        // 只有“派送中”的订单可以完成
+        Orders order = Orders.builder()
+                .deliveryTime(LocalDateTime.now())
+                .build();
+        if(orderStateMachine.fire(id, OrderEvent.COMPLETE, order) == null){
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        // 与状态流转在同一事务中累加当天营业额和商品销量；
+        // 分片分布在多个实例上时状态流转在分片所在的实例上先行提交，汇总累加失败时由回填修正
+        Orders ordersDB = orderArchiveRouter.getById(id);
+        turnoverRollup.completed(ordersDB);
+        itemSalesRollup.completed(ordersDB, orderArchiveRouter.getDetailsByOrderId(id));
     }
 
     /**
@@ -353,11 +667,11 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderVO orderDetail(Long id) {
-        //根据订单id查询订单
-        Orders order = orderMapper.getById(id);
+        //根据订单id查询订单，已归档的订单从归档表中查询
+        Orders order = orderArchiveRouter.getById(id);
 
         //根据订单id查询可能包含多个的订单详情
-        List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(id);
+        List<OrderDetail> orderDetails = orderArchiveRouter.getDetailsByOrderId(id);
 
         //打包vo
         OrderVO orderVO = new OrderVO();
@@ -370,4 +684,77 @@ public class OrderServiceImpl implements OrderService {
         //返回
         return orderVO;
     }
+
+    /**
+     * 客户催单
+     * @param id
+     */
+    @Override
+    public void reminder(Long id) {
+        Orders ordersDB = orderArchiveRouter.getById(id);
+        // 只能催自己的订单，其他用户的订单按不存在处理
+        if (ordersDB == null || !Objects.equals(ordersDB.getUserId(), BaseContext.getCurrentId())) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        // 只有待接单的订单可以催单
+        if (!Objects.equals(ordersDB.getStatus(), Orders.TO_BE_CONFIRMED)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        orderPushService.reminder(id, ordersDB.getNumber());
+    }
+
+    /**
+     * 用户取消订单失败时查询订单的当前状态，返回具体的错误信息
+     * @param id
+     * @return
+     */
+    private String cancelFailedMessage(Long id) {
+        Orders currentOrder = orderArchiveRouter.getById(id);
+        if(currentOrder == null){
+            return MessageConstant.ORDER_NOT_FOUND;
+        }
+        Integer status = currentOrder.getStatus();
+        // 商家已接单状态下，用户取消订单需电话沟通商家
+        if(Objects.equals(status, Orders.CONFIRMED)){
+            return MessageConstant.ORDER_ALREADY_CONFIRMED;
+        }
+        // 派送中状态下，用户取消订单需电话沟通商家
+        if(Objects.equals(status, Orders.DELIVERY_IN_PROGRESS)){
+            return MessageConstant.ORDER_DELIVER_ON_THE_WAY;
+        }
+        // 如果是已完成的订单，依然不能直接取消
+        if(Objects.equals(status, Orders.COMPLETED)){
+            return MessageConstant.ORDER_ALREADY_COMPLETED;
+        }
+        // 防止对已取消的订单重复操作
+        if(Objects.equals(status, Orders.CANCELLED)){
+            return MessageConstant.ORDER_ALREADY_CANCELLED;
+        }
+        // 其他意料外的异常状态，如99
+        return MessageConstant.ORDER_STATUS_ERROR;
+    }
+
+    /**
+     * 将订单列表封装为VO，订单明细批量查询后按订单ID分组
+     * @param ordersList
+     * @param withDetails 为false时只返回订单概要，不查询明细
+     * @return
+     */
+    private List<OrderVO> toOrderVOList(List<Orders> ordersList, boolean withDetails) {
+        Map<Long, List<OrderDetail>> detailMap = Collections.emptyMap();
+        if(withDetails && !ordersList.isEmpty()){
+            detailMap = orderArchiveRouter.getDetails(ordersList);
+        }
+
+        List<OrderVO> voList = new ArrayList<>(ordersList.size());
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(orders, orderVO);
+            if(withDetails){
+                orderVO.setOrderDetailList(detailMap.getOrDefault(orders.getId(), new ArrayList<>()));
+            }
+            voList.add(orderVO);
+        }
+        return voList;
+    }
 }
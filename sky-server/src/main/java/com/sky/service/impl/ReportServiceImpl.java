@@ -0,0 +1,210 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyItemSales;
+import com.sky.exception.ReportBusinessException;
+import com.sky.properties.ReportProperties;
+import com.sky.report.ItemSalesRollup;
+import com.sky.report.ReportExporter;
+import com.sky.report.TurnoverRollup;
+import com.sky.report.UserStats;
+import com.sky.service.ReportService;
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class ReportServiceImpl implements ReportService {
+
+    private static final int DEFAULT_TOP_LIMIT = 10;
+
+    @Autowired
+    private TurnoverRollup turnoverRollup;
+    @Autowired
+    private ItemSalesRollup itemSalesRollup;
+    @Autowired
+    private UserStats userStats;
+    @Autowired
+    private ReportExporter reportExporter;
+    @Autowired
+    private ReportProperties reportProperties;
+
+    /**
+     * 营业额统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        List<LocalDate> dateList = dateList(begin, end);
+        Map<LocalDate, BigDecimal> turnover = turnoverRollup.turnover(begin, end);
+
+        //没有已完成订单的日期营业额为0
+        List<BigDecimal> turnoverList = new ArrayList<>(dateList.size());
+        for (LocalDate date : dateList) {
+            turnoverList.add(turnover.getOrDefault(date, BigDecimal.ZERO));
+        }
+
+        return TurnoverReportVO.builder()
+                .dateList(StringUtils.join(dateList, ","))
+                .turnoverList(StringUtils.join(turnoverList, ","))
+                .build();
+    }
+
+    /**
+     * 回填营业额汇总
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public int backfillTurnover(LocalDate begin, LocalDate end) {
+        end = backfillEnd(begin, end);
+        return turnoverRollup.backfill(begin, end);
+    }
+
+    /**
+     * 销量排名
+     * @param begin
+     * @param end
+     * @param type
+     * @param categoryId
+     * @param limit
+     * @return
+     */
+    @Override
+    public SalesTop10ReportVO getSalesTop(LocalDate begin, LocalDate end, String type, Long categoryId, Integer limit) {
+        checkRange(begin, end);
+        int n = limit == null || limit <= 0 ? DEFAULT_TOP_LIMIT : Math.min(limit, reportProperties.getTopMaxLimit());
+        List<GoodsSalesDTO> top;
+        if (type == null || type.isEmpty()) {
+            top = itemSalesRollup.topItems(begin, end, null, categoryId, n);
+        } else if ("dish".equals(type)) {
+            top = itemSalesRollup.topItems(begin, end, DailyItemSales.DISH, categoryId, n);
+        } else if ("setmeal".equals(type)) {
+            top = itemSalesRollup.topItems(begin, end, DailyItemSales.SETMEAL, categoryId, n);
+        } else if ("category".equals(type)) {
+            top = itemSalesRollup.topCategories(begin, end, n);
+        } else {
+            throw new ReportBusinessException(MessageConstant.REPORT_RANKING_TYPE_INVALID);
+        }
+
+        return SalesTop10ReportVO.builder()
+                .nameList(top.stream().map(GoodsSalesDTO::getName).collect(Collectors.joining(",")))
+                .numberList(top.stream().map(g -> String.valueOf(g.getNumber())).collect(Collectors.joining(",")))
+                .build();
+    }
+
+    /**
+     * 回填商品销量汇总
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public int backfillSales(LocalDate begin, LocalDate end) {
+        end = backfillEnd(begin, end);
+        return itemSalesRollup.backfill(begin, end);
+    }
+
+    /**
+     * 用户统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        List<LocalDate> dateList = dateList(begin, end);
+        TreeMap<LocalDate, Long> newUsers = userStats.newUsers();
+        Map<LocalDate, Long> activeUsers = userStats.activeUsers(begin, end);
+
+        //开始日期之前的新增数累计为初始总量，之后逐日累加
+        long total = newUsers.headMap(begin).values().stream().mapToLong(Long::longValue).sum();
+        List<Long> totalUserList = new ArrayList<>(dateList.size());
+        List<Long> newUserList = new ArrayList<>(dateList.size());
+        List<Long> activeUserList = new ArrayList<>(dateList.size());
+        for (LocalDate date : dateList) {
+            long newUser = newUsers.getOrDefault(date, 0L);
+            total += newUser;
+            totalUserList.add(total);
+            newUserList.add(newUser);
+            activeUserList.add(activeUsers.getOrDefault(date, 0L));
+        }
+
+        return UserReportVO.builder()
+                .dateList(StringUtils.join(dateList, ","))
+                .totalUserList(StringUtils.join(totalUserList, ","))
+                .newUserList(StringUtils.join(newUserList, ","))
+                .activeUserList(StringUtils.join(activeUserList, ","))
+                .build();
+    }
+
+    /**
+     * 回填每日新增用户数
+     * @return
+     */
+    @Override
+    public int backfillUsers() {
+        return userStats.backfill();
+    }
+
+    /**
+     * 导出运营数据报表
+     * @return
+     */
+    @Override
+    public StreamingResponseBody exportBusinessData() {
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(Math.max(reportProperties.getExportDays(), 1) - 1);
+        return reportExporter.export(begin, end);
+    }
+
+    /**
+     * 今天的订单仍在完成中，只回填到昨天
+     */
+    private LocalDate backfillEnd(LocalDate begin, LocalDate end) {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (end != null && end.isAfter(yesterday)) {
+            end = yesterday;
+        }
+        if (begin == null || end == null || end.isBefore(begin)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
+        return end;
+    }
+
+    private void checkRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || end.isBefore(begin)
+                || ChronoUnit.DAYS.between(begin, end) >= reportProperties.getMaxRangeDays()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
+    }
+
+    private List<LocalDate> dateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            dateList.add(date);
+        }
+        return dateList;
+    }
+}
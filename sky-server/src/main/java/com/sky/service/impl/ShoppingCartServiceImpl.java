@@ -1,5 +1,6 @@
 package com.sky.service.impl;
 
+import com.sky.cart.ShoppingCartStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -7,19 +8,13 @@ import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
-import com.sky.result.Result;
 import com.sky.service.ShoppingCartService;
-import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.ibatis.annotations.Delete;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.bind.annotation.DeleteMapping;
 
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -27,7 +22,7 @@ import java.util.List;
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
@@ -39,42 +34,62 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //判断当前加入购物车的商品是否已经存在了
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
 
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        //已经存在时数量+1，不存在时补全商品信息后加入
+        shoppingCartStore.add(shoppingCart, this::fillDetail);
+    }
 
-        //如果已经存在了，只需要将数量+1
-        if(list != null && list.size() > 0){
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-        }else {
-            //如果不存在，插入一条购物车数据
+    /**
+     * 减少购物车中的商品数量
+     * @param shoppingCartDTO
+     */
+    @Override
+    public void subShoppingCart(ShoppingCartDTO shoppingCartDTO) {
+        ShoppingCart shoppingCart = new ShoppingCart();
+        BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
+        shoppingCart.setUserId(BaseContext.getCurrentId());
+        //数量减一，减到0时移出购物车
+        shoppingCartStore.sub(shoppingCart);
+    }
 
-            //判断本次添加到购物车的是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if(dishId != null){
-                //本次添加到购物车的是菜品
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-            }else{
-                //本次添加到购物车的是套餐
-                Long setmealId = shoppingCartDTO.getSetmealId();
+    /**
+     * 批量设置购物车中的商品数量
+     * @param shoppingCartDTOList
+     */
+    @Override
+    public void setShoppingCartNumbers(List<ShoppingCartDTO> shoppingCartDTOList) {
+        List<ShoppingCart> list = new ArrayList<>(shoppingCartDTOList.size());
+        for (ShoppingCartDTO shoppingCartDTO : shoppingCartDTOList) {
+            ShoppingCart shoppingCart = new ShoppingCart();
+            BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
+            list.add(shoppingCart);
+        }
+        shoppingCartStore.setNumbers(BaseContext.getCurrentId(), list, this::fillDetail);
+    }
 
-                Setmeal setmeal = setmealMapper.getById(setmealId);
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
-            }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+    /**
+     * 补全商品的名称、图片、金额
+     * @param cart
+     */
+    private void fillDetail(ShoppingCart cart) {
+        //判断本次添加到购物车的是菜品还是套餐
+        Long dishId = cart.getDishId();
+        if(dishId != null){
+            //本次添加到购物车的是菜品
+            Dish dish = dishMapper.getById(dishId);
+            cart.setName(dish.getName());
+            cart.setImage(dish.getImage());
+            cart.setAmount(dish.getPrice());
+        }else{
+            //本次添加到购物车的是套餐
+            Setmeal setmeal = setmealMapper.getById(cart.getSetmealId());
+            cart.setName(setmeal.getName());
+            cart.setImage(setmeal.getImage());
+            cart.setAmount(setmeal.getPrice());
         }
     }
 
@@ -86,11 +101,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public List<ShoppingCart> showShoppingCart() {
         //获取当前微信用户id
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return shoppingCartStore.list(userId);
     }
 
     /**
@@ -100,7 +111,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public void cleanShoppingCart() {
         //获取当前微信用户id
         Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleteByUserId(userId);
+        shoppingCartStore.clean(userId);
     }
 
 
@@ -9,6 +9,7 @@ import com.sky.exception.LoginFailedException;
 import com.sky.mapper.UserMapper;
 import com.sky.properties.JwtProperties;
 import com.sky.properties.WeChatProperties;
+import com.sky.report.UserStats;
 import com.sky.service.UserService;
 import com.sky.utils.HttpClientUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +33,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private UserStats userStats;
+
     /**
      * 微信登录
      * @param userLoginDTO
@@ -55,6 +59,12 @@ public class UserServiceImpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+            //统计失败不影响登录
+            try {
+                userStats.registered(user.getCreateTime().toLocalDate());
+            } catch (RuntimeException e) {
+                log.error("记录新增用户失败", e);
+            }
         }
 
         //返回用户对象
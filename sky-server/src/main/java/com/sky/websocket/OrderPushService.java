@@ -0,0 +1,89 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单事件推送
+ * 事件先发布到Redis频道，每个节点收到后推送给本节点上连接的管理端，
+ * 因此无论管理端连接在哪个节点都能收到
+ */
+@Component
+@Slf4j
+public class OrderPushService implements MessageListener {
+
+    private static final String CHANNEL = "order_push";
+
+    //来单提醒
+    public static final int ORDER_PAID = 1;
+    //客户催单
+    public static final int REMINDER = 2;
+    //用户取消订单
+    public static final int ORDER_CANCELLED = 3;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 来单提醒
+     * @param orderId
+     * @param number
+     */
+    public void orderPaid(Long orderId, String number) {
+        publish(ORDER_PAID, orderId, "订单号：" + number);
+    }
+
+    /**
+     * 客户催单
+     * @param orderId
+     * @param number
+     */
+    public void reminder(Long orderId, String number) {
+        publish(REMINDER, orderId, "订单号：" + number);
+    }
+
+    /**
+     * 用户取消订单
+     * @param orderId
+     */
+    public void orderCancelled(Long orderId) {
+        publish(ORDER_CANCELLED, orderId, "用户取消订单");
+    }
+
+    private void publish(int type, Long orderId, String content) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", type);
+        map.put("orderId", orderId);
+        map.put("content", content);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, JSON.toJSONString(map));
+        } catch (RuntimeException e) {
+            //推送失败不影响订单业务，管理端仍可通过查询获取订单
+            log.error("订单事件推送失败：{}", map, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        WebSocketServer.sendToAllClient(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,58 @@
+package com.sky.websocket;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.HandshakeResponse;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.List;
+
+/**
+ * 管理端WebSocket握手校验
+ * 浏览器建立WebSocket连接时无法设置自定义请求头，因此令牌优先从请求头读取，其次从 token 查询参数读取；
+ * 校验通过后把员工id放入会话属性，未通过的连接在建立后立即关闭
+ */
+@Component
+@Slf4j
+public class WebSocketAuthConfigurator extends ServerEndpointConfig.Configurator {
+
+    //会话属性中保存员工id的key
+    public static final String EMP_ID = "empId";
+
+    private static final String TOKEN_PARAM = "token";
+
+    //配置器实例由WebSocket容器创建，因此使用静态变量
+    private static JwtProperties jwtProperties;
+
+    @Autowired
+    public void setJwtProperties(JwtProperties jwtProperties) {
+        WebSocketAuthConfigurator.jwtProperties = jwtProperties;
+    }
+
+    @Override
+    public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+        String token = first(request.getHeaders().get(jwtProperties.getAdminTokenName()));
+        if (token == null) {
+            token = first(request.getParameterMap().get(TOKEN_PARAM));
+        }
+        if (token == null) {
+            return;
+        }
+        try {
+            Claims claims = JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), token);
+            sec.getUserProperties().put(EMP_ID, Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString()));
+        } catch (Exception ex) {
+            log.warn("WebSocket握手令牌校验失败：{}", ex.getMessage());
+        }
+    }
+
+    private static String first(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
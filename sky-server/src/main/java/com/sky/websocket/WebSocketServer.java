@@ -0,0 +1,187 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.PathParam;
+import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 管理端WebSocket服务
+ * 每个连接有独立的有界发送队列，由发送线程池逐个连接地串行发送：
+ * 慢连接只会积压自己的队列，队列满时丢弃最旧的消息，丢弃过多时关闭连接，不会拖慢其他连接。
+ * 握手时由 WebSocketAuthConfigurator 校验管理端令牌，未通过校验的连接直接关闭
+ */
+@Component
+@ServerEndpoint(value = "/ws/{sid}", configurator = WebSocketAuthConfigurator.class)
+@Slf4j
+public class WebSocketServer {
+
+    //Tomcat阻塞发送超时时间的会话属性
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    //每次调度最多连续发送的消息数，避免单个连接长期占用发送线程
+    private static final int MAX_BATCH = 64;
+
+    //存放会话对象，端点实例由WebSocket容器按连接创建，因此使用静态变量
+    private static final Map<String, SessionChannel> CHANNELS = new ConcurrentHashMap<>();
+
+    private static WebSocketProperties properties;
+    private static ExecutorService sender;
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.properties = webSocketProperties;
+        WebSocketServer.sender = Executors.newFixedThreadPool(webSocketProperties.getSenderThreads(), r -> {
+            Thread thread = new Thread(r, "ws-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sender != null) {
+            sender.shutdownNow();
+        }
+    }
+
+    /**
+     * 连接建立成功调用的方法
+     */
+    @OnOpen
+    public void onOpen(Session session, @PathParam("sid") String sid) {
+        if (session.getUserProperties().get(WebSocketAuthConfigurator.EMP_ID) == null) {
+            log.warn("客户端：{} 未通过令牌校验，关闭连接", sid);
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "未登录"));
+            } catch (IOException e) {
+                log.warn("关闭连接失败：{}", sid);
+            }
+            return;
+        }
+        log.info("客户端：{} 建立连接", sid);
+        session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, properties.getSendTimeoutMillis());
+        SessionChannel previous = CHANNELS.put(sid, new SessionChannel(sid, session));
+        if (previous != null) {
+            previous.close(CloseReason.CloseCodes.NORMAL_CLOSURE, "重复连接");
+        }
+    }
+
+    /**
+     * 连接关闭调用的方法
+     */
+    @OnClose
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开：{}", sid);
+        remove(sid, session);
+    }
+
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable error) {
+        log.warn("连接异常：{}，{}", sid, error.getMessage());
+        remove(sid, session);
+    }
+
+    /**
+     * 群发，只把消息放入各连接的发送队列，不会阻塞调用方
+     * @param message
+     */
+    public static void sendToAllClient(String message) {
+        for (SessionChannel channel : CHANNELS.values()) {
+            channel.offer(message);
+        }
+    }
+
+    private static void remove(String sid, Session session) {
+        SessionChannel channel = CHANNELS.get(sid);
+        if (channel != null && channel.session == session) {
+            CHANNELS.remove(sid, channel);
+        }
+    }
+
+    /**
+     * 单个连接的发送通道
+     */
+    private static class SessionChannel implements Runnable {
+        private final String sid;
+        private final Session session;
+        private final BlockingQueue<String> queue;
+        //是否已经提交到发送线程池，保证同一连接同一时刻只有一个线程在发送
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger dropped = new AtomicInteger();
+
+        SessionChannel(String sid, Session session) {
+            this.sid = sid;
+            this.session = session;
+            this.queue = new ArrayBlockingQueue<>(properties.getSessionQueueCapacity());
+        }
+
+        void offer(String message) {
+            while (!queue.offer(message)) {
+                //队列已满，丢弃最旧的消息
+                if (queue.poll() != null && dropped.incrementAndGet() > properties.getMaxDroppedMessages()) {
+                    log.warn("客户端：{} 消费过慢，关闭连接", sid);
+                    close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "消费过慢");
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                sender.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                String message;
+                int sent = 0;
+                while (sent < MAX_BATCH && (message = queue.poll()) != null) {
+                    session.getBasicRemote().sendText(message);
+                    sent++;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.warn("客户端：{} 发送失败，{}", sid, e.getMessage());
+                close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "发送失败");
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            //还有剩余消息，重新排队，让其他连接也有机会发送
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        void close(CloseReason.CloseCode code, String reason) {
+            CHANNELS.remove(sid, this);
+            queue.clear();
+            try {
+                session.close(new CloseReason(code, reason));
+            } catch (IOException e) {
+                log.warn("关闭连接失败：{}", sid);
+            }
+        }
+    }
+}
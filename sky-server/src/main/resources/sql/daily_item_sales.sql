@@ -0,0 +1,12 @@
+-- 每日商品销量汇总：订单完成时按下单日期累加每个菜品、套餐的销量，销量排名只查询该表
+-- 历史数据通过 POST /admin/report/top10/backfill 按日期范围分批回填
+create table daily_item_sales
+(
+    report_date date        not null comment '日期(下单日期)',
+    item_type   tinyint     not null comment '商品类型 1菜品 2套餐',
+    item_id     bigint      not null comment '菜品id或套餐id',
+    category_id bigint      null comment '分类id',
+    name        varchar(32) not null comment '商品名称',
+    number      int         not null default 0 comment '销量',
+    primary key (report_date, item_type, item_id)
+) comment '每日商品销量汇总';
@@ -0,0 +1,10 @@
+-- 每日营业额汇总：订单完成时按下单日期累加，统计营业额时只查询该表
+-- 历史数据通过 POST /admin/report/turnoverStatistics/backfill 按日期范围分批回填
+create table daily_turnover
+(
+    report_date date           not null comment '日期(下单日期)',
+    turnover    decimal(12, 2) not null default 0 comment '已完成订单的金额合计',
+    order_count int            not null default 0 comment '已完成订单数',
+    update_time datetime       not null default current_timestamp on update current_timestamp comment '更新时间',
+    primary key (report_date)
+) comment '每日营业额汇总';
@@ -0,0 +1,17 @@
+-- 订单归档：已完成、已取消且超过一定时间的订单按下单月份移入 orders_archive_yyyyMM、order_detail_archive_yyyyMM
+-- 归档表在归档时按需创建(create table ... like)，这里只创建归档月份登记表和订单归档索引
+
+create table order_archive_month
+(
+    month char(6) not null comment '归档月份 yyyyMM',
+    primary key (month)
+) comment '订单归档月份';
+
+create table order_archive_index
+(
+    id            bigint      not null comment '订单id',
+    number        varchar(50) not null comment '订单号',
+    archive_month char(6)     not null comment '归档月份 yyyyMM',
+    primary key (id),
+    unique key uk_number (number)
+) comment '订单归档索引';
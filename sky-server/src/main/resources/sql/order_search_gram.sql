@@ -0,0 +1,19 @@
+-- 订单手机号、订单号的子串检索表：每个订单按字段前缀(p手机号 n订单号)加连续3个字符保存一行
+-- 模糊查询先按片段求交得到候选订单ID，再对候选订单执行原有的 like 条件
+
+create table order_search_gram
+(
+    gram     varchar(4) not null comment '字段前缀+3个字符',
+    order_id bigint     not null comment '订单id',
+    primary key (gram, order_id),
+    key idx_order_id (order_id)
+) comment '订单检索片段';
+
+-- 为已有订单生成检索片段
+insert ignore into order_search_gram (gram, order_id)
+with recursive seq (n) as (select 1 union all select n + 1 from seq where n < 64)
+select concat('p', substring(o.phone, seq.n, 3)), o.id
+from orders o join seq on seq.n <= char_length(o.phone) - 2
+union all
+select concat('n', substring(o.number, seq.n, 3)), o.id
+from orders o join seq on seq.n <= char_length(o.number) - 2;
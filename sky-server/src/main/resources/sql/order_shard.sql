@@ -0,0 +1,22 @@
+-- 订单分片：以 sky.order.number.shard-bits=2 为例，订单表、订单明细表各分为4个分片，按 user_id 对4取模分布
+-- 分片号、节点ID、序列号位数之和不能超过22，例如 shard-bits=2 时可将 sequence-bits 调整为10
+-- 开启分片前的订单ID为自增ID，不带分片号，需要按用户重新生成ID后迁移到对应分片(同时更新订单明细、检索表和归档索引中的订单ID)
+create table if not exists orders_0 like orders;
+create table if not exists orders_1 like orders;
+create table if not exists orders_2 like orders;
+create table if not exists orders_3 like orders;
+
+create table if not exists order_detail_0 like order_detail;
+create table if not exists order_detail_1 like order_detail;
+create table if not exists order_detail_2 like order_detail;
+create table if not exists order_detail_3 like order_detail;
+
+-- 订单ID由应用生成，分片表不再使用自增ID
+alter table orders_0 modify id bigint not null;
+alter table orders_1 modify id bigint not null;
+alter table orders_2 modify id bigint not null;
+alter table orders_3 modify id bigint not null;
+
+-- 分片分布在多个数据库实例上时(sky.order.shard.instances)，分片k位于第 k % 实例数 个实例，
+-- 每个实例上只创建位于该实例的分片表，并各自创建 order_archive.sql、order_status_epoch.sql 中的表；
+-- 归档表与分片位于同一实例，各实例的归档月份由归档任务同时创建
@@ -0,0 +1,11 @@
+-- 订单状态计数的重建版本，每个分片一行：每次状态流转在事务中以共享锁读取所在分片的版本，重建该分片的计数时加1
+-- 各分片的版本相互独立，重建一个分片不会使其他分片的流转被当作未完成重建的增量；分片的行在第一次重建时创建
+-- 开启分片并使用独立的数据库时，每个分片库各建一张
+create table if not exists order_status_epoch
+(
+    id    int    not null comment '分片号',
+    epoch bigint not null default 0 comment '计数重建版本',
+    primary key (id)
+) comment '订单状态计数重建版本';
+
+insert ignore into order_status_epoch (id, epoch) values (0, 0);
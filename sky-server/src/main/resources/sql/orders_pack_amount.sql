@@ -0,0 +1,4 @@
+-- 打包费按分计价后保存到分，与订单金额保持一致，不再截断为整数元
+-- 开启分片或已有归档月份时，orders_N、orders_archive_yyyyMM 需要执行相同的修改，保证归档时字段一致
+alter table orders
+    modify pack_amount decimal(10, 2) null comment '打包费';
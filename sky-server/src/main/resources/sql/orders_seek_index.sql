@@ -0,0 +1,4 @@
+-- 订单游标分页按 (order_time, id) 倒序定位，管理端搜索和用户历史订单各用一个索引
+alter table orders
+    add index idx_order_time_id (order_time, id),
+    add index idx_user_order_time_id (user_id, order_time, id);
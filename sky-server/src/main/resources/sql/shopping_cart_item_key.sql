@@ -0,0 +1,24 @@
+-- 购物车商品唯一键：同一用户的同一菜品(含口味)或套餐只保留一行，数量通过 insert ... on duplicate key update 原子累加
+-- dish_id、setmeal_id、dish_flavor 可能为NULL，唯一索引中NULL互不相等，因此使用生成列拼接后建立唯一索引
+
+alter table shopping_cart
+    add column item_key varchar(100)
+        generated always as (concat_ws('_', ifnull(dish_id, 0), ifnull(setmeal_id, 0), ifnull(dish_flavor, ''))) stored;
+
+-- 合并已有的重复商品：数量累加到id最小的一行，再删除其余行
+update shopping_cart sc
+    join (select min(id) as id, sum(number) as total
+          from shopping_cart
+          group by user_id, item_key
+          having count(*) > 1) d on sc.id = d.id
+set sc.number = d.total;
+
+delete sc
+from shopping_cart sc
+         join (select user_id, item_key, min(id) as id
+               from shopping_cart
+               group by user_id, item_key) d
+              on sc.user_id = d.user_id and sc.item_key = d.item_key and sc.id > d.id;
+
+alter table shopping_cart
+    add unique key uk_user_item (user_id, item_key);
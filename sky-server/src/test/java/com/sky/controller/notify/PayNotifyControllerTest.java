@@ -0,0 +1,112 @@
+package com.sky.controller.notify;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.order.PayNotifyInbox;
+import com.sky.properties.WeChatProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 支付成功回调接口测试
+ * 在本地按微信支付回调格式(AEAD_AES_256_GCM)加密通知内容，模拟微信调用回调接口
+ */
+@ExtendWith(MockitoExtension.class)
+class PayNotifyControllerTest {
+
+    private static final String API_V3_KEY = "0123456789abcdef0123456789abcdef";
+
+    @Mock
+    private PayNotifyInbox payNotifyInbox;
+    @InjectMocks
+    private PayNotifyController payNotifyController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        WeChatProperties weChatProperties = new WeChatProperties();
+        weChatProperties.setApiV3Key(API_V3_KEY);
+        ReflectionTestUtils.setField(payNotifyController, "weChatProperties", weChatProperties);
+        mockMvc = MockMvcBuilders.standaloneSetup(payNotifyController).build();
+    }
+
+    @Test
+    void acknowledgesAfterOfferingToInbox() throws Exception {
+        when(payNotifyInbox.offer("4200001", "1700000000001")).thenReturn(true);
+
+        mockMvc.perform(post("/notify/paySuccess").contentType(MediaType.APPLICATION_JSON)
+                        .content(callback("4200001", "1700000000001")))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"code\":\"SUCCESS\",\"message\":\"SUCCESS\"}"));
+
+        verify(payNotifyInbox).offer("4200001", "1700000000001");
+    }
+
+    @Test
+    void acknowledgesProcessedDuplicate() throws Exception {
+        when(payNotifyInbox.offer("4200001", "1700000000001")).thenReturn(false);
+
+        mockMvc.perform(post("/notify/paySuccess").contentType(MediaType.APPLICATION_JSON)
+                        .content(callback("4200001", "1700000000001")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void failsWhenInboxIsUnavailableSoWeChatRetries() {
+        when(payNotifyInbox.offer(anyString(), anyString())).thenThrow(new IllegalStateException("Redis不可用"));
+
+        assertThrows(Exception.class, () -> mockMvc.perform(post("/notify/paySuccess")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(callback("4200001", "1700000000001"))));
+    }
+
+    /**
+     * 按微信支付回调格式生成通知报文
+     */
+    private static String callback(String transactionId, String outTradeNo) throws Exception {
+        JSONObject plain = new JSONObject();
+        plain.put("transaction_id", transactionId);
+        plain.put("out_trade_no", outTradeNo);
+        plain.put("trade_state", "SUCCESS");
+
+        String nonce = "abcdef012345";
+        String associatedData = "transaction";
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(API_V3_KEY.getBytes(StandardCharsets.UTF_8), "AES"),
+                new GCMParameterSpec(128, nonce.getBytes(StandardCharsets.UTF_8)));
+        cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+        byte[] encrypted = cipher.doFinal(plain.toJSONString().getBytes(StandardCharsets.UTF_8));
+
+        JSONObject resource = new JSONObject();
+        resource.put("algorithm", "AEAD_AES_256_GCM");
+        resource.put("ciphertext", Base64.getEncoder().encodeToString(encrypted));
+        resource.put("nonce", nonce);
+        resource.put("associated_data", associatedData);
+        JSONObject body = new JSONObject();
+        body.put("event_type", "TRANSACTION.SUCCESS");
+        body.put("resource", resource);
+        return body.toJSONString();
+    }
+}
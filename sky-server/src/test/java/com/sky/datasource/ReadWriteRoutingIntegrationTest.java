@@ -0,0 +1,163 @@
+package com.sky.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.sky.config.ReadWriteDataSourceConfiguration;
+import com.sky.properties.ReadWriteProperties;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 读写分离路由集成测试，主库和从库为本地MySQL中的两个库(配置见 application-it.yml)
+ * 通过 select database() 判断语句实际执行在哪个库；使用 mvn test -Pintegration 运行
+ */
+@Tag("integration")
+@SpringBootTest(classes = ReadWriteRoutingIntegrationTest.RoutingTestConfiguration.class)
+@ActiveProfiles("it")
+class ReadWriteRoutingIntegrationTest {
+
+    interface RouteProbeMapper {
+
+        @Select("select database()")
+        String currentDatabase();
+
+        @Update("update route_probe set n = n + 1")
+        int touch();
+    }
+
+    @EnableConfigurationProperties(ReadWriteProperties.class)
+    @Import(ReadWriteDataSourceConfiguration.class)
+    static class RoutingTestConfiguration {
+
+        @Bean
+        public PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        public SqlSessionTemplate sqlSessionTemplate(DataSource dataSource, StatementRouteInterceptor statementRouteInterceptor) throws Exception {
+            Configuration configuration = new Configuration();
+            configuration.addMapper(RouteProbeMapper.class);
+            SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+            factoryBean.setDataSource(dataSource);
+            factoryBean.setConfiguration(configuration);
+            factoryBean.setPlugins(statementRouteInterceptor);
+            return new SqlSessionTemplate(factoryBean.getObject());
+        }
+    }
+
+    @Autowired
+    private ReadWriteRoutingDataSource readWriteRoutingDataSource;
+    @Autowired
+    private SqlSessionTemplate sqlSessionTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    private RouteProbeMapper mapper;
+    private String primaryDatabase;
+    private String replicaDatabase;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        //写入语句在主库执行，两个库各自准备一张表
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists route_probe (n int not null)");
+        jdbcTemplate.execute("delete from route_probe");
+        jdbcTemplate.execute("insert into route_probe values (0)");
+        primaryDatabase = jdbcTemplate.queryForObject("select database()", String.class);
+        List<DruidDataSource> replicas = (List<DruidDataSource>) ReflectionTestUtils.getField(readWriteRoutingDataSource, "replicas");
+        replicaDatabase = new JdbcTemplate(replicas.get(0)).queryForObject("select database()", String.class);
+        assertNotEquals(primaryDatabase, replicaDatabase);
+
+        //两个本地库之间没有复制关系，直接把从库标记为延迟正常
+        ReflectionTestUtils.setField(readWriteRoutingDataSource, "healthyReplicas", Collections.singletonList("replica-0"));
+        mapper = sqlSessionTemplate.getMapper(RouteProbeMapper.class);
+        DataSourceRoute.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DataSourceRoute.clear();
+    }
+
+    @Test
+    void readStatementGoesToReplicaWhenAllowed() {
+        DataSourceRoute.allowReplica();
+
+        assertEquals(replicaDatabase, mapper.currentDatabase());
+    }
+
+    @Test
+    void readStatementStaysOnPrimaryOutsideRequest() {
+        assertEquals(primaryDatabase, mapper.currentDatabase());
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        DataSourceRoute.allowReplica();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        assertEquals(replicaDatabase, readOnly.execute(status -> mapper.currentDatabase()));
+    }
+
+    @Test
+    void readWriteTransactionStaysOnPrimary() {
+        DataSourceRoute.allowReplica();
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        assertEquals(primaryDatabase, readWrite.execute(status -> mapper.currentDatabase()));
+    }
+
+    @Test
+    void readAfterWriteInSameRequestGoesToPrimary() {
+        DataSourceRoute.allowReplica();
+
+        mapper.touch();
+
+        assertEquals(primaryDatabase, mapper.currentDatabase());
+    }
+
+    @Test
+    void pinnedUserReadsFromPrimary() {
+        DataSourceRoute.allowReplica();
+        DataSourceRoute.pinPrimary();
+
+        assertEquals(primaryDatabase, mapper.currentDatabase());
+    }
+
+    @Test
+    void laggingReplicaIsNotUsed() {
+        DataSourceRoute.allowReplica();
+        ReflectionTestUtils.setField(readWriteRoutingDataSource, "healthyReplicas", Collections.emptyList());
+
+        assertEquals(primaryDatabase, mapper.currentDatabase());
+    }
+}
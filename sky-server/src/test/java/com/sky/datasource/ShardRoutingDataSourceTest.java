@@ -0,0 +1,127 @@
+package com.sky.datasource;
+
+import com.sky.order.OrderShards;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单分片数据源：4个分片分布在2个实例上，分片上的事务在所在实例的连接上独立提交
+ * 各数据源为桩对象，通过语句在哪个连接上准备判断路由结果
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ShardRoutingDataSourceTest {
+
+    @Mock
+    private DataSource defaultDataSource;
+    @Mock
+    private DataSource instance0;
+    @Mock
+    private DataSource instance1;
+    @Mock
+    private Connection defaultConnection;
+    @Mock
+    private Connection connection0;
+    @Mock
+    private Connection connection1;
+
+    private DataSource dataSource;
+    private OrderShards orderShards;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(defaultDataSource.getConnection()).thenReturn(defaultConnection);
+        when(instance0.getConnection()).thenReturn(connection0);
+        when(instance1.getConnection()).thenReturn(connection1);
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(defaultDataSource, Arrays.asList(instance0, instance1));
+        routingDataSource.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(2);
+        orderNumberProperties.setNodeBits(8);
+        OrderShardProperties orderShardProperties = new OrderShardProperties();
+        orderShardProperties.getInstances().add(new OrderShardProperties.Instance());
+        orderShardProperties.getInstances().add(new OrderShardProperties.Instance());
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", orderShardProperties);
+        ReflectionTestUtils.setField(orderShards, "transactionManager", new DataSourceTransactionManager(dataSource));
+        orderShards.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+    @Test
+    void statementWithoutShardUsesDefault() throws SQLException {
+        execute("select * from dish");
+
+        verify(defaultConnection).prepareStatement("select * from dish");
+        verify(instance0, never()).getConnection();
+        verify(instance1, never()).getConnection();
+    }
+
+    @Test
+    void shardUsesItsInstance() throws SQLException {
+        orderShards.on(2, () -> execute("select * from orders"));
+        orderShards.on(3, () -> execute("select * from order_detail"));
+
+        verify(connection0).prepareStatement("select * from orders");
+        verify(connection1).prepareStatement("select * from order_detail");
+    }
+
+    @Test
+    void shardTransactionCommitsOnItsInstanceApartFromCaller() throws SQLException {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+            execute("insert into order_search_gram values (?)");
+            orderShards.inTransaction(1, () -> execute("insert into orders values (?)"));
+            orderShards.inTransaction(3, () -> execute("insert into order_detail values (?)"));
+        });
+
+        verify(defaultConnection).prepareStatement("insert into order_search_gram values (?)");
+        verify(connection1).prepareStatement("insert into orders values (?)");
+        verify(connection1).prepareStatement("insert into order_detail values (?)");
+        verify(defaultConnection, never()).prepareStatement("insert into orders values (?)");
+        verify(connection1, times(2)).commit();
+        verify(defaultConnection).commit();
+        verify(connection0, never()).prepareStatement(anyString());
+    }
+
+    private void execute(String sql) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            connection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.sky.interceptor;
+
+import com.sky.context.BaseContext;
+import com.sky.datasource.DataSourceRoute;
+import com.sky.datasource.ReadWriteRoutingDataSource;
+import com.sky.datasource.StatementRouteInterceptor;
+import com.sky.properties.ReadWriteProperties;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 读写分离的写后读时间窗口：写入后在响应体写出之前记录到Redis，同一用户的下一个请求固定使用主库
+ * Redis和数据源为桩对象，写入语句经过真实的 StatementRouteInterceptor
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReadWriteRouteInterceptorTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private ReadWriteRoutingDataSource readWriteRoutingDataSource;
+    @Mock
+    private Executor executor;
+
+    private ReadWriteRouteInterceptor interceptor;
+    private ReadWritePinAdvice advice;
+    private final StatementRouteInterceptor statementRouteInterceptor = new StatementRouteInterceptor();
+    private final Configuration configuration = new Configuration();
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new ReadWriteRouteInterceptor();
+        ReflectionTestUtils.setField(interceptor, "readWriteRoutingDataSource", readWriteRoutingDataSource);
+        ReflectionTestUtils.setField(interceptor, "readWriteProperties", new ReadWriteProperties());
+        ReflectionTestUtils.setField(interceptor, "stringRedisTemplate", stringRedisTemplate);
+        advice = new ReadWritePinAdvice();
+        ReflectionTestUtils.setField(advice, "readWriteRouteInterceptor", interceptor);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DataSourceRoute.clear();
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void submitOrderPinsUserBeforeResponseBody() throws Throwable {
+        BaseContext.setCurrentId(7L);
+        MockHttpServletRequest request = request("/user/order/submit");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, null);
+
+        execute(SqlCommandType.INSERT);
+        writeBody(request, response);
+
+        verify(valueOperations).set("rw_pin_user_7", "1", 3, TimeUnit.SECONDS);
+        //响应体写出后不再重复记录
+        interceptor.afterCompletion(request, response, null, null);
+        verify(valueOperations, times(1)).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    void pinWindowCoversReplicaLag() throws Throwable {
+        when(readWriteRoutingDataSource.getReplicaLagSeconds()).thenReturn(9L);
+        BaseContext.setCurrentId(1L);
+        MockHttpServletRequest request = request("/admin/dish");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, null);
+
+        execute(SqlCommandType.UPDATE);
+        writeBody(request, response);
+
+        verify(valueOperations).set("rw_pin_admin_1", "1", 10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void pinnedUserReadsFromPrimary() throws Exception {
+        when(stringRedisTemplate.hasKey("rw_pin_user_7")).thenReturn(true);
+        BaseContext.setCurrentId(7L);
+
+        interceptor.preHandle(request("/user/order/historyOrders"), new MockHttpServletResponse(), null);
+
+        assertFalse(DataSourceRoute.isReplicaUsable());
+    }
+
+    @Test
+    void unpinnedUserReadsFromReplica() throws Exception {
+        when(stringRedisTemplate.hasKey("rw_pin_user_8")).thenReturn(false);
+        BaseContext.setCurrentId(8L);
+
+        interceptor.preHandle(request("/user/order/historyOrders"), new MockHttpServletResponse(), null);
+
+        assertTrue(DataSourceRoute.isReplicaUsable());
+    }
+
+    @Test
+    void readOnlyRequestDoesNotPin() throws Throwable {
+        BaseContext.setCurrentId(7L);
+        MockHttpServletRequest request = request("/user/order/historyOrders");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, null);
+
+        execute(SqlCommandType.SELECT);
+        writeBody(request, response);
+        interceptor.afterCompletion(request, response, null, null);
+
+        verify(valueOperations, never()).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    void loginAfterAnotherUsersRequestDoesNotPinPreviousUser() throws Throwable {
+        //同一线程先处理用户7的请求，结束时清除当前用户
+        BaseContext.setCurrentId(7L);
+        MockHttpServletRequest previous = request("/user/order/historyOrders");
+        MockHttpServletResponse previousResponse = new MockHttpServletResponse();
+        new JwtTokenUserInterceptor().afterCompletion(previous, previousResponse, null, null);
+        assertNull(BaseContext.getCurrentId());
+
+        //登录不校验令牌，新用户注册写入了用户表
+        MockHttpServletRequest login = request("/user/user/login");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(login, response, null);
+        execute(SqlCommandType.INSERT);
+        writeBody(login, response);
+        interceptor.afterCompletion(login, response, null, null);
+
+        verify(stringRedisTemplate, never()).hasKey(anyString());
+        verify(valueOperations, never()).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+    }
+
+    private MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setRequestURI(uri);
+        return request;
+    }
+
+    /**
+     * 经过语句拦截器执行一条MyBatis语句
+     */
+    private void execute(SqlCommandType type) throws Throwable {
+        MappedStatement statement = new MappedStatement.Builder(configuration, "probe." + type,
+                new RawSqlSource(configuration, "select 1", Object.class), type).build();
+        if (type == SqlCommandType.SELECT) {
+            statementRouteInterceptor.intercept(new Invocation(executor,
+                    Executor.class.getMethod("query", MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class),
+                    new Object[]{statement, null, RowBounds.DEFAULT, null}));
+        } else {
+            statementRouteInterceptor.intercept(new Invocation(executor,
+                    Executor.class.getMethod("update", MappedStatement.class, Object.class),
+                    new Object[]{statement, null}));
+        }
+    }
+
+    private void writeBody(MockHttpServletRequest request, MockHttpServletResponse response) {
+        advice.beforeBodyWrite("ok", null, null, null,
+                new ServletServerHttpRequest(request), new ServletServerHttpResponse(response));
+    }
+}
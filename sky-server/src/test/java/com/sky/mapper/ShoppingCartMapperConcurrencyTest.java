@@ -0,0 +1,172 @@
+package com.sky.mapper;
+
+import com.sky.entity.ShoppingCart;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 购物车单语句累加、减少的并发测试
+ * 需要本地MySQL，使用 mvn test -Pintegration 运行，连接地址可通过 -Dsky.it.url 等系统属性覆盖
+ */
+@Tag("integration")
+class ShoppingCartMapperConcurrencyTest {
+
+    private static final String URL = System.getProperty("sky.it.url",
+            "jdbc:mysql://localhost:3306/sky_take_out_it?createDatabaseIfNotExist=true&serverTimezone=Asia/Shanghai"
+                    + "&useSSL=false&allowPublicKeyRetrieval=true&allowMultiQueries=true");
+    private static final String USERNAME = System.getProperty("sky.it.username", "root");
+    private static final String PASSWORD = System.getProperty("sky.it.password", "root");
+
+    private static final int THREADS = 16;
+    private static final long USER_ID = 1L;
+    private static final long DISH_ID = 1L;
+
+    private static JdbcTemplate jdbcTemplate;
+    private static ShoppingCartMapper shoppingCartMapper;
+
+    @BeforeAll
+    static void setUpDatabase() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists shopping_cart");
+        jdbcTemplate.execute("drop table if exists dish");
+        jdbcTemplate.execute("create table dish (id bigint primary key, name varchar(32), image varchar(255), price decimal(10, 2))");
+        jdbcTemplate.execute("create table shopping_cart (id bigint auto_increment primary key, name varchar(32), image varchar(255),"
+                + " user_id bigint not null, dish_id bigint, setmeal_id bigint, dish_flavor varchar(50), number int not null default 1,"
+                + " amount decimal(10, 2) not null, create_time datetime,"
+                + " item_key varchar(100) generated always as (concat_ws('_', ifnull(dish_id, 0), ifnull(setmeal_id, 0), ifnull(dish_flavor, ''))) stored,"
+                + " unique key uk_user_item (user_id, item_key))");
+        jdbcTemplate.update("insert into dish values (?, '宫保鸡丁', 'dish.png', 28.00)", DISH_ID);
+
+        Configuration configuration = new Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath:mapper/ShoppingCartMapper.xml"));
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        shoppingCartMapper = new SqlSessionTemplate(sqlSessionFactory).getMapper(ShoppingCartMapper.class);
+    }
+
+    @BeforeEach
+    void clearCart() {
+        jdbcTemplate.execute("delete from shopping_cart");
+    }
+
+    @Test
+    void concurrentIncrementsAreAllCounted() throws Exception {
+        runConcurrently(THREADS, 50, () -> shoppingCartMapper.upsertIncrement(item()));
+
+        List<ShoppingCart> cart = list();
+        assertEquals(1, cart.size());
+        assertEquals(THREADS * 50, cart.get(0).getNumber());
+    }
+
+    @Test
+    void concurrentDecrementsRemoveRowAtZero() throws Exception {
+        for (int i = 0; i < THREADS * 20; i++) {
+            shoppingCartMapper.upsertIncrement(item());
+        }
+        //减少次数多于数量，多出的减少不能产生负数或残留行
+        runConcurrently(THREADS, 30, () -> shoppingCartMapper.decrement(item()));
+
+        assertTrue(list().isEmpty());
+        assertEquals(0, rowCount());
+    }
+
+    @Test
+    void decrementFromTwoRacingTwiceDeletesRow() throws Exception {
+        for (int round = 0; round < 100; round++) {
+            shoppingCartMapper.upsertIncrement(item());
+            shoppingCartMapper.upsertIncrement(item());
+
+            runConcurrently(2, 1, () -> shoppingCartMapper.decrement(item()));
+
+            assertEquals(0, rowCount(), "第" + round + "轮减少后仍有残留");
+        }
+    }
+
+    @Test
+    void mixedIncrementsAndDecrementsKeepNetCount() throws Exception {
+        for (int i = 0; i < THREADS * 10; i++) {
+            shoppingCartMapper.upsertIncrement(item());
+        }
+        //一半线程累加、一半线程减少，净变化为0
+        runConcurrently(THREADS, 10, new Runnable() {
+            private final AtomicInteger calls = new AtomicInteger();
+
+            @Override
+            public void run() {
+                if (calls.getAndIncrement() % 2 == 0) {
+                    shoppingCartMapper.upsertIncrement(item());
+                } else {
+                    shoppingCartMapper.decrement(item());
+                }
+            }
+        });
+
+        List<ShoppingCart> cart = list();
+        assertEquals(1, cart.size());
+        assertEquals(THREADS * 10, cart.get(0).getNumber());
+    }
+
+    private static ShoppingCart item() {
+        return ShoppingCart.builder().userId(USER_ID).dishId(DISH_ID).build();
+    }
+
+    private static List<ShoppingCart> list() {
+        return shoppingCartMapper.list(ShoppingCart.builder().userId(USER_ID).build());
+    }
+
+    private static int rowCount() {
+        return jdbcTemplate.queryForObject("select count(*) from shopping_cart", Integer.class);
+    }
+
+    /**
+     * 多个线程同时开始，每个线程执行若干次操作
+     */
+    private static void runConcurrently(int threads, int timesPerThread, Runnable action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Callable<Void> task = () -> {
+                    start.await();
+                    for (int i = 0; i < timesPerThread; i++) {
+                        action.run();
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NodeIdLeaseTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private NodeIdLease lease;
+
+    @BeforeEach
+    void setUp() {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setNodeLeaseSeconds(1);
+        lease = new NodeIdLease();
+        ReflectionTestUtils.setField(lease, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(lease, "orderNumberProperties", properties);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(true);
+        ReflectionTestUtils.invokeMethod(lease, "acquire");
+    }
+
+    @Test
+    void stopsIssuingAfterLeaseExpiresWithoutRenewal() throws InterruptedException {
+        long nodeId = lease.getNodeId();
+        Thread.sleep(1100);
+        assertThrows(IllegalStateException.class, lease::getNodeId);
+
+        //续约成功后恢复发号
+        when(stringRedisTemplate.execute(any(RedisScript.class), any(List.class), any(), any())).thenReturn(1L);
+        lease.renew();
+        assertEquals(nodeId, lease.getNodeId());
+    }
+
+    @Test
+    void failedRenewalKeepsLocalExpiry() throws InterruptedException {
+        lease.getNodeId();
+        when(stringRedisTemplate.execute(any(RedisScript.class), any(List.class), any(), any()))
+                .thenThrow(new IllegalStateException("Redis不可用"));
+        lease.renew();
+        Thread.sleep(1100);
+        assertThrows(IllegalStateException.class, lease::getNodeId);
+    }
+}
@@ -0,0 +1,107 @@
+package com.sky.order;
+
+import com.sky.mapper.OrderArchiveMapper;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderProperties;
+import com.sky.properties.OrderShardProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 归档月份的本地缓存：命中时不查询数据库，新建月份或收到广播后重新加载
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderArchiveRouterTest {
+
+    @Mock
+    private OrderArchiveMapper orderArchiveMapper;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private OrderArchiveRouter router;
+
+    @BeforeEach
+    void setUp() {
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", new OrderNumberProperties());
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        router = new OrderArchiveRouter();
+        ReflectionTestUtils.setField(router, "orderArchiveMapper", orderArchiveMapper);
+        ReflectionTestUtils.setField(router, "orderProperties", new OrderProperties());
+        ReflectionTestUtils.setField(router, "orderShards", orderShards);
+        ReflectionTestUtils.setField(router, "stringRedisTemplate", stringRedisTemplate);
+        when(orderArchiveMapper.listMonths()).thenReturn(Arrays.asList("202312", "202311"),
+                Arrays.asList("202401", "202312", "202311"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+    @Test
+    void monthsAreCachedBetweenQueries() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList("orders", "orders_archive_202312", "orders_archive_202311"),
+                    router.tables(null, null));
+        }
+
+        verify(orderArchiveMapper, times(1)).listMonths();
+    }
+
+    @Test
+    void createdMonthRefreshesAllNodes() {
+        router.listMonths();
+
+        router.monthCreated("202401");
+
+        verify(stringRedisTemplate).convertAndSend("order_archive_months", "202401");
+        assertEquals(Arrays.asList("202401", "202312", "202311"), router.listMonths());
+        verify(orderArchiveMapper, times(2)).listMonths();
+    }
+
+    @Test
+    void broadcastRefreshesLocalCache() {
+        router.listMonths();
+
+        router.onMessage(new DefaultMessage("order_archive_months".getBytes(StandardCharsets.UTF_8),
+                "202401".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(Arrays.asList("202401", "202312", "202311"), router.listMonths());
+    }
+
+    @Test
+    void recentRangeSkipsArchives() {
+        assertEquals(Collections.singletonList("orders"), router.tables(LocalDateTime.now().minusDays(1), null));
+        assertTrue(router.months(LocalDateTime.now().minusDays(1), LocalDateTime.now()).isEmpty());
+        verify(orderArchiveMapper, times(0)).listMonths();
+    }
+}
@@ -0,0 +1,77 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 订单分页游标的编码和解析：不同精度的下单时间都能还原，无法解析的游标统一提示重新查询
+ */
+class OrderPageCursorTest {
+
+    @Test
+    void roundTripKeepsTimeAndId() {
+        //LocalDateTime.toString() 在秒和纳秒为0时省略，分别为 12:00、12:00:05、12:00:05.123456789
+        for (LocalDateTime orderTime : Arrays.asList(LocalDateTime.of(2024, 1, 1, 12, 0),
+                LocalDateTime.of(2024, 1, 1, 12, 0, 5),
+                LocalDateTime.of(2024, 1, 1, 12, 0, 5, 123456789))) {
+            OrderPageCursor cursor = OrderPageCursor.decode(new OrderPageCursor(orderTime, 1739L << 22).encode());
+
+            assertEquals(orderTime, cursor.getOrderTime());
+            assertEquals(Long.valueOf(1739L << 22), cursor.getId());
+        }
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String cursor = new OrderPageCursor(LocalDateTime.of(2024, 1, 1, 12, 0), Long.MAX_VALUE).encode();
+
+        assertEquals(-1, indexOfAny(cursor, "+/="));
+    }
+
+    @Test
+    void garbageCursorIsRejected() {
+        for (String cursor : Arrays.asList("not a cursor!", "", "%%%")) {
+            assertInvalid(cursor);
+        }
+        assertInvalid(null);
+    }
+
+    @Test
+    void tamperedCursorIsRejected() {
+        assertInvalid(encode("2024-01-01T12:00"));
+        assertInvalid(encode("2024-01-01T12:00,abc"));
+        assertInvalid(encode("2024-13-01T12:00,5"));
+        assertInvalid(encode("yesterday,5"));
+
+        //改动编码后的字符，解析出的内容不再是时间和ID
+        String cursor = new OrderPageCursor(LocalDateTime.of(2024, 1, 1, 12, 0), 5L).encode();
+        assertInvalid("A" + cursor.substring(1));
+    }
+
+    private static void assertInvalid(String cursor) {
+        OrderBusinessException e = assertThrows(OrderBusinessException.class, () -> OrderPageCursor.decode(cursor));
+        assertEquals(MessageConstant.ORDER_PAGE_CURSOR_INVALID, e.getMessage());
+    }
+
+    private static String encode(String text) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int indexOfAny(String text, String chars) {
+        for (int i = 0; i < text.length(); i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,258 @@
+package com.sky.order;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.OrderSearchGramMapper;
+import com.sky.properties.OrderProperties;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单手机号、订单号模糊查询基准测试，对比前置通配符 like 全表扫描与检索表求交两种查询方式
+ * 需要本地MySQL 8，首次运行时在 sky.bench.url 指向的库中生成1000万条订单及其检索片段(耗时较长，之后复用)；
+ * 运行：在 sky-server 下执行 mvn test-compile 后运行本类的 main 方法，按候选数量上限分别输出结果。
+ * 区分度高的关键字(完整手机号、订单号中间一段)检索表查询不快于全表扫描，
+ * 或匹配很多订单的关键字(手机号后4位)比全表扫描慢10%以上时以失败退出
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderSearchBenchmark {
+
+    private static final String URL = System.getProperty("sky.bench.url",
+            "jdbc:mysql://localhost:3306/sky_take_out_bench?createDatabaseIfNotExist=true&serverTimezone=Asia/Shanghai"
+                    + "&useSSL=false&allowPublicKeyRetrieval=true&allowMultiQueries=true&rewriteBatchedStatements=true");
+    private static final String USERNAME = System.getProperty("sky.bench.username", "root");
+    private static final String PASSWORD = System.getProperty("sky.bench.password", "root");
+
+    //生成数据时每批的订单数量
+    private static final int CHUNK = 500_000;
+    //订单ID从该值开始，订单号为ID的字符串形式，与雪花订单号长度接近
+    private static final long ID_BASE = 1_700_000_000_000_000L;
+    private static final int PAGE_SIZE = 10;
+    private static final int KEYWORDS = 64;
+    private static final List<String> TABLES = Collections.singletonList(OrderArchiveRouter.HOT_TABLE);
+    //匹配很多订单的关键字允许的额外耗时比例
+    private static final double DENSE_TOLERANCE = 1.1;
+
+    @Param({"10000000"})
+    public long orders;
+
+    @Param({"1000", "5000", "20000"})
+    public int candidateLimit;
+
+    private OrderMapper orderMapper;
+    private OrderSearchIndex orderSearchIndex;
+    private final List<String> phoneKeywords = new ArrayList<>();
+    private final List<String> fullPhoneKeywords = new ArrayList<>();
+    private final List<String> numberKeywords = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //生成数据需要设置会话变量，使用同一个连接
+        SingleConnectionDataSource loader = new SingleConnectionDataSource(URL, USERNAME, PASSWORD, true);
+        prepareData(new JdbcTemplate(loader));
+        loader.destroy();
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        Configuration configuration = new Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        try {
+            PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+            factoryBean.setMapperLocations(resolver.getResource("classpath:mapper/OrderMapper.xml"),
+                    resolver.getResource("classpath:mapper/OrderSearchGramMapper.xml"));
+            SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+            SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+            orderMapper = sqlSessionTemplate.getMapper(OrderMapper.class);
+            orderSearchIndex = new OrderSearchIndex();
+            ReflectionTestUtils.setField(orderSearchIndex, "orderSearchGramMapper", sqlSessionTemplate.getMapper(OrderSearchGramMapper.class));
+            OrderProperties orderProperties = new OrderProperties();
+            orderProperties.setSearchCandidateLimit(candidateLimit);
+            ReflectionTestUtils.setField(orderSearchIndex, "orderProperties", orderProperties);
+        } catch (Exception e) {
+            throw new IllegalStateException("初始化MyBatis失败", e);
+        }
+
+        //管理端常见的查询：手机号后4位、完整手机号、订单号中间一段
+        Random random = new Random(42);
+        for (int i = 0; i < KEYWORDS; i++) {
+            long id = ID_BASE + 1 + (long) (random.nextDouble() * orders);
+            String phone = jdbcTemplate.queryForObject("select phone from orders where id = ?", String.class, id);
+            phoneKeywords.add(phone.substring(phone.length() - 4));
+            fullPhoneKeywords.add(phone);
+            String number = String.valueOf(id);
+            int start = random.nextInt(number.length() - 6);
+            numberKeywords.add(number.substring(start, start + 6));
+        }
+    }
+
+    @Benchmark
+    public List<Orders> phoneLikeScan() {
+        return search(phoneQuery(), false);
+    }
+
+    @Benchmark
+    public List<Orders> phoneGramIndex() {
+        return search(phoneQuery(), true);
+    }
+
+    @Benchmark
+    public List<Orders> fullPhoneLikeScan() {
+        return search(fullPhoneQuery(), false);
+    }
+
+    @Benchmark
+    public List<Orders> fullPhoneGramIndex() {
+        return search(fullPhoneQuery(), true);
+    }
+
+    @Benchmark
+    public List<Orders> numberLikeScan() {
+        return search(numberQuery(), false);
+    }
+
+    @Benchmark
+    public List<Orders> numberGramIndex() {
+        return search(numberQuery(), true);
+    }
+
+    /**
+     * 与管理端订单搜索相同：使用检索表时先取候选订单ID，候选过多时退回原条件查询
+     */
+    private List<Orders> search(OrdersPageQueryDTO query, boolean useIndex) {
+        if (useIndex) {
+            List<Long> candidateIds = orderSearchIndex.candidates(query);
+            if (candidateIds != null && candidateIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            query.setCandidateIds(candidateIds);
+        }
+        return orderMapper.pageByCursor(query, null, PAGE_SIZE, TABLES);
+    }
+
+    private OrdersPageQueryDTO phoneQuery() {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setPhone(phoneKeywords.get(next++ % KEYWORDS));
+        return query;
+    }
+
+    private OrdersPageQueryDTO fullPhoneQuery() {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setPhone(fullPhoneKeywords.get(next++ % KEYWORDS));
+        return query;
+    }
+
+    private OrdersPageQueryDTO numberQuery() {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setNumber(numberKeywords.get(next++ % KEYWORDS));
+        return query;
+    }
+
+    /**
+     * 按订单数量生成订单和检索片段，已生成时直接复用
+     */
+    private void prepareData(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("create table if not exists orders (id bigint primary key, number varchar(50), status int,"
+                + " user_id bigint, order_time datetime, phone varchar(11), amount decimal(10, 2),"
+                + " key idx_order_time_id (order_time, id))");
+        jdbcTemplate.execute("create table if not exists order_search_gram (gram varchar(4) not null, order_id bigint not null,"
+                + " primary key (gram, order_id), key idx_order_id (order_id))");
+        Long existing = jdbcTemplate.queryForObject("select count(*) from orders", Long.class);
+        if (existing != null && existing == orders) {
+            return;
+        }
+        jdbcTemplate.execute("truncate table orders");
+        jdbcTemplate.execute("truncate table order_search_gram");
+        jdbcTemplate.execute("set session cte_max_recursion_depth = " + CHUNK);
+        for (long start = 0; start < orders; start += CHUNK) {
+            long size = Math.min(CHUNK, orders - start);
+            long first = ID_BASE + start + 1;
+            long last = ID_BASE + start + size;
+            //手机号由订单ID散列得到，下单时间按订单ID每3秒一单递增
+            jdbcTemplate.update("insert into orders (id, number, status, user_id, order_time, phone, amount)"
+                            + " with recursive seq (n) as (select 0 union all select n + 1 from seq where n < ?)"
+                            + " select ? + n, concat(? + n), 1 + (? + n) % 6, (? + n) % 100000,"
+                            + " timestamp('2024-01-01') + interval ((? + n) * 3) second,"
+                            + " concat('1', lpad(((? + n) * 2654435761) % 10000000000, 10, '0')), 50.00 from seq",
+                    size - 1, first, first, start, start, start, start);
+            jdbcTemplate.update("insert into order_search_gram (gram, order_id)"
+                            + " with recursive seq (n) as (select 1 union all select n + 1 from seq where n < 64)"
+                            + " select concat('p', substring(o.phone, seq.n, 3)), o.id"
+                            + " from orders o join seq on seq.n <= char_length(o.phone) - 2 where o.id between ? and ?"
+                            + " union all"
+                            + " select concat('n', substring(o.number, seq.n, 3)), o.id"
+                            + " from orders o join seq on seq.n <= char_length(o.number) - 2 where o.id between ? and ?",
+                    first, last, first, last);
+            System.out.println("已生成订单：" + (start + size) + "/" + orders);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(OrderSearchBenchmark.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build()).run();
+        //候选数量上限 -> 基准方法 -> 耗时
+        Map<String, Map<String, Double>> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            String limit = result.getParams().getParam("candidateLimit");
+            scores.computeIfAbsent(limit, key -> new HashMap<>())
+                    .put(result.getPrimaryResult().getLabel(), result.getPrimaryResult().getScore());
+        }
+        for (Map.Entry<String, Map<String, Double>> entry : scores.entrySet()) {
+            Map<String, Double> limitScores = entry.getValue();
+            for (String field : new String[]{"phone", "fullPhone", "number"}) {
+                double scan = limitScores.get(field + "LikeScan");
+                double index = limitScores.get(field + "GramIndex");
+                System.out.printf("上限 %s，%s：全表扫描 %.2f ms，检索表 %.2f ms%n", entry.getKey(), field, scan, index);
+                //手机号后4位匹配约千分之一的订单，应直接退回全表扫描，不能为求交付出额外的代价
+                boolean dense = "phone".equals(field);
+                if (dense ? index > scan * DENSE_TOLERANCE : index >= scan) {
+                    throw new IllegalStateException("候选数量上限 " + entry.getKey() + " 时 " + field + " 检索表查询慢于全表扫描");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.sky.order;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.mapper.OrderSearchGramMapper;
+import com.sky.properties.OrderProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单子串检索：按片段的订单数量排序求交，短关键字的片段都很常见时不使用检索表
+ * 检索表为桩对象，片段的订单数量由测试指定
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderSearchIndexTest {
+
+    private static final long COMMON = 90_000;
+
+    @Mock
+    private OrderSearchGramMapper orderSearchGramMapper;
+
+    private OrderSearchIndex orderSearchIndex;
+    private final Map<String, Long> counts = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        orderSearchIndex = new OrderSearchIndex();
+        ReflectionTestUtils.setField(orderSearchIndex, "orderSearchGramMapper", orderSearchGramMapper);
+        ReflectionTestUtils.setField(orderSearchIndex, "orderProperties", new OrderProperties());
+        when(orderSearchGramMapper.countGram(anyString(), anyInt()))
+                .thenAnswer(invocation -> counts.getOrDefault(invocation.<String>getArgument(0), COMMON));
+        when(orderSearchGramMapper.matchAll(anyList(), anyInt())).thenReturn(Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    void joinDrivesFromRarestGrams() {
+        counts.put("p800", 40L);
+        counts.put("p001", 300L);
+        counts.put("p123", 2000L);
+
+        List<Long> ids = orderSearchIndex.candidates(phone("13800001234"));
+
+        assertEquals(Arrays.asList(1L, 2L), ids);
+        verify(orderSearchGramMapper).matchAll(eq(Arrays.asList("p800", "p001", "p123")), eq(5001));
+    }
+
+    @Test
+    void denseShortKeywordSkipsJoin() {
+        //手机号后4位的片段都匹配大量订单
+        assertNull(orderSearchIndex.candidates(phone("1234")));
+        verify(orderSearchGramMapper, never()).matchAll(anyList(), anyInt());
+    }
+
+    @Test
+    void denseLongKeywordStillJoins() {
+        assertEquals(Arrays.asList(1L, 2L), orderSearchIndex.candidates(phone("13800001234")));
+        verify(orderSearchGramMapper).matchAll(anyList(), anyInt());
+    }
+
+    @Test
+    void tooManyCandidatesFallBackToScan() {
+        counts.put("p800", 40L);
+        Long[] many = new Long[5001];
+        Arrays.fill(many, 1L);
+        when(orderSearchGramMapper.matchAll(anyList(), anyInt())).thenReturn(Arrays.asList(many));
+
+        assertNull(orderSearchIndex.candidates(phone("13800001234")));
+    }
+
+    @Test
+    void missingGramMatchesNothingWithoutJoin() {
+        counts.put("p999", 0L);
+
+        assertTrue(orderSearchIndex.candidates(phone("1999")).isEmpty());
+        verify(orderSearchGramMapper, never()).matchAll(anyList(), anyInt());
+    }
+
+    @Test
+    void gramCountsAreCachedExceptZero() {
+        counts.put("p999", 0L);
+        orderSearchIndex.candidates(phone("1999"));
+        orderSearchIndex.candidates(phone("1999"));
+
+        verify(orderSearchGramMapper, times(1)).countGram(eq("p199"), anyInt());
+        //订单数量为0的片段每次都重新统计，新订单能立即查到
+        verify(orderSearchGramMapper, times(2)).countGram(eq("p999"), anyInt());
+    }
+
+    @Test
+    void shortKeywordDoesNotUseIndex() {
+        assertNull(orderSearchIndex.candidates(phone("12")));
+        verify(orderSearchGramMapper, never()).countGram(anyString(), anyInt());
+        assertNull(orderSearchIndex.candidates(new OrdersPageQueryDTO()));
+    }
+
+    private static OrdersPageQueryDTO phone(String phone) {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setPhone(phone);
+        return query;
+    }
+}
@@ -0,0 +1,117 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单分片的表名改写：只改写订单表、订单明细表，归档表和其他以 orders_ 开头的表保持不变
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderShardInterceptorTest {
+
+    @Mock
+    private StatementHandler statementHandler;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private OrderShardInterceptor interceptor;
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+    @Test
+    void rewritesOrderTablesToCurrentShard() throws Throwable {
+        init(2);
+
+        assertEquals("select o.*, d.name from orders_3 o join order_detail_3 d on d.order_id = o.id where orders_3.id = ?",
+                rewrite(3, "select o.*, d.name from orders o join order_detail d on d.order_id = o.id where orders.id = ?"));
+        assertEquals("update orders_1\nset status = ?", rewrite(1, "update orders\nset status = ?"));
+        assertEquals("create table if not exists orders_archive_202401 like orders_2",
+                rewrite(2, "create table if not exists orders_archive_202401 like orders"));
+    }
+
+    @Test
+    void leavesOtherTablesUntouched() throws Throwable {
+        init(2);
+
+        String archive = "select * from orders_archive_202401 union all select * from order_detail_archive_202401";
+        assertEquals(archive, rewrite(null, archive));
+        String gram = "select order_id from order_search_gram where gram = ?";
+        assertEquals(gram, rewrite(null, gram));
+        String index = "select archive_month from order_archive_index where id = ?";
+        assertEquals(index, rewrite(null, index));
+    }
+
+    @Test
+    void rejectsOrderTablesWithoutShard() {
+        init(2);
+
+        assertThrows(IllegalStateException.class, () -> rewrite(null, "select * from orders where id = ?"));
+    }
+
+    @Test
+    void keepsTablesWhenShardingDisabled() throws Throwable {
+        init(0);
+
+        assertEquals("select * from orders where id = ?", rewrite(null, "select * from orders where id = ?"));
+    }
+
+    private void init(int shardBits) {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setShardBits(shardBits);
+        properties.setNodeBits(10 - shardBits);
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", properties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+        interceptor = new OrderShardInterceptor();
+        ReflectionTestUtils.setField(interceptor, "orderShards", orderShards);
+    }
+
+    /**
+     * 在指定分片上经过拦截器准备语句，返回改写后的SQL
+     */
+    private String rewrite(Integer shard, String sql) throws Throwable {
+        BoundSql boundSql = new BoundSql(new Configuration(), sql, Collections.emptyList(), null);
+        when(statementHandler.getBoundSql()).thenReturn(boundSql);
+        Invocation invocation = new Invocation(statementHandler,
+                StatementHandler.class.getMethod("prepare", Connection.class, Integer.class), new Object[]{null, null});
+        if (shard == null) {
+            interceptor.intercept(invocation);
+        } else {
+            orderShards.on(shard, () -> {
+                try {
+                    return interceptor.intercept(invocation);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        return boundSql.getSql();
+    }
+}
@@ -0,0 +1,230 @@
+package com.sky.order;
+
+import com.sky.datasource.DataSourceRoute;
+import com.sky.entity.Orders;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单分片：分片定位、多路归并、跨分片查询的路由状态和各实例的事务
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderShardsTest {
+
+    private static final Comparator<Orders> NEWEST_FIRST =
+            Comparator.comparing(Orders::getOrderTime).thenComparing(Orders::getId).reversed();
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection connection;
+
+    private OrderShards orderShards;
+
+    @AfterEach
+    void tearDown() {
+        if (orderShards != null) {
+            orderShards.destroy();
+        }
+        DataSourceRoute.clear();
+    }
+
+    @Test
+    void mergeOrdersTiesById() {
+        List<Orders> shard0 = Arrays.asList(orders(5, NOON), orders(2, NOON), orders(9, NOON.minusMinutes(1)));
+        List<Orders> shard1 = Arrays.asList(orders(4, NOON), orders(3, NOON), orders(1, NOON.minusMinutes(2)));
+
+        List<Orders> merged = OrderShards.merge(Arrays.asList(shard0, shard1), NEWEST_FIRST, 10);
+
+        assertEquals(Arrays.asList(5L, 4L, 3L, 2L, 9L, 1L), ids(merged));
+    }
+
+    @Test
+    void mergeStopsAtLimitAndSkipsEmptyShards() {
+        List<Orders> shard0 = Arrays.asList(orders(6, NOON), orders(3, NOON.minusMinutes(3)));
+        List<Orders> shard2 = Arrays.asList(orders(5, NOON.minusMinutes(1)), orders(4, NOON.minusMinutes(2)));
+
+        List<Orders> merged = OrderShards.merge(Arrays.asList(shard0, Collections.emptyList(), shard2), NEWEST_FIRST, 3);
+
+        assertEquals(Arrays.asList(6L, 5L, 4L), ids(merged));
+        assertTrue(OrderShards.merge(Arrays.asList(Collections.<Orders>emptyList()), NEWEST_FIRST, 3).isEmpty());
+        assertTrue(OrderShards.merge(Arrays.asList(shard0, shard2), NEWEST_FIRST, 0).isEmpty());
+    }
+
+    @Test
+    void locatesShardFromIdAndNumber() {
+        orderShards = shards(2, 0);
+        for (int shard = 0; shard < 4; shard++) {
+            long id = id(System.currentTimeMillis(), shard, 1023 >> 2, 4095);
+            assertEquals(shard, orderShards.ofId(id));
+            assertEquals(shard, orderShards.ofNumber(String.valueOf(id)));
+        }
+        assertEquals(3, orderShards.ofUser(7L));
+        assertEquals(1, orderShards.ofUser(-7L));
+
+        long a = id(1L, 1, 5, 0);
+        long b = id(2L, 3, 5, 0);
+        long c = id(3L, 1, 6, 0);
+        Map<Integer, List<Long>> groups = orderShards.groupIds(Arrays.asList(a, b, c));
+        assertEquals(Arrays.asList(a, c), groups.get(1));
+        assertEquals(Collections.singletonList(b), groups.get(3));
+        assertEquals(2, groups.size());
+    }
+
+    @Test
+    void scatterCarriesRouteAndReadOnlyTransaction() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+        orderShards = shards(1, 0);
+        ReflectionTestUtils.setField(orderShards, "transactionManager", new DataSourceTransactionManager(dataSource));
+
+        //调用线程允许使用从库，并处于只读事务中
+        DataSourceRoute.allowReplica();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        List<String> seen;
+        try {
+            seen = orderShards.scatter(shard -> Thread.currentThread().getName().startsWith("order-shard-")
+                    + ":" + OrderShards.current()
+                    + ":" + DataSourceRoute.isReplicaUsable()
+                    + ":" + TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        assertEquals(Arrays.asList("true:0:true:true", "true:1:true:true"), seen);
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    void scatterDoesNotStartTransactionOutsideOne() {
+        orderShards = shards(1, 0);
+        DataSourceRoute.pinPrimary();
+
+        List<Boolean> replicaUsable = orderShards.scatter(shard -> DataSourceRoute.isReplicaUsable());
+
+        assertEquals(Arrays.asList(false, false), replicaUsable);
+        verify(transactionManager, never()).getTransaction(any());
+    }
+
+    @Test
+    void shardTransactionJoinsCallerOnSingleInstance() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        orderShards = shards(2, 0);
+
+        assertEquals(Integer.valueOf(3), orderShards.inTransaction(3, OrderShards::current));
+        assertNull(OrderShards.current());
+
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRED, definition().getPropagationBehavior());
+        assertFalse(orderShards.isIndependent());
+        assertEquals(Collections.singletonList(0), orderShards.instanceShards());
+    }
+
+    @Test
+    void shardTransactionIsIndependentAcrossInstances() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        orderShards = shards(2, 2);
+
+        orderShards.inTransaction(3, () -> { });
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition().getPropagationBehavior());
+        assertTrue(orderShards.isIndependent());
+        assertEquals(Arrays.asList(0, 1), orderShards.instanceShards());
+    }
+
+    @Test
+    void readLeavesCallerTransactionOnlyAcrossInstances() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        orderShards = shards(2, 2);
+
+        //调用方不在事务中时直接查询
+        assertEquals(Integer.valueOf(2), orderShards.read(2, OrderShards::current));
+        verify(transactionManager, never()).getTransaction(any());
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertEquals(Integer.valueOf(2), orderShards.read(2, OrderShards::current));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        TransactionDefinition definition = definition();
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getPropagationBehavior());
+        assertTrue(definition.isReadOnly());
+    }
+
+    private TransactionDefinition definition() {
+        ArgumentCaptor<TransactionDefinition> captor = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(captor.capture());
+        return captor.getValue();
+    }
+
+    /**
+     * 按 shard-bits=2、node-bits=8、sequence-bits=12 构造订单ID：时间戳 | 分片号 | 节点ID | 序列号
+     */
+    private static long id(long timestamp, int shard, int node, int sequence) {
+        return (timestamp << 22) | ((long) shard << 20) | ((long) node << 12) | sequence;
+    }
+
+    private OrderShards shards(int shardBits, int instances) {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setShardBits(shardBits);
+        properties.setNodeBits(10 - shardBits);
+        OrderShardProperties orderShardProperties = new OrderShardProperties();
+        for (int i = 0; i < instances; i++) {
+            OrderShardProperties.Instance instance = new OrderShardProperties.Instance();
+            instance.setUrl("jdbc:mysql://shard-" + i + "/sky_take_out");
+            orderShardProperties.getInstances().add(instance);
+        }
+        OrderShards shards = new OrderShards();
+        ReflectionTestUtils.setField(shards, "orderNumberProperties", properties);
+        ReflectionTestUtils.setField(shards, "orderShardProperties", orderShardProperties);
+        ReflectionTestUtils.setField(shards, "transactionManager", transactionManager);
+        shards.init();
+        return shards;
+    }
+
+    private static Orders orders(long id, LocalDateTime orderTime) {
+        return Orders.builder().id(id).orderTime(orderTime).build();
+    }
+
+    private static List<Long> ids(List<Orders> ordersList) {
+        return ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+    }
+}
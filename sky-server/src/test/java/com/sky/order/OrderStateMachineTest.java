@@ -0,0 +1,265 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态机：流转表和并发流转
+ * 订单表用内存中的条件更新模拟 UPDATE ... WHERE id = ? AND status IN (...)，
+ * SELECT ... FOR UPDATE 用每个订单一把锁模拟，事务提交或回滚时释放
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderStateMachineTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderStateMachine stateMachine;
+
+    //订单ID -> 当前状态
+    private final Map<Long, Integer> table = new ConcurrentHashMap<>();
+    //状态计数的净变化
+    private final Map<Integer, AtomicInteger> counted = new ConcurrentHashMap<>();
+    //订单ID -> 行锁
+    private final Map<Long, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    //当前事务持有的行锁
+    private final ThreadLocal<List<ReentrantLock>> heldLocks = ThreadLocal.withInitial(ArrayList::new);
+
+    @BeforeEach
+    void setUp() {
+        OrderShards orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", new OrderNumberProperties());
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        stateMachine = new OrderStateMachine();
+        ReflectionTestUtils.setField(stateMachine, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(stateMachine, "orderShards", orderShards);
+        ReflectionTestUtils.setField(stateMachine, "orderStatusCounter", orderStatusCounter);
+
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        doAnswer(invocation -> releaseLocks()).when(transactionManager).commit(any());
+        doAnswer(invocation -> releaseLocks()).when(transactionManager).rollback(any());
+        when(orderMapper.lockStatus(any(Orders.class))).thenAnswer(invocation -> {
+            Long id = invocation.<Orders>getArgument(0).getId();
+            ReentrantLock lock = rowLocks.computeIfAbsent(id, k -> new ReentrantLock());
+            lock.lock();
+            heldLocks.get().add(lock);
+            return table.get(id);
+        });
+        when(orderMapper.transit(any(Orders.class), anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            Orders orders = invocation.getArgument(0);
+            Collection<Integer> from = invocation.getArgument(1);
+            int[] rows = {0};
+            table.computeIfPresent(orders.getId(), (id, status) -> {
+                if (!from.contains(status)) {
+                    return status;
+                }
+                rows[0] = 1;
+                return orders.getStatus();
+            });
+            return rows[0];
+        });
+        doAnswer(invocation -> {
+            Integer from = invocation.getArgument(0);
+            Integer to = invocation.getArgument(1);
+            int count = invocation.getArgument(2);
+            counted.computeIfAbsent(from, k -> new AtomicInteger()).addAndGet(-count);
+            counted.computeIfAbsent(to, k -> new AtomicInteger()).addAndGet(count);
+            return null;
+        }).when(orderStatusCounter).transited(any(), any(), anyInt());
+    }
+
+    @Test
+    void followsTransitionTable() {
+        table.put(1L, Orders.PENDING_PAYMENT);
+
+        assertNull(stateMachine.fire(1L, OrderEvent.CONFIRM, null), "未支付的订单不能接单");
+        assertEquals(Orders.PENDING_PAYMENT, stateMachine.fire(1L, OrderEvent.PAY, null));
+        assertEquals(Orders.TO_BE_CONFIRMED, stateMachine.fire(1L, OrderEvent.CONFIRM, null));
+        assertNull(stateMachine.fire(1L, OrderEvent.USER_CANCEL, null), "已接单的订单用户不能取消");
+        assertEquals(Orders.CONFIRMED, stateMachine.fire(1L, OrderEvent.DELIVER, null));
+        assertEquals(Orders.DELIVERY_IN_PROGRESS, stateMachine.fire(1L, OrderEvent.COMPLETE, null));
+        assertNull(stateMachine.fire(1L, OrderEvent.ADMIN_CANCEL, null), "已完成的订单不能取消");
+        assertEquals(Orders.COMPLETED, table.get(1L));
+    }
+
+    @Test
+    void transitsWithOneGuardedUpdate() {
+        table.put(1L, Orders.CONFIRMED);
+
+        assertEquals(Orders.CONFIRMED, stateMachine.fire(1L, OrderEvent.ADMIN_CANCEL, null));
+        //所有源状态在一条 UPDATE 中判断，只退款已支付的源状态
+        verify(orderMapper, times(1)).transit(any(Orders.class),
+                eq(Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS, Orders.PENDING_PAYMENT)),
+                eq(Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS)));
+        assertEquals(-1, counted.get(Orders.CONFIRMED).get());
+        assertEquals(1, counted.get(Orders.CANCELLED).get());
+    }
+
+    @Test
+    void disallowedSourceSkipsUpdate() {
+        table.put(1L, Orders.COMPLETED);
+
+        assertNull(stateMachine.fire(1L, OrderEvent.USER_CANCEL, null));
+        verify(orderMapper, never()).transit(any(Orders.class), anyCollection(), anyCollection());
+        assertFalse(rowLocks.get(1L).isLocked(), "事务结束后应释放行锁");
+    }
+
+    @Test
+    void missingOrderDoesNotTransit() {
+        assertNull(stateMachine.fire(404L, OrderEvent.PAY, null));
+    }
+
+    /**
+     * 同一批待接单的订单上并发执行接单、拒单、用户取消，三者的源状态只有待接单，每个订单恰好一个事件成功，
+     * 状态计数与最终状态一致
+     */
+    @RepeatedTest(5)
+    void concurrentTransitionsOnSameOrderHaveSingleWinner() throws Exception {
+        int orders = 2000;
+        for (long id = 1; id <= orders; id++) {
+            table.put(id, Orders.TO_BE_CONFIRMED);
+        }
+        OrderEvent[] events = {OrderEvent.CONFIRM, OrderEvent.REJECT, OrderEvent.USER_CANCEL};
+        ExecutorService executor = Executors.newFixedThreadPool(events.length * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger[] winners = new AtomicInteger[orders + 1];
+        for (int i = 0; i <= orders; i++) {
+            winners[i] = new AtomicInteger();
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < events.length * 2; t++) {
+            OrderEvent event = events[t % events.length];
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long id = 1; id <= orders; id++) {
+                    if (stateMachine.fire(id, event, null) != null) {
+                        winners[(int) id].incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        int confirmed = 0;
+        int cancelled = 0;
+        for (long id = 1; id <= orders; id++) {
+            assertEquals(1, winners[(int) id].get(), "订单 " + id + " 应恰好流转一次");
+            Integer status = table.get(id);
+            if (Orders.CONFIRMED.equals(status)) {
+                confirmed++;
+            } else {
+                assertEquals(Orders.CANCELLED, status);
+                cancelled++;
+            }
+        }
+        assertEquals(-orders, counted.get(Orders.TO_BE_CONFIRMED).get());
+        assertEquals(confirmed, counted.getOrDefault(Orders.CONFIRMED, new AtomicInteger()).get());
+        assertEquals(cancelled, counted.getOrDefault(Orders.CANCELLED, new AtomicInteger()).get());
+    }
+
+    /**
+     * 商家取消的源状态包含已接单，与接单并发时可能先接单再取消；最终状态和状态计数必须与流转表一致
+     */
+    @RepeatedTest(5)
+    void concurrentConfirmAndAdminCancelFollowTransitionTable() throws Exception {
+        int orders = 2000;
+        for (long id = 1; id <= orders; id++) {
+            table.put(id, Orders.TO_BE_CONFIRMED);
+        }
+        Map<Long, List<OrderEvent>> winners = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            OrderEvent event = t % 2 == 0 ? OrderEvent.CONFIRM : OrderEvent.ADMIN_CANCEL;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long id = 1; id <= orders; id++) {
+                    if (stateMachine.fire(id, event, null) != null) {
+                        winners.computeIfAbsent(id, k -> Collections.synchronizedList(new ArrayList<>())).add(event);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (long id = 1; id <= orders; id++) {
+            //商家取消恰好成功一次，接单至多在取消之前成功一次(记录顺序不代表流转顺序，只比较成功的事件)
+            List<OrderEvent> won = new ArrayList<>(winners.get(id));
+            Collections.sort(won);
+            assertEquals(Orders.CANCELLED, table.get(id));
+            assertTrue(won.equals(Collections.singletonList(OrderEvent.ADMIN_CANCEL))
+                    || won.equals(Arrays.asList(OrderEvent.CONFIRM, OrderEvent.ADMIN_CANCEL)), "订单 " + id + "：" + won);
+        }
+        assertEquals(-orders, counted.get(Orders.TO_BE_CONFIRMED).get());
+        assertEquals(0, counted.getOrDefault(Orders.CONFIRMED, new AtomicInteger()).get());
+        assertEquals(orders, counted.get(Orders.CANCELLED).get());
+    }
+
+    private Object releaseLocks() {
+        for (ReentrantLock lock : heldLocks.get()) {
+            lock.unlock();
+        }
+        heldLocks.get().clear();
+        return null;
+    }
+}
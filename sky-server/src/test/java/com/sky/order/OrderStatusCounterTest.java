@@ -0,0 +1,269 @@
+package com.sky.order;
+
+import com.sky.datasource.DataSourceRoute;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.OrderStatusEpochMapper;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderProperties;
+import com.sky.properties.OrderShardProperties;
+import com.sky.vo.OrderStatisticsVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.invocation.Invocation;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态计数：重建与流转按版本区分先后
+ * 数据库和Redis均为桩对象，验证重建时版本加1、开启快照、提交版本、统计的顺序，以及流转携带的版本
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderStatusCounterTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderStatusEpochMapper orderStatusEpochMapper;
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection marker;
+    @Mock
+    private PreparedStatement statement;
+    @Mock
+    private ResultSet resultSet;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private OrderStatusCounter counter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        orderShards = shards(0);
+        counter = new OrderStatusCounter();
+        ReflectionTestUtils.setField(counter, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(counter, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(counter, "orderStatusEpochMapper", orderStatusEpochMapper);
+        ReflectionTestUtils.setField(counter, "orderProperties", new OrderProperties());
+        ReflectionTestUtils.setField(counter, "orderShards", orderShards);
+        ReflectionTestUtils.setField(counter, "dataSource", dataSource);
+        ReflectionTestUtils.setField(counter, "transactionManager", transactionManager);
+        counter.init();
+
+        when(stringRedisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(dataSource.getConnection()).thenReturn(marker);
+        when(marker.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.getLong(1)).thenReturn(7L);
+        when(orderMapper.countGroupByStatus()).thenReturn(Collections.singletonList(row(Orders.CONFIRMED, 3)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        DataSourceRoute.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rebuildTakesSnapshotWhileHoldingNewEpoch() throws Exception {
+        counter.reconcile();
+
+        //快照在版本加1之后、提交之前建立，统计在提交之后执行，不阻塞流转
+        InOrder inOrder = inOrder(marker, statement, orderStatusEpochMapper, orderMapper);
+        inOrder.verify(marker).prepareStatement(argThat(sql -> sql.contains("epoch = epoch + 1")));
+        inOrder.verify(statement).executeUpdate();
+        inOrder.verify(orderStatusEpochMapper).current(0);
+        inOrder.verify(marker).commit();
+        inOrder.verify(orderMapper).countGroupByStatus();
+        verify(marker, never()).rollback();
+
+        //写回时带着新版本，并合并该版本的增量
+        Invocation rebuild = scriptInvocation("hgetall");
+        assertEquals(Arrays.asList("order_status_count", "{order_status_count}_delta_0_7"), rebuild.getArgument(1));
+        List<Object> args = Arrays.asList(rebuild.getArguments()).subList(2, rebuild.getArguments().length);
+        assertEquals(Arrays.asList("0", "7"), args.subList(0, 2));
+        Map<Object, Object> counts = new HashMap<>();
+        for (int i = 2; i < args.size(); i += 2) {
+            counts.put(args.get(i), args.get(i + 1));
+        }
+        assertEquals("3", counts.get(String.valueOf(Orders.CONFIRMED)));
+        assertEquals("0", counts.get(String.valueOf(Orders.COMPLETED)));
+    }
+
+    @Test
+    void transitCarriesEpochReadUnderSharedLockAfterCommit() {
+        when(orderStatusEpochMapper.lockShared(0)).thenReturn(5L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        orderShards.on(0, () -> counter.transited(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, 1));
+
+        verify(orderStatusEpochMapper).lockShared(0);
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(stringRedisTemplate).execute(script("version < epoch"),
+                eq(Arrays.asList("order_status_count", "{order_status_count}_delta_0_5")),
+                eq("0"), eq("5"), eq(String.valueOf(Orders.TO_BE_CONFIRMED)), eq(String.valueOf(Orders.CONFIRMED)),
+                eq("1"), anyString());
+    }
+
+    @Test
+    void eachShardHasItsOwnEpoch() throws Exception {
+        orderShards = shards(1);
+        ReflectionTestUtils.setField(counter, "orderShards", orderShards);
+
+        counter.reconcile();
+
+        //重建分片1只修改分片1的版本，分片0的流转仍与分片0的计数版本比较
+        verify(statement, times(2)).setInt(1, 0);
+        verify(statement, times(2)).setInt(1, 1);
+        verify(orderStatusEpochMapper).current(0);
+        verify(orderStatusEpochMapper).current(1);
+
+        when(orderStatusEpochMapper.lockShared(1)).thenReturn(9L);
+        orderShards.on(1, () -> counter.created(Orders.PENDING_PAYMENT));
+        verify(orderStatusEpochMapper).lockShared(1);
+        verify(orderStatusEpochMapper, never()).lockShared(0);
+    }
+
+    @Test
+    void recordingWithoutShardFails() {
+        assertThrows(IllegalStateException.class, () -> counter.created(Orders.PENDING_PAYMENT));
+    }
+
+    @Test
+    void statisticsSumsShards() throws Exception {
+        orderShards = shards(1);
+        ReflectionTestUtils.setField(counter, "orderShards", orderShards);
+        when(hashOperations.multiGet(eq("order_status_count"), anyList()))
+                .thenReturn(Arrays.asList("3", "1", "2", "3", "4", "10", "20", "30"));
+
+        OrderStatisticsVO statistics = counter.statistics();
+
+        assertEquals(11, statistics.getToBeConfirmed());
+        assertEquals(22, statistics.getConfirmed());
+        assertEquals(33, statistics.getDeliveryInProgress());
+        verify(orderMapper, never()).countGroupByStatus();
+    }
+
+    @Test
+    void missingCountsAreRebuiltOnceForConcurrentReaders() throws Exception {
+        when(hashOperations.multiGet(eq("order_status_count"), anyList()))
+                .thenReturn(Arrays.asList(null, null, null, null));
+        CountDownLatch counting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(orderMapper.countGroupByStatus()).thenAnswer(invocation -> {
+            counting.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(row(Orders.CONFIRMED, 3));
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> counter.statistics());
+            assertTrue(counting.await(5, TimeUnit.SECONDS));
+            Future<?> second = executor.submit(() -> counter.statistics());
+            //第二个读请求等待正在进行的重建，不再发起新的重建
+            TimeUnit.MILLISECONDS.sleep(200);
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(statement, times(1)).executeUpdate();
+        verify(orderMapper, times(1)).countGroupByStatus();
+    }
+
+    private OrderShards shards(int shardBits) {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setShardBits(shardBits);
+        properties.setNodeBits(10 - shardBits);
+        OrderShards shards = new OrderShards();
+        ReflectionTestUtils.setField(shards, "orderNumberProperties", properties);
+        ReflectionTestUtils.setField(shards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(shards, "transactionManager", transactionManager);
+        shards.init();
+        return shards;
+    }
+
+    private static Map<String, Object> row(int status, int count) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("status", status);
+        row.put("count", count);
+        return row;
+    }
+
+    private Invocation scriptInvocation(String fragment) {
+        return mockingDetails(stringRedisTemplate).getInvocations().stream()
+                .filter(invocation -> invocation.getArguments().length > 0
+                        && invocation.getArgument(0) instanceof RedisScript
+                        && invocation.<RedisScript<?>>getArgument(0).getScriptAsString().contains(fragment))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("未执行包含 " + fragment + " 的脚本"));
+    }
+
+    private static <T> RedisScript<T> script(String... fragments) {
+        return argThat(script -> script != null && Arrays.stream(fragments).allMatch(script.getScriptAsString()::contains));
+    }
+}
@@ -0,0 +1,271 @@
+package com.sky.order;
+
+import com.sky.properties.PayNotifyProperties;
+import com.sky.service.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 支付回调收件箱测试，Redis和订单业务均为桩对象
+ * 覆盖：处理成功后才登记交易号、已处理交易号跳过、按空闲名额认领、处理次数过多转入死信及死信重试
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class PayNotifyInboxTest {
+
+    private static final String KEY = "pay_notify_inbox";
+    private static final String GROUP = "pay_notify";
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private StreamOperations<String, Object, Object> streamOperations;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private OrderService orderService;
+    @Mock
+    private RedisConnection connection;
+    @Mock
+    private RedisStreamCommands streamCommands;
+
+    private PayNotifyProperties properties;
+    private PayNotifyInbox inbox;
+    private Semaphore inFlight;
+    private ExecutorService workers;
+
+    @BeforeEach
+    void setUp() {
+        properties = new PayNotifyProperties();
+        properties.setBatchSize(8);
+        properties.setReclaimIdleSeconds(60);
+        properties.setMaxDeliveries(5);
+
+        inbox = new PayNotifyInbox();
+        inFlight = new Semaphore(properties.getBatchSize());
+        workers = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(inbox, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(inbox, "orderService", orderService);
+        ReflectionTestUtils.setField(inbox, "payNotifyProperties", properties);
+        ReflectionTestUtils.setField(inbox, "inFlight", inFlight);
+        ReflectionTestUtils.setField(inbox, "workers", workers);
+
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        //认领通过连接的 XCLAIM 命令执行
+        when(stringRedisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+        when(connection.streamCommands()).thenReturn(streamCommands);
+        pending();
+    }
+
+    @Test
+    void registersTransactionOnlyAfterPaySuccess() throws Exception {
+        pending(idle("1-0", 1));
+        claimable(rawRecord("1-0", "tx1", "no1"));
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        InOrder inOrder = inOrder(orderService, valueOperations, streamOperations);
+        inOrder.verify(orderService).paySuccess("no1");
+        inOrder.verify(valueOperations).set(eq("pay_notify_tx_tx1"), eq("1"), eq(properties.getDedupSeconds()), eq(TimeUnit.SECONDS));
+        inOrder.verify(streamOperations).acknowledge(KEY, GROUP, RecordId.of("1-0"));
+        assertEquals(properties.getBatchSize(), inFlight.availablePermits());
+    }
+
+    @Test
+    void failedPaySuccessIsNeitherRegisteredNorAcknowledged() throws Exception {
+        pending(idle("1-0", 1));
+        claimable(rawRecord("1-0", "tx1", "no1"));
+        doThrow(new IllegalStateException("数据库不可用")).when(orderService).paySuccess("no1");
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        verify(valueOperations, never()).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        verify(streamOperations, never()).acknowledge(anyString(), anyString(), any(RecordId.class));
+        assertEquals(properties.getBatchSize(), inFlight.availablePermits());
+    }
+
+    @Test
+    void processedTransactionIsAcknowledgedWithoutPaySuccess() throws Exception {
+        pending(idle("1-0", 1));
+        claimable(rawRecord("1-0", "tx1", "no1"));
+        when(stringRedisTemplate.hasKey("pay_notify_tx_tx1")).thenReturn(true);
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        verify(orderService, never()).paySuccess(anyString());
+        verify(streamOperations).acknowledge(KEY, GROUP, RecordId.of("1-0"));
+    }
+
+    @Test
+    void claimsOnlyAsManyAsFreePermits() throws Exception {
+        //只剩2个空闲名额
+        inFlight.acquire(properties.getBatchSize() - 2);
+        pending(idle("1-0", 1), idle("2-0", 1), idle("3-0", 1), idle("4-0", 1), idle("5-0", 1));
+        AtomicInteger claimed = new AtomicInteger();
+        when(streamCommands.xClaim(any(byte[].class), eq(GROUP), anyString(), any(Duration.class), any()))
+                .thenAnswer(invocation -> {
+                    List<ByteRecord> records = new ArrayList<>();
+                    for (Object id : invocation.getArguments()) {
+                        if (id instanceof RecordId) {
+                            claimed.incrementAndGet();
+                            records.add(rawRecord(((RecordId) id).getValue(), "tx" + id, "no" + id));
+                        }
+                    }
+                    return records;
+                });
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        assertEquals(2, claimed.get());
+        assertEquals(2, inFlight.availablePermits());
+    }
+
+    @Test
+    void exhaustedMessageMovesToDeadLetter() throws Exception {
+        pending(idle("1-0", 5));
+        when(streamOperations.range(eq(KEY), any(Range.class)))
+                .thenReturn(Collections.singletonList(record("1-0", "tx1", "no1")));
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        verify(stringRedisTemplate).execute(script("xack"), eq(Arrays.asList(KEY, "pay_notify_dead")),
+                eq(GROUP), eq("1-0"), eq("tx1,no1"), anyString());
+        verify(streamCommands, never()).xClaim(any(byte[].class), anyString(), anyString(), any(Duration.class), any());
+        verify(streamOperations, never()).acknowledge(anyString(), anyString(), any(RecordId.class));
+        verify(orderService, never()).paySuccess(anyString());
+    }
+
+    @Test
+    void dueDeadLetterIsRetriedAndRemovedAfterSuccess() throws Exception {
+        when(stringRedisTemplate.execute(PayNotifyInboxTest.<List>script("zrangebyscore"), anyList(), any(), any(), any(), any()))
+                .thenReturn(Collections.singletonList("tx1,no1"));
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        InOrder inOrder = inOrder(orderService, valueOperations, stringRedisTemplate);
+        inOrder.verify(orderService).paySuccess("no1");
+        inOrder.verify(valueOperations).set(eq("pay_notify_tx_tx1"), eq("1"), anyLong(), eq(TimeUnit.SECONDS));
+        inOrder.verify(stringRedisTemplate).execute(script("zrem"), eq(Arrays.asList("pay_notify_dead", "pay_notify_dead_attempts")), eq("tx1,no1"));
+    }
+
+    @Test
+    void failedDeadLetterStaysForNextBackoff() throws Exception {
+        when(stringRedisTemplate.execute(PayNotifyInboxTest.<List>script("zrangebyscore"), anyList(), any(), any(), any(), any()))
+                .thenReturn(Collections.singletonList("tx1,no1"));
+        doThrow(new IllegalStateException("数据库不可用")).when(orderService).paySuccess("no1");
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        verify(stringRedisTemplate, never()).execute(script("zrem"), anyList(), any());
+        assertEquals(properties.getBatchSize(), inFlight.availablePermits());
+    }
+
+    @Test
+    void noFreePermitSkipsDeadLetters() throws Exception {
+        inFlight.acquire(properties.getBatchSize());
+
+        inbox.reclaim();
+        awaitWorkers();
+
+        verify(stringRedisTemplate, never()).execute(script("zrangebyscore"), anyList(), any(), any(), any(), any());
+        assertEquals(0, inFlight.availablePermits());
+    }
+
+    private void pending(PendingMessage... messages) {
+        when(streamOperations.pending(eq(KEY), eq(GROUP), any(Range.class), anyLong()))
+                .thenReturn(new PendingMessages(GROUP, Arrays.asList(messages)));
+    }
+
+    private void claimable(ByteRecord record) {
+        when(streamCommands.xClaim(aryEq(KEY.getBytes(StandardCharsets.UTF_8)), eq(GROUP), anyString(), any(Duration.class), any()))
+                .thenReturn(Collections.singletonList(record));
+    }
+
+    private PendingMessage idle(String id, long deliveries) {
+        return new PendingMessage(RecordId.of(id), Consumer.from(GROUP, "node"),
+                Duration.ofSeconds(properties.getReclaimIdleSeconds() + 1), deliveries);
+    }
+
+    private static MapRecord<String, Object, Object> record(String id, String transactionId, String outTradeNo) {
+        Map<Object, Object> value = new HashMap<>();
+        value.put("outTradeNo", outTradeNo);
+        value.put("transactionId", transactionId);
+        return StreamRecords.<String, Object, Object>mapBacked(value).withStreamKey(KEY).withId(RecordId.of(id));
+    }
+
+    private static ByteRecord rawRecord(String id, String transactionId, String outTradeNo) {
+        Map<byte[], byte[]> value = new HashMap<>();
+        value.put("outTradeNo".getBytes(StandardCharsets.UTF_8), outTradeNo.getBytes(StandardCharsets.UTF_8));
+        value.put("transactionId".getBytes(StandardCharsets.UTF_8), transactionId.getBytes(StandardCharsets.UTF_8));
+        return StreamRecords.rawBytes(value).withStreamKey(KEY.getBytes(StandardCharsets.UTF_8)).withId(RecordId.of(id));
+    }
+
+    private static <T> RedisScript<T> script(String command) {
+        return argThat(script -> script != null && script.getScriptAsString().contains(command));
+    }
+
+    private void awaitWorkers() throws InterruptedException {
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,110 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器吞吐量基准测试
+ * 运行：在 sky-server 下执行 mvn test-compile 后运行本类的 main 方法；
+ * 多线程下单节点吞吐量低于每秒100万个或出现重复订单号时 main 方法以失败退出
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class SnowflakeOrderNumberGeneratorBenchmark {
+
+    private static final long MIN_IDS_PER_SECOND = 1_000_000;
+
+    private SnowflakeOrderNumberGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = SnowflakeOrderNumberGeneratorTest.generator(new OrderNumberProperties(),
+                SnowflakeOrderNumberGeneratorTest.fixedLease(1));
+    }
+
+    @Benchmark
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    /**
+     * 记录每个生成的订单号，用于检查多线程下是否重复
+     */
+    @State(Scope.Benchmark)
+    public static class Uniqueness {
+
+        final Set<Long> ids = ConcurrentHashMap.newKeySet(1 << 24);
+        final AtomicLong generated = new AtomicLong();
+
+        @TearDown(Level.Iteration)
+        public void check() {
+            if (ids.size() != generated.get()) {
+                throw new IllegalStateException("生成了重复的订单号：" + (generated.get() - ids.size()) + " 个");
+            }
+            ids.clear();
+            generated.set(0);
+        }
+    }
+
+    @Benchmark
+    @Measurement(iterations = 3, time = 1)
+    public void nextIdUnique(Uniqueness uniqueness) {
+        uniqueness.ids.add(generator.nextId());
+        uniqueness.generated.incrementAndGet();
+    }
+
+    public static void main(String[] args) throws Exception {
+        //基准方法或重复检查抛出异常时 run 直接失败，不会只打印错误后继续
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(SnowflakeOrderNumberGeneratorBenchmark.class.getSimpleName() + ".nextId$")
+                .shouldFailOnError(true)
+                .build()).run();
+        Collection<RunResult> uniqueResults = new Runner(new OptionsBuilder()
+                .include(SnowflakeOrderNumberGeneratorBenchmark.class.getSimpleName() + ".nextIdUnique$")
+                .shouldFailOnError(true)
+                .build()).run();
+        check(results, "订单号生成吞吐量");
+        check(uniqueResults, "记录订单号时的生成吞吐量");
+    }
+
+    private static void check(Collection<RunResult> results, String name) {
+        if (results.isEmpty()) {
+            throw new IllegalStateException(name + "没有基准测试结果");
+        }
+        for (RunResult result : results) {
+            double score = result.getPrimaryResult().getScore();
+            if (!(score > 0)) {
+                throw new IllegalStateException(name + "没有有效的测量结果");
+            }
+            if (result.getParams().getBenchmark().endsWith(".nextId") && score < MIN_IDS_PER_SECOND) {
+                throw new IllegalStateException(name + " " + (long) score + "/s 低于 " + MIN_IDS_PER_SECOND + "/s");
+            }
+        }
+    }
+}
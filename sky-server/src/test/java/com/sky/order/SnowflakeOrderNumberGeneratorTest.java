@@ -0,0 +1,109 @@
+package com.sky.order;
+
+import com.sky.properties.OrderNumberProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeOrderNumberGeneratorTest {
+
+    private static final long NODE_ID = 5;
+
+    /**
+     * 创建使用固定节点ID的生成器
+     */
+    static SnowflakeOrderNumberGenerator generator(OrderNumberProperties properties, NodeIdLease lease) {
+        SnowflakeOrderNumberGenerator generator = new SnowflakeOrderNumberGenerator();
+        ReflectionTestUtils.setField(generator, "orderNumberProperties", properties);
+        ReflectionTestUtils.setField(generator, "nodeIdLease", lease);
+        generator.init();
+        return generator;
+    }
+
+    static NodeIdLease fixedLease(long nodeId) {
+        return new NodeIdLease() {
+            @Override
+            public long getNodeId() {
+                return nodeId;
+            }
+        };
+    }
+
+    @Test
+    void idsAreUniqueAndIncreasingAcrossThreads() throws Exception {
+        SnowflakeOrderNumberGenerator generator = generator(new OrderNumberProperties(), fixedLease(NODE_ID));
+        int threads = 8;
+        int perThread = 200_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet(threads * perThread);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                long previous = -1;
+                boolean increasing = true;
+                for (int i = 0; i < perThread; i++) {
+                    long id = generator.nextId();
+                    increasing &= id > previous;
+                    previous = id;
+                    ids.add(id);
+                }
+                return increasing;
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(), "同一线程内的订单ID应单调递增");
+        }
+        executor.shutdown();
+
+        assertEquals(threads * perThread, ids.size(), "订单ID不应重复");
+    }
+
+    @Test
+    void idEmbedsShardAndNode() {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setShardBits(2);
+        properties.setSequenceBits(10);
+        SnowflakeOrderNumberGenerator generator = generator(properties, fixedLease(NODE_ID));
+
+        long id = generator.nextId(3);
+
+        int sequenceBits = properties.getSequenceBits();
+        int nodeBits = properties.getNodeBits();
+        assertEquals(NODE_ID, (id >>> sequenceBits) & ((1L << nodeBits) - 1));
+        assertEquals(3, (id >>> (sequenceBits + nodeBits)) & 3);
+    }
+
+    @Test
+    void rejectsLayoutWiderThan22Bits() {
+        OrderNumberProperties properties = new OrderNumberProperties();
+        properties.setShardBits(1);
+        assertThrows(IllegalStateException.class, () -> generator(properties, fixedLease(NODE_ID)));
+    }
+
+    @Test
+    void refusesToIssueWhenLeaseExpired() {
+        NodeIdLease expired = new NodeIdLease() {
+            @Override
+            public long getNodeId() {
+                throw new IllegalStateException("租约已过期");
+            }
+        };
+        SnowflakeOrderNumberGenerator generator = generator(new OrderNumberProperties(), expired);
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+}
@@ -0,0 +1,193 @@
+package com.sky.report;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyItemSales;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyItemSalesMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import com.sky.properties.ReportProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品销量排名和回填：销量相同时按名称排序，N为0或超过商品数量时返回全部或空；
+ * 回填按批次天数划分日期范围，各分片和归档表的结果分别写入
+ * 查询均为桩对象，订单分为2个分片
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ItemSalesRollupTest {
+
+    private static final LocalDate JAN_1 = LocalDate.of(2024, 1, 1);
+
+    @Mock
+    private DailyItemSalesMapper dailyItemSalesMapper;
+    @Mock
+    private OrderArchiveRouter orderArchiveRouter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private ReportProperties reportProperties;
+    private ItemSalesRollup itemSalesRollup;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(1);
+        orderNumberProperties.setNodeBits(9);
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        reportProperties = new ReportProperties();
+        itemSalesRollup = new ItemSalesRollup();
+        ReflectionTestUtils.setField(itemSalesRollup, "dailyItemSalesMapper", dailyItemSalesMapper);
+        ReflectionTestUtils.setField(itemSalesRollup, "orderArchiveRouter", orderArchiveRouter);
+        ReflectionTestUtils.setField(itemSalesRollup, "orderShards", orderShards);
+        ReflectionTestUtils.setField(itemSalesRollup, "reportProperties", reportProperties);
+        ReflectionTestUtils.setField(itemSalesRollup, "transactionTemplate", new TransactionTemplate(transactionManager));
+
+        when(dailyItemSalesMapper.sumByItem(any(), any(), any(), any())).thenReturn(Arrays.asList(
+                item("鱼香肉丝", 5), item("宫保鸡丁", 9), item("麻婆豆腐", 5), item("回锅肉", 5), item("米饭", 12)));
+        when(orderArchiveRouter.months(any(), any())).thenReturn(Collections.emptyList());
+        //每个分片上，每批的第一天有1条销量汇总
+        when(dailyItemSalesMapper.aggregate(eq(true), anyList(), eq(Orders.COMPLETED), any(), any())).thenAnswer(invocation ->
+                Collections.singletonList(sales(((LocalDateTime) invocation.getArgument(3)).toLocalDate(), "米饭", 2)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+    @Test
+    void topItemsBreaksTiesByName() {
+        List<GoodsSalesDTO> top = itemSalesRollup.topItems(JAN_1, JAN_1, null, null, 4);
+
+        //销量同为5的三个商品按名称排序，只保留前一个
+        assertEquals(Arrays.asList("米饭:12", "宫保鸡丁:9", "回锅肉:5", "鱼香肉丝:5"), names(top));
+        assertEquals(Arrays.asList("米饭:12", "宫保鸡丁:9", "回锅肉:5"),
+                names(itemSalesRollup.topItems(JAN_1, JAN_1, null, null, 3)));
+    }
+
+    @Test
+    void topItemsWithZeroLimitIsEmpty() {
+        assertTrue(itemSalesRollup.topItems(JAN_1, JAN_1, null, null, 0).isEmpty());
+        assertTrue(itemSalesRollup.topCategories(JAN_1, JAN_1, 0).isEmpty());
+    }
+
+    @Test
+    void topItemsWithLimitAboveItemCountReturnsAllSorted() {
+        List<GoodsSalesDTO> top = itemSalesRollup.topItems(JAN_1, JAN_1, null, null, 10);
+
+        assertEquals(Arrays.asList("米饭:12", "宫保鸡丁:9", "回锅肉:5", "鱼香肉丝:5", "麻婆豆腐:5"), names(top));
+        when(dailyItemSalesMapper.sumByItem(any(), any(), any(), any())).thenReturn(Collections.emptyList());
+        assertTrue(itemSalesRollup.topItems(JAN_1, JAN_1, null, null, 10).isEmpty());
+    }
+
+    @Test
+    void topCategoriesRanksCategorySums() {
+        when(dailyItemSalesMapper.sumByCategory(any(), any())).thenReturn(Arrays.asList(
+                new GoodsSalesDTO("主食", 30), new GoodsSalesDTO("川菜", 42), new GoodsSalesDTO("汤类", 30)));
+
+        assertEquals(Arrays.asList("川菜:42", "主食:30"), names(itemSalesRollup.topCategories(JAN_1, JAN_1, 2)));
+    }
+
+    @Test
+    void backfillSplitsRangeAtBatchBoundaries() {
+        reportProperties.setBackfillBatchDays(7);
+
+        int rows = itemSalesRollup.backfill(JAN_1, JAN_1.plusDays(14));
+
+        //1~7日、8~14日各一批，15日单独一批，每批各分片1条
+        assertEquals(6, rows);
+        verify(dailyItemSalesMapper).deleteByRange(JAN_1, JAN_1.plusDays(6));
+        verify(dailyItemSalesMapper).deleteByRange(JAN_1.plusDays(7), JAN_1.plusDays(13));
+        verify(dailyItemSalesMapper).deleteByRange(JAN_1.plusDays(14), JAN_1.plusDays(14));
+        verify(dailyItemSalesMapper, times(3)).deleteByRange(any(), any());
+        verify(dailyItemSalesMapper, times(2)).aggregate(true, Collections.emptyList(), Orders.COMPLETED,
+                JAN_1.plusDays(14).atStartOfDay(), JAN_1.plusDays(15).atStartOfDay());
+        verify(dailyItemSalesMapper, times(6)).addBatch(anyList());
+    }
+
+    @Test
+    void backfillWithoutPositiveBatchDaysGoesDayByDay() {
+        reportProperties.setBackfillBatchDays(-1);
+
+        assertEquals(6, itemSalesRollup.backfill(JAN_1, JAN_1.plusDays(2)));
+
+        verify(dailyItemSalesMapper).deleteByRange(JAN_1.plusDays(2), JAN_1.plusDays(2));
+        verify(dailyItemSalesMapper, times(3)).deleteByRange(any(), any());
+    }
+
+    @Test
+    void backfillQueriesArchivedMonthsOnce() {
+        List<String> months = Collections.singletonList("202401");
+        when(orderArchiveRouter.months(any(), any())).thenReturn(months);
+        when(dailyItemSalesMapper.aggregate(eq(false), eq(months), eq(Orders.COMPLETED), any(), any()))
+                .thenReturn(Arrays.asList(sales(JAN_1, "米饭", 1), sales(JAN_1, "回锅肉", 1)));
+
+        assertEquals(4, itemSalesRollup.backfill(JAN_1, JAN_1.plusDays(6)));
+
+        //归档表不分片，只在一个数据库实例上查询一次
+        verify(dailyItemSalesMapper, times(1)).aggregate(eq(false), anyList(), any(), any(), any());
+        verify(dailyItemSalesMapper, times(3)).addBatch(anyList());
+    }
+
+    @Test
+    void backfillEmptyBatchOnlyDeletes() {
+        when(dailyItemSalesMapper.aggregate(anyBoolean(), anyList(), any(), any(), any())).thenReturn(Collections.emptyList());
+
+        assertEquals(0, itemSalesRollup.backfill(JAN_1, JAN_1.plusDays(2)));
+
+        verify(dailyItemSalesMapper).deleteByRange(JAN_1, JAN_1.plusDays(2));
+        verify(dailyItemSalesMapper, never()).addBatch(any());
+    }
+
+    private static DailyItemSales item(String name, int number) {
+        return DailyItemSales.builder().name(name).number(number).build();
+    }
+
+    private static DailyItemSales sales(LocalDate reportDate, String name, int number) {
+        return DailyItemSales.builder().reportDate(reportDate).itemType(DailyItemSales.DISH).name(name).number(number).build();
+    }
+
+    private static List<String> names(List<GoodsSalesDTO> sales) {
+        return sales.stream().map(s -> s.getName() + ":" + s.getNumber()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,218 @@
+package com.sky.report;
+
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.OrderExportMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import com.sky.properties.ReportProperties;
+import com.sky.vo.OrderExportRowVO;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 报表导出的并发许可：只在导出任务结束或确定不会执行时释放
+ * 查询均为桩对象，异步请求的超时、结束回调由测试直接触发
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReportExporterTest {
+
+    private static final LocalDate BEGIN = LocalDate.of(2024, 1, 1);
+    private static final LocalDate END = LocalDate.of(2024, 1, 2);
+
+    @Mock
+    private TurnoverRollup turnoverRollup;
+    @Mock
+    private UserStats userStats;
+    @Mock
+    private OrderExportMapper orderExportMapper;
+    @Mock
+    private OrderArchiveRouter orderArchiveRouter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private Cursor<OrderExportRowVO> cursor;
+
+    private OrderShards orderShards;
+    private ReportExporter reportExporter;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(0);
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        ReportProperties reportProperties = new ReportProperties();
+        reportProperties.setExportConcurrency(1);
+        reportExporter = new ReportExporter();
+        ReflectionTestUtils.setField(reportExporter, "turnoverRollup", turnoverRollup);
+        ReflectionTestUtils.setField(reportExporter, "userStats", userStats);
+        ReflectionTestUtils.setField(reportExporter, "orderExportMapper", orderExportMapper);
+        ReflectionTestUtils.setField(reportExporter, "orderArchiveRouter", orderArchiveRouter);
+        ReflectionTestUtils.setField(reportExporter, "orderShards", orderShards);
+        ReflectionTestUtils.setField(reportExporter, "reportProperties", reportProperties);
+        ReflectionTestUtils.setField(reportExporter, "transactionManager", transactionManager);
+        reportExporter.init();
+
+        request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(turnoverRollup.dailyTurnover(any(), any())).thenReturn(Collections.emptyMap());
+        when(turnoverRollup.orderCounts(any(), any())).thenReturn(Collections.emptyMap());
+        when(userStats.newUsers()).thenReturn(new TreeMap<>());
+        when(orderArchiveRouter.months(any(), any())).thenReturn(Collections.emptyList());
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        List<OrderExportRowVO> rows = Arrays.asList(row("1001"), row("1002"));
+        when(cursor.iterator()).thenAnswer(invocation -> rows.iterator());
+        when(orderExportMapper.cursorDetails(anyBoolean(), anyList(), any(), any())).thenReturn(cursor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        reportExporter.destroy();
+        orderShards.destroy();
+    }
+
+    @Test
+    void completedExportReleasesPermitOnce() throws Exception {
+        StreamingResponseBody body = reportExporter.export(BEGIN, END);
+        assertEquals(0, availablePermits());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        interceptor().afterCompletion(webRequest(), null);
+
+        assertTrue(out.size() > 0);
+        verify(cursor).close();
+        assertEquals(1, availablePermits());
+    }
+
+    @Test
+    void timeoutBeforeStartReleasesPermitAndSkipsTask() throws Exception {
+        StreamingResponseBody body = reportExporter.export(BEGIN, END);
+
+        interceptor().handleTimeout(webRequest(), null);
+        assertEquals(1, availablePermits());
+
+        //任务已被取消，即使仍被执行也不再导出，也不会再释放一次
+        body.writeTo(new ByteArrayOutputStream());
+        interceptor().afterCompletion(webRequest(), null);
+        verify(turnoverRollup, never()).dailyTurnover(any(), any());
+        assertEquals(1, availablePermits());
+    }
+
+    @Test
+    void timeoutWhileRunningHoldsPermitUntilTaskStops() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        when(turnoverRollup.dailyTurnover(any(), any())).thenAnswer(invocation -> {
+            writing.countDown();
+            resume.await(5, TimeUnit.SECONDS);
+            return Collections.emptyMap();
+        });
+        StreamingResponseBody body = reportExporter.export(BEGIN, END);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> task = executor.submit(() -> {
+                body.writeTo(new ByteArrayOutputStream());
+                return null;
+            });
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            interceptor().handleTimeout(webRequest(), null);
+            interceptor().afterCompletion(webRequest(), null);
+            //任务仍在执行，许可不释放，新的导出被拒绝
+            assertEquals(0, availablePermits());
+            assertThrows(ReportBusinessException.class, () -> reportExporter.export(BEGIN, END));
+
+            resume.countDown();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> task.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof CancellationException);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(orderExportMapper, never()).cursorDetails(anyBoolean(), anyList(), any(), any());
+        assertEquals(1, availablePermits());
+    }
+
+    private CallableProcessingInterceptor interceptor() {
+        return WebAsyncUtils.getAsyncManager(request).getCallableInterceptor(ReportExporter.class.getName());
+    }
+
+    private NativeWebRequest webRequest() {
+        return new ServletWebRequest(request);
+    }
+
+    private int availablePermits() {
+        return ((Semaphore) ReflectionTestUtils.getField(reportExporter, "permits")).availablePermits();
+    }
+
+    private static OrderExportRowVO row(String number) {
+        return OrderExportRowVO.builder()
+                .number(number)
+                .orderTime(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .status(5)
+                .consignee("张三")
+                .phone("13800000000")
+                .address("北京")
+                .name("宫保鸡丁")
+                .dishFlavor("")
+                .itemNumber(1)
+                .itemAmount(new BigDecimal("20.00"))
+                .build();
+    }
+}
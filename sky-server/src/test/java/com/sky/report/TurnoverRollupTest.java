@@ -0,0 +1,160 @@
+package com.sky.report;
+
+import com.sky.entity.DailyTurnover;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyTurnoverMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderShards;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderShardProperties;
+import com.sky.properties.ReportProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 营业额汇总的回填：按批次天数划分日期范围，每批合并各分片和归档表后整批替换
+ * 查询均为桩对象，订单分为2个分片
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class TurnoverRollupTest {
+
+    private static final LocalDate JAN_1 = LocalDate.of(2024, 1, 1);
+    private static final List<String> HOT = Collections.singletonList(OrderArchiveRouter.HOT_TABLE);
+
+    @Mock
+    private DailyTurnoverMapper dailyTurnoverMapper;
+    @Mock
+    private OrderArchiveRouter orderArchiveRouter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private ReportProperties reportProperties;
+    private TurnoverRollup turnoverRollup;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(1);
+        orderNumberProperties.setNodeBits(9);
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        reportProperties = new ReportProperties();
+        turnoverRollup = new TurnoverRollup();
+        ReflectionTestUtils.setField(turnoverRollup, "dailyTurnoverMapper", dailyTurnoverMapper);
+        ReflectionTestUtils.setField(turnoverRollup, "orderArchiveRouter", orderArchiveRouter);
+        ReflectionTestUtils.setField(turnoverRollup, "orderShards", orderShards);
+        ReflectionTestUtils.setField(turnoverRollup, "reportProperties", reportProperties);
+        ReflectionTestUtils.setField(turnoverRollup, "transactionTemplate", new TransactionTemplate(transactionManager));
+
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        //每个分片上，每批的第一天有1笔10元的已完成订单
+        when(dailyTurnoverMapper.aggregate(eq(HOT), eq(Orders.COMPLETED), any(), any())).thenAnswer(invocation ->
+                Collections.singletonList(turnover(((LocalDateTime) invocation.getArgument(2)).toLocalDate(), "10", 1)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderShards.destroy();
+    }
+
+    @Test
+    void backfillSplitsRangeAtBatchBoundaries() {
+        reportProperties.setBackfillBatchDays(7);
+
+        int days = turnoverRollup.backfill(JAN_1, JAN_1.plusDays(14));
+
+        //1~7日、8~14日各一批，15日单独一批
+        assertEquals(3, days);
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1, JAN_1.plusDays(6));
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1.plusDays(7), JAN_1.plusDays(13));
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1.plusDays(14), JAN_1.plusDays(14));
+        verify(dailyTurnoverMapper, times(3)).deleteByRange(any(), any());
+        //每批的结束时间是最后一天的第二天零点，每个分片查询一次
+        verify(dailyTurnoverMapper, times(2)).aggregate(HOT, Orders.COMPLETED,
+                JAN_1.plusDays(7).atStartOfDay(), JAN_1.plusDays(14).atStartOfDay());
+        verify(dailyTurnoverMapper, times(2)).aggregate(HOT, Orders.COMPLETED,
+                JAN_1.plusDays(14).atStartOfDay(), JAN_1.plusDays(15).atStartOfDay());
+    }
+
+    @Test
+    void backfillRangeMatchingBatchSizeIsOneBatch() {
+        reportProperties.setBackfillBatchDays(7);
+
+        assertEquals(1, turnoverRollup.backfill(JAN_1, JAN_1.plusDays(6)));
+
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1, JAN_1.plusDays(6));
+        verify(dailyTurnoverMapper, times(1)).deleteByRange(any(), any());
+    }
+
+    @Test
+    void backfillWithoutPositiveBatchDaysGoesDayByDay() {
+        reportProperties.setBackfillBatchDays(0);
+
+        assertEquals(3, turnoverRollup.backfill(JAN_1, JAN_1.plusDays(2)));
+
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1.plusDays(1), JAN_1.plusDays(1));
+        verify(dailyTurnoverMapper, times(3)).deleteByRange(any(), any());
+    }
+
+    @Test
+    void backfillMergesShardsAndArchivesPerDay() {
+        List<String> tables = Arrays.asList(OrderArchiveRouter.HOT_TABLE, "orders_archive_202401");
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(tables);
+        when(dailyTurnoverMapper.aggregate(eq(tables.subList(1, 2)), eq(Orders.COMPLETED), any(), any()))
+                .thenReturn(Arrays.asList(turnover(JAN_1, "5.5", 2), turnover(JAN_1.plusDays(1), "3", 1)));
+
+        assertEquals(2, turnoverRollup.backfill(JAN_1, JAN_1.plusDays(6)));
+
+        ArgumentCaptor<List<DailyTurnover>> batch = ArgumentCaptor.forClass(List.class);
+        verify(dailyTurnoverMapper).insertBatch(batch.capture());
+        assertEquals(Arrays.asList(turnover(JAN_1, "25.5", 4), turnover(JAN_1.plusDays(1), "3", 1)), batch.getValue());
+    }
+
+    @Test
+    void backfillEmptyBatchOnlyDeletes() {
+        when(dailyTurnoverMapper.aggregate(anyList(), any(), any(), any())).thenReturn(Collections.emptyList());
+
+        assertEquals(0, turnoverRollup.backfill(JAN_1, JAN_1.plusDays(2)));
+
+        verify(dailyTurnoverMapper).deleteByRange(JAN_1, JAN_1.plusDays(2));
+        verify(dailyTurnoverMapper, never()).insertBatch(any());
+    }
+
+    private static DailyTurnover turnover(LocalDate reportDate, String amount, int orderCount) {
+        return DailyTurnover.builder().reportDate(reportDate).turnover(new BigDecimal(amount)).orderCount(orderCount).build();
+    }
+}
@@ -0,0 +1,87 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 菜品口味批量查询：无论多少个菜品，每次调用只发出固定数量的SQL
+ */
+@ExtendWith(MockitoExtension.class)
+class DishServiceImplTest {
+
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private DishFlavorMapper dishFlavorMapper;
+    @InjectMocks
+    private DishServiceImpl dishService;
+
+    @Test
+    void listWithFlavorIssuesTwoQueriesForFortyDishes() {
+        List<Dish> dishes = new ArrayList<>();
+        List<DishFlavor> flavors = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            dishes.add(Dish.builder().id(id).name("菜品" + id).build());
+            flavors.add(DishFlavor.builder().dishId(id).name("辣度").value("[\"微辣\",\"中辣\"]").build());
+            flavors.add(DishFlavor.builder().dishId(id).name("忌口").value("[\"不要葱\"]").build());
+        }
+        when(dishMapper.list(any(Dish.class))).thenReturn(dishes);
+        when(dishFlavorMapper.getByDishIds(anyCollection())).thenReturn(flavors);
+
+        List<DishVO> result = dishService.listWithFlavor(Dish.builder().categoryId(1L).build());
+
+        assertEquals(40, result.size());
+        result.forEach(dishVO -> assertEquals(2, dishVO.getFlavors().size()));
+        verify(dishMapper, times(1)).list(any(Dish.class));
+        verify(dishFlavorMapper, times(1)).getByDishIds(anyCollection());
+        verify(dishFlavorMapper, never()).getByDishId(anyLong());
+        verifyNoMoreInteractions(dishMapper, dishFlavorMapper);
+    }
+
+    @Test
+    void listWithFlavorSkipsFlavorQueryWhenNoDishes() {
+        when(dishMapper.list(any(Dish.class))).thenReturn(Collections.emptyList());
+
+        assertTrue(dishService.listWithFlavor(new Dish()).isEmpty());
+        verify(dishMapper, times(1)).list(any(Dish.class));
+        verifyNoMoreInteractions(dishMapper, dishFlavorMapper);
+    }
+
+    @Test
+    void getByIdWithFlavorUsesBatchQuery() {
+        when(dishMapper.getById(7L)).thenReturn(Dish.builder().id(7L).name("鱼香肉丝").build());
+        when(dishFlavorMapper.getByDishIds(anyCollection())).thenReturn(Arrays.asList(
+                DishFlavor.builder().dishId(7L).name("辣度").value("[\"微辣\"]").build()));
+
+        DishVO dishVO = dishService.getByIdWithFlavor(7L);
+
+        assertEquals(1, dishVO.getFlavors().size());
+        verify(dishMapper, times(1)).getById(7L);
+        verify(dishFlavorMapper, times(1)).getByDishIds(anyCollection());
+        verifyNoMoreInteractions(dishMapper, dishFlavorMapper);
+    }
+}
@@ -0,0 +1,301 @@
+package com.sky.service.impl;
+
+import com.github.pagehelper.Page;
+import com.github.pagehelper.PageHelper;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderArchiveRouter;
+import com.sky.order.OrderPageCursor;
+import com.sky.order.OrderSearchIndex;
+import com.sky.order.OrderShards;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.properties.OrderProperties;
+import com.sky.properties.OrderShardProperties;
+import com.sky.result.CursorPageResult;
+import com.sky.result.PageResult;
+import com.sky.vo.OrderVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单分页查询：先只查询订单表，当前页取满且晚于归档时限时不查询归档表；游标分页多查一条判断下一页，同一下单时间按ID排序
+ * 查询均为桩对象，归档时限固定为2024-01-01
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderServiceImplTest {
+
+    private static final LocalDateTime HORIZON = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final List<String> HOT = Collections.singletonList(OrderArchiveRouter.HOT_TABLE);
+    private static final List<String> ARCHIVES = Arrays.asList("orders_archive_202312", "orders_archive_202311");
+    private static final List<String> ALL = Arrays.asList("orders", "orders_archive_202312", "orders_archive_202311");
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderSearchIndex orderSearchIndex;
+    @Mock
+    private OrderArchiveRouter orderArchiveRouter;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrderShards orderShards;
+    private OrderServiceImpl orderService;
+
+    @BeforeEach
+    void setUp() {
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(0);
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderService, "orderSearchIndex", orderSearchIndex);
+        ReflectionTestUtils.setField(orderService, "orderArchiveRouter", orderArchiveRouter);
+        ReflectionTestUtils.setField(orderService, "orderShards", orderShards);
+        ReflectionTestUtils.setField(orderService, "orderProperties", new OrderProperties());
+        ReflectionTestUtils.setField(orderService, "stringRedisTemplate", stringRedisTemplate);
+
+        when(orderSearchIndex.candidates(any())).thenReturn(null);
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(ALL);
+        when(orderArchiveRouter.horizon()).thenReturn(HORIZON);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PageHelper.clearPage();
+        orderShards.destroy();
+    }
+
+    @Test
+    void pageFilledBeforeHorizonSkipsArchives() {
+        when(orderMapper.page(any(), eq(HOT))).thenReturn(page(25, batch(10, HORIZON.plusDays(10))));
+        when(orderMapper.countByCondition(any(), eq(ARCHIVES))).thenReturn(7L);
+
+        PageResult result = orderService.page(query(2, 10));
+
+        assertEquals(10, result.getRecords().size());
+        assertEquals(32, result.getTotal());
+        verify(orderMapper, never()).page(any(), eq(ALL));
+        //归档订单数量缓存后，后续翻页不再统计
+        verify(valueOperations).set(any(), eq("7"), anyLong(), any());
+    }
+
+    @Test
+    void pageWithoutArchivedMonthsOnlyCountsHotTable() {
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        when(orderMapper.page(any(), eq(HOT))).thenReturn(page(3, batch(3, HORIZON.minusDays(10))));
+
+        PageResult result = orderService.page(query(1, 10));
+
+        assertEquals(3, result.getTotal());
+        verify(orderMapper, times(1)).page(any(), any());
+        verify(orderMapper, never()).countByCondition(any(), any());
+    }
+
+    @Test
+    void pageNotFilledQueriesArchives() {
+        when(orderMapper.page(any(), eq(HOT))).thenReturn(page(13, batch(3, HORIZON.plusDays(1))));
+        when(orderMapper.page(any(), eq(ALL))).thenReturn(page(20, batch(10, HORIZON.minusDays(1))));
+
+        PageResult result = orderService.page(query(2, 10));
+
+        assertEquals(20, result.getTotal());
+        assertEquals(10, result.getRecords().size());
+        verify(orderMapper, never()).countByCondition(any(), any());
+    }
+
+    @Test
+    void pageEndingBeforeHorizonQueriesArchives() {
+        //未归档的旧订单(如未完成的订单)可能与归档订单交错
+        List<Orders> hot = batch(10, HORIZON.plusMinutes(5));
+        hot.set(9, order(100, HORIZON.minusMinutes(1)));
+        when(orderMapper.page(any(), eq(HOT))).thenReturn(page(10, hot));
+        when(orderMapper.page(any(), eq(ALL))).thenReturn(page(15, batch(10, HORIZON.plusMinutes(5))));
+
+        assertEquals(15, orderService.page(query(1, 10)).getTotal());
+        verify(orderMapper).page(any(), eq(ALL));
+    }
+
+    @Test
+    void cursorFilledBeforeHorizonSkipsArchives() {
+        when(orderMapper.pageByCursor(any(), any(), anyInt(), eq(HOT))).thenReturn(batch(11, HORIZON.plusDays(3)));
+
+        CursorPageResult result = orderService.pageByCursor(query(0, 10));
+
+        assertEquals(10, result.getRecords().size());
+        verify(orderMapper, never()).pageByCursor(any(), any(), anyInt(), eq(ARCHIVES));
+    }
+
+    @Test
+    void cursorMergesArchivesWhenHotRunsOut() {
+        when(orderMapper.pageByCursor(any(), any(), anyInt(), eq(HOT)))
+                .thenReturn(Arrays.asList(order(9, HORIZON.plusDays(1)), order(8, HORIZON.minusDays(2))));
+        when(orderMapper.pageByCursor(any(), any(), anyInt(), eq(ARCHIVES)))
+                .thenReturn(Arrays.asList(order(7, HORIZON.minusDays(1)), order(6, HORIZON.minusDays(3))));
+
+        CursorPageResult result = orderService.pageByCursor(query(0, 3));
+
+        assertEquals(Arrays.asList(9L, 7L, 8L), ids(result));
+        OrderPageCursor next = OrderPageCursor.decode(result.getNextCursor());
+        assertEquals(8L, next.getId());
+        assertEquals(HORIZON.minusDays(2), next.getOrderTime());
+    }
+
+    @Test
+    void cursorLastPageHasNoNextCursor() {
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        when(orderMapper.pageByCursor(any(), any(), eq(4), eq(HOT))).thenReturn(batch(3, HORIZON));
+
+        CursorPageResult result = orderService.pageByCursor(query(0, 3));
+
+        assertEquals(3, result.getRecords().size());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    void cursorQueriesOneExtraRowToDetectNextPage() {
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        when(orderMapper.pageByCursor(any(), any(), eq(4), eq(HOT))).thenReturn(batch(4, HORIZON));
+
+        CursorPageResult result = orderService.pageByCursor(query(0, 3));
+
+        //第4条只用于判断还有下一页，不返回，游标指向第3条
+        assertEquals(Arrays.asList(1004L, 1003L, 1002L), ids(result));
+        assertEquals(1002L, OrderPageCursor.decode(result.getNextCursor()).getId());
+        verify(orderMapper, never()).pageByCursor(any(), any(), eq(3), any());
+    }
+
+    @Test
+    void cursorContinuesWithinTiedOrderTime() {
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        LocalDateTime noon = LocalDateTime.of(2024, 3, 1, 12, 0);
+        when(orderMapper.pageByCursor(any(), any(), eq(3), eq(HOT)))
+                .thenReturn(batch(3, noon), Arrays.asList(order(1001, noon)));
+
+        CursorPageResult first = orderService.pageByCursor(query(0, 2));
+        OrdersPageQueryDTO next = query(0, 2);
+        next.setCursor(first.getNextCursor());
+        CursorPageResult second = orderService.pageByCursor(next);
+
+        //同一下单时间的订单靠ID区分，下一页从游标ID之后继续
+        ArgumentCaptor<OrderPageCursor> cursor = ArgumentCaptor.forClass(OrderPageCursor.class);
+        verify(orderMapper, times(2)).pageByCursor(any(), cursor.capture(), eq(3), eq(HOT));
+        assertNull(cursor.getAllValues().get(0));
+        assertEquals(noon, cursor.getAllValues().get(1).getOrderTime());
+        assertEquals(1002L, cursor.getAllValues().get(1).getId());
+        assertEquals(Arrays.asList(1003L, 1002L), ids(first));
+        assertEquals(Collections.singletonList(1001L), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void cursorMergesTiedOrderTimeAcrossShardsById() {
+        OrderNumberProperties orderNumberProperties = new OrderNumberProperties();
+        orderNumberProperties.setShardBits(1);
+        orderNumberProperties.setNodeBits(9);
+        orderShards.destroy();
+        orderShards = new OrderShards();
+        ReflectionTestUtils.setField(orderShards, "orderNumberProperties", orderNumberProperties);
+        ReflectionTestUtils.setField(orderShards, "orderShardProperties", new OrderShardProperties());
+        ReflectionTestUtils.setField(orderShards, "transactionManager", transactionManager);
+        orderShards.init();
+        ReflectionTestUtils.setField(orderService, "orderShards", orderShards);
+        when(orderArchiveRouter.tables(any(), any())).thenReturn(HOT);
+        LocalDateTime noon = LocalDateTime.of(2024, 3, 1, 12, 0);
+        when(orderMapper.pageByCursor(any(), any(), eq(4), eq(HOT))).thenAnswer(invocation -> OrderShards.current() == 0
+                ? Arrays.asList(order(8, noon), order(6, noon), order(2, noon))
+                : Arrays.asList(order(7, noon), order(3, noon), order(1, noon.minusSeconds(1))));
+
+        CursorPageResult result = orderService.pageByCursor(query(0, 3));
+
+        assertEquals(Arrays.asList(8L, 7L, 6L), ids(result));
+        OrderPageCursor next = OrderPageCursor.decode(result.getNextCursor());
+        assertEquals(noon, next.getOrderTime());
+        assertEquals(6L, next.getId());
+    }
+
+    @Test
+    void invalidCursorIsRejectedBeforeQuerying() {
+        OrdersPageQueryDTO query = query(0, 10);
+        query.setCursor("not a cursor");
+
+        assertThrows(OrderBusinessException.class, () -> orderService.pageByCursor(query));
+        verify(orderMapper, never()).pageByCursor(any(), any(), anyInt(), any());
+    }
+
+    private static OrdersPageQueryDTO query(int page, int pageSize) {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setPage(page);
+        query.setPageSize(pageSize);
+        query.setSummaryOnly(true);
+        return query;
+    }
+
+    private static Page<Orders> page(long total, List<Orders> rows) {
+        Page<Orders> page = new Page<>(1, rows.size());
+        page.addAll(rows);
+        page.setTotal(total);
+        return page;
+    }
+
+    /**
+     * 同一下单时间的订单，ID从大到小
+     */
+    private static List<Orders> batch(int count, LocalDateTime orderTime) {
+        List<Orders> ordersList = new ArrayList<>();
+        for (int i = count; i > 0; i--) {
+            ordersList.add(order(1000 + i, orderTime));
+        }
+        return ordersList;
+    }
+
+    private static Orders order(long id, LocalDateTime orderTime) {
+        return Orders.builder().id(id).orderTime(orderTime).build();
+    }
+
+    private static List<Long> ids(CursorPageResult result) {
+        return ((List<?>) result.getRecords()).stream().map(r -> ((OrderVO) r).getId()).collect(Collectors.toList());
+    }
+}